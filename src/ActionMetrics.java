@@ -0,0 +1,190 @@
+/**
+ * The ActionMetrics class counts how often one kind of action runs and how long it takes.<p>
+ * Counts and latencies are added into LongAdders, which spread contended updates over several cells,
+ * so many sessions can record at once without fighting over one counter. Latencies go into a
+ * histogram of log-linear buckets in the style of HdrHistogram: each power of two is split into
+ * 8 buckets, so any latency from a nanosecond to hours is kept to within 12.5%.
+ */
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ActionMetrics implements ActionMetricsMBean
+{
+    // latencies below this are counted exactly; above it each power of two gets SUB_BUCKETS buckets
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT = 2 * SUB_BUCKETS;
+    private static final int BUCKETS = EXACT + (63 - (SUB_BUCKET_BITS + 1)) * SUB_BUCKETS;
+
+    //instance variables
+    private final String name;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder timedCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+
+    //Constructor
+    /**
+     * @param name The action's name, as shown in JMX and in the text dump.
+     */
+    public ActionMetrics(String name)
+    {
+        this.name = name;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records one run of the action.
+     *
+     * @param start What GameMetrics.start() returned when the action began; 0 if this run wasn't timed.
+     */
+    public void record(long start)
+    {
+        if (!GameMetrics.ENABLED)
+        {
+            return;
+        }
+        count.increment();
+        if (start != 0)
+        {
+            add(Math.max(0, System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Records one run that was timed somewhere else, such as a request timed by the client that sent it.
+     * Unlike record(), this always counts, whether or not -Dtreasurehunter.metrics is set.
+     *
+     * @param nanos How long the run took.
+     */
+    public void recordNanos(long nanos)
+    {
+        count.increment();
+        add(Math.max(0, nanos));
+    }
+
+    //Accessors
+    public String getName()
+    {
+        return name;
+    }
+
+    public long getCount()
+    {
+        return count.sum();
+    }
+
+    public long getTimedCount()
+    {
+        return timedCount.sum();
+    }
+
+    public double getMeanNanos()
+    {
+        long timed = timedCount.sum();
+        return timed == 0 ? 0 : (double) totalNanos.sum() / timed;
+    }
+
+    public long getMaxNanos()
+    {
+        return maxNanos.get();
+    }
+
+    public long getP50Nanos()
+    {
+        return getPercentileNanos(50);
+    }
+
+    public long getP99Nanos()
+    {
+        return getPercentileNanos(99);
+    }
+
+    public long getP999Nanos()
+    {
+        return getPercentileNanos(99.9);
+    }
+
+    /**
+     * @param percentile From 0 to 100.
+     * @return The latency that this percentage of timed runs took at most, to the histogram's precision.
+     */
+    public long getPercentileNanos(double percentile)
+    {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0)
+        {
+            return 0;
+        }
+        long wanted = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++)
+        {
+            seen += counts[i];
+            if (seen >= Math.max(wanted, 1))
+            {
+                return Math.min(highestValueIn(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    public void reset()
+    {
+        count.reset();
+        timedCount.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (LongAdder bucket : buckets)
+        {
+            bucket.reset();
+        }
+    }
+
+    public String toString()
+    {
+        return String.format("%-24s %,12d runs  mean %,10.0f ns  p50 %,10d  p99 %,10d  p99.9 %,10d  max %,12d",
+                name, getCount(), getMeanNanos(), getP50Nanos(), getP99Nanos(), getP999Nanos(), getMaxNanos());
+    }
+
+    private void add(long nanos)
+    {
+        timedCount.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+        buckets[bucketOf(nanos)].increment();
+    }
+
+    private static int bucketOf(long nanos)
+    {
+        if (nanos < EXACT)
+        {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int subBucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueIn(int bucket)
+    {
+        if (bucket < EXACT)
+        {
+            return bucket;
+        }
+        int exponent = (bucket - EXACT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        int subBucket = (bucket - EXACT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (SUB_BUCKETS + subBucket) * width + width - 1;
+    }
+}
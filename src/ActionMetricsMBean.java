@@ -0,0 +1,32 @@
+/**
+ * The ActionMetricsMBean interface is what JMX shows of one kind of action's metrics.
+ */
+public interface ActionMetricsMBean
+{
+    String getName();
+
+    /**
+     * @return The number of times the action has run.
+     */
+    long getCount();
+
+    /**
+     * @return The number of runs that were timed for the latency figures.
+     */
+    long getTimedCount();
+
+    double getMeanNanos();
+
+    long getMaxNanos();
+
+    long getP50Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+
+    /**
+     * Starts counting again from zero.
+     */
+    void reset();
+}
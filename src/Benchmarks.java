@@ -0,0 +1,417 @@
+/**
+ * The Benchmarks class measures the parts of the game that run the most in simulations:
+ * the hunter's kit, the shop's prices, the town's actions and a whole simulated turn.<p>
+ * Each benchmark is warmed up, then timed over several iterations. Alongside the throughput, the bytes
+ * allocated per operation are read from the JVM's per-thread allocation counter, the same number
+ * JMH's gc profiler reports. Results are printed as a table and can be written as JSON or CSV
+ * so they can be compared between releases.<p>
+ * With --check-allocations, only the benchmarks on the engine's hot path are run, and the run fails (exit
+ * status 1) if any of them allocates anything at all once warmed up, so a build can catch an allocation
+ * creeping back into a simulated turn.<p>
+ * Run it with: java Benchmarks [--filter text] [--iterations n] [--millis n] [--json file] [--csv file] [--check-allocations]
+ */
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+public class Benchmarks
+{
+    // the kit sizes the hunter benchmarks are run with
+    private static final String[] KIT_SIZES = {"0", "3", "6", "9"};
+    private static final String[] MODES = {"easy", "normal", "hard"};
+
+    // the benchmarks that must not allocate; see --check-allocations
+    private static final List<String> ALLOCATION_FREE = List.of("Hunter.hasItemInKit", "Hunter.buyItem+sellItem",
+            "Hunter.getInventory", "Shop.getCostOfItem", "Shop.checkMarketPrice", "Shop.inventory",
+            "Town.lookForTrouble", "Town.huntForTreasure", "Town.leaveTown", "GameSession.turn",
+            "GameMetrics.start+record");
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // results are added into this so the JIT can't throw the benchmarked work away
+    private static volatile long sink;
+
+    /**
+     * One operation of a benchmark; the returned value is consumed so the work can't be optimized out.
+     */
+    interface Operation
+    {
+        long run();
+    }
+
+    /**
+     * The measured result of one benchmark with one parameter.
+     */
+    static class Result
+    {
+        final String benchmark;
+        final String param;
+        final double opsPerSecond;
+        final double error;
+        final double bytesPerOp;
+
+        Result(String benchmark, String param, double opsPerSecond, double error, double bytesPerOp)
+        {
+            this.benchmark = benchmark;
+            this.param = param;
+            this.opsPerSecond = opsPerSecond;
+            this.error = error;
+            this.bytesPerOp = bytesPerOp;
+        }
+    }
+
+    //instance variables
+    private final List<String> names = new ArrayList<>();
+    private final List<String[]> params = new ArrayList<>();
+    private final List<Function<String, Operation>> setups = new ArrayList<>();
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationMillis = 500;
+
+    public static void main(String[] args) throws IOException
+    {
+        Benchmarks benchmarks = new Benchmarks();
+        String filter = "";
+        String jsonFile = null;
+        String csvFile = null;
+        boolean checkAllocations = false;
+        for (int i = 0; i < args.length; i += 2)
+        {
+            if (args[i].equals("--check-allocations"))
+            {
+                checkAllocations = true;
+                i--;
+            }
+            else if (i + 1 == args.length)
+            {
+                break;
+            }
+            else if (args[i].equals("--filter"))
+            {
+                filter = args[i + 1];
+            }
+            else if (args[i].equals("--iterations"))
+            {
+                benchmarks.iterations = Integer.parseInt(args[i + 1]);
+            }
+            else if (args[i].equals("--millis"))
+            {
+                benchmarks.iterationMillis = Long.parseLong(args[i + 1]);
+            }
+            else if (args[i].equals("--json"))
+            {
+                jsonFile = args[i + 1];
+            }
+            else if (args[i].equals("--csv"))
+            {
+                csvFile = args[i + 1];
+            }
+        }
+
+        benchmarks.registerAll();
+        if (checkAllocations)
+        {
+            System.exit(benchmarks.checkAllocations(filter) ? 0 : 1);
+        }
+        List<Result> results = benchmarks.runAll(filter);
+        if (jsonFile != null)
+        {
+            writeJson(results, jsonFile);
+        }
+        if (csvFile != null)
+        {
+            writeCsv(results, csvFile);
+        }
+    }
+
+    /**
+     * Adds a benchmark.
+     *
+     * @param name The benchmark's name.
+     * @param paramValues The parameter values it is run with.
+     * @param setup Builds the operation to measure for a parameter value.
+     */
+    public void register(String name, String[] paramValues, Function<String, Operation> setup)
+    {
+        names.add(name);
+        params.add(paramValues);
+        setups.add(setup);
+    }
+
+    private void registerAll()
+    {
+        register("Hunter.hasItemInKit", KIT_SIZES, size -> {
+            Hunter hunter = hunterWithKit(Integer.parseInt(size));
+            return () -> hunter.hasItemInKit("spoon") ? 1 : 0;
+        });
+        register("Hunter.buyItem+sellItem", KIT_SIZES, size -> {
+            Hunter hunter = hunterWithKit(Integer.parseInt(size));
+            hunter.removeItemFromKit("water");
+            return () -> {
+                hunter.buyItem("water", 2);
+                hunter.sellItem("water", 2);
+                return hunter.getGold();
+            };
+        });
+        register("Hunter.getInventory", KIT_SIZES, size -> {
+            Hunter hunter = hunterWithKit(Integer.parseInt(size));
+            return () -> hunter.getInventory().length();
+        });
+        register("Shop.getCostOfItem", MODES, mode -> {
+            GameMode gameMode = GameMode.fromName(mode);
+            Shop shop = gameMode.createShop();
+            return () -> shop.getCostOfItem("Horse", gameMode.isEasyMode());
+        });
+        register("Shop.checkMarketPrice", MODES, mode -> {
+            Shop shop = GameMode.fromName(mode).createShop();
+            return () -> shop.checkMarketPrice("boat", false);
+        });
+        register("Shop.inventory", MODES, mode -> {
+            Shop shop = GameMode.fromName(mode).createShop();
+            return () -> shop.inventory().length();
+        });
+        register("Town.lookForTrouble", MODES, mode -> {
+            Town town = townWithHunter(mode);
+            Hunter hunter = town.getHunter();
+            return () -> {
+                town.lookForTrouble();
+                topUpGold(hunter);
+                return hunter.getGold();
+            };
+        });
+        register("Town.huntForTreasure", MODES, mode -> {
+            GameMode gameMode = GameMode.fromName(mode);
+            Town town = townWithHunter(mode);
+            Hunter hunter = town.getHunter();
+            GameRandom layout = new GameRandom(2);
+            return () -> {
+                // a town can only be searched once, so every search gets a new town and a hunter with an empty
+                // kit; otherwise everything after the first op would only measure "already searched"
+                town.rebuild(gameMode.getToughness(), layout);
+                town.hunterArrives(hunter);
+                hunter.restart(1_000_000);
+                town.huntForTreasure();
+                return hunter.getHuntedItemTotal();
+            };
+        });
+        register("Town.leaveTown", MODES, mode -> {
+            Town town = townWithHunter(mode);
+            Hunter hunter = town.getHunter();
+            int neededItem = town.getTerrain().getNeededItemId();
+            return () -> {
+                if (!hunter.hasItem(neededItem))
+                {
+                    hunter.buyItem(neededItem, 1);
+                    topUpGold(hunter);
+                }
+                return town.leaveTown() ? 1 : 0;
+            };
+        });
+        register("GameSession.turn", MODES, mode -> {
+            GameMode gameMode = GameMode.fromName(mode);
+            GameRandom random = new GameRandom(1);
+            PlayerStrategy strategy = new CautiousStrategy();
+            GameSession session = new GameSession("Bench", gameMode, random);
+            return () -> {
+                if (session.isFinished())
+                {
+                    session.restart();
+                }
+                strategy.playTurn(session);
+                return session.getHunter().getGold();
+            };
+        });
+        register("GameMetrics.start+record", new String[] {GameMetrics.ENABLED ? "on" : "off"}, enabled -> {
+            ActionMetrics metrics = new ActionMetrics("Bench");
+            return () -> {
+                long start = GameMetrics.start();
+                metrics.record(start);
+                return start;
+            };
+        });
+        register("GameSnapshot.save+load", MODES, mode -> {
+            GameSession session = new GameSession("Bench", GameMode.fromName(mode), new GameRandom(1));
+            PlayerStrategy strategy = new CautiousStrategy();
+            for (int turn = 0; turn < 10 && !session.isFinished(); turn++)
+            {
+                strategy.playTurn(session);
+            }
+            return () -> GameSnapshot.load(GameSnapshot.save(session)).getTurns();
+        });
+    }
+
+    /**
+     * Runs every benchmark whose name contains the filter and prints a table of the results.
+     *
+     * @param filter Part of a benchmark name; "" runs them all.
+     * @return The results.
+     */
+    public List<Result> runAll(String filter)
+    {
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-28s %-8s %16s %12s %12s%n", "Benchmark", "Param", "ops/s", "error", "B/op");
+        for (int i = 0; i < names.size(); i++)
+        {
+            if (!names.get(i).contains(filter))
+            {
+                continue;
+            }
+            for (String param : params.get(i))
+            {
+                Result result = measure(names.get(i), param, setups.get(i).apply(param));
+                results.add(result);
+                System.out.printf("%-28s %-8s %,16.0f %,12.0f %12.1f%n",
+                        result.benchmark, result.param, result.opsPerSecond, result.error, result.bytesPerOp);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs the benchmarks that must not allocate and whose names contain the filter, and reports any that do.
+     *
+     * @param filter Part of a benchmark name; "" checks them all.
+     * @return true if none of them allocated.
+     */
+    public boolean checkAllocations(String filter)
+    {
+        boolean passed = true;
+        System.out.printf("%-28s %-8s %16s %12s%n", "Benchmark", "Param", "ops", "B/op");
+        for (int i = 0; i < names.size(); i++)
+        {
+            if (!ALLOCATION_FREE.contains(names.get(i)) || !names.get(i).contains(filter))
+            {
+                continue;
+            }
+            for (String param : params.get(i))
+            {
+                Result result = measure(names.get(i), param, setups.get(i).apply(param));
+                boolean allocates = result.bytesPerOp > 0;
+                System.out.printf("%-28s %-8s %,16.0f %12.4f%s%n", result.benchmark, result.param,
+                        result.opsPerSecond * iterationMillis / 1000 * iterations, result.bytesPerOp,
+                        allocates ? "  ALLOCATES" : "");
+                passed &= !allocates;
+            }
+        }
+        System.out.println(passed ? "No allocations on the hot path." : "Allocation check FAILED.");
+        return passed;
+    }
+
+    /**
+     * Warms up and times one operation.
+     */
+    public Result measure(String name, String param, Operation operation)
+    {
+        for (int i = 0; i < warmupIterations; i++)
+        {
+            runIteration(operation);
+        }
+
+        double[] rates = new double[iterations];
+        long totalOps = 0;
+        long totalBytes = 0;
+        for (int i = 0; i < iterations; i++)
+        {
+            long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            long ops = runIteration(operation);
+            long elapsed = System.nanoTime() - start;
+            totalBytes += THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+            totalOps += ops;
+            rates[i] = ops * 1e9 / elapsed;
+        }
+
+        double mean = 0;
+        for (double rate : rates)
+        {
+            mean += rate;
+        }
+        mean /= iterations;
+        double variance = 0;
+        for (double rate : rates)
+        {
+            variance += (rate - mean) * (rate - mean);
+        }
+        double error = iterations > 1 ? Math.sqrt(variance / (iterations - 1)) : 0;
+        return new Result(name, param, mean, error, (double) totalBytes / totalOps);
+    }
+
+    // calls the operation in batches until the iteration time is up, and returns how many calls were made
+    private long runIteration(Operation operation)
+    {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000;
+        long ops = 0;
+        long total = 0;
+        int batch = 1024;
+        while (System.nanoTime() < deadline)
+        {
+            for (int i = 0; i < batch; i++)
+            {
+                total += operation.run();
+            }
+            ops += batch;
+        }
+        sink += total;
+        return ops;
+    }
+
+    private static Hunter hunterWithKit(int items)
+    {
+        Hunter hunter = new Hunter("Bench", 1_000_000);
+        for (int itemId = 0; itemId < items; itemId++)
+        {
+            hunter.buyItem(itemId, 1);
+        }
+        return hunter;
+    }
+
+    private static Town townWithHunter(String mode)
+    {
+        Town town = GameMode.fromName(mode).createTown(new GameRandom(1));
+        town.hunterArrives(new Hunter("Bench", 1_000_000));
+        return town;
+    }
+
+    // keeps brawls from ending the game part way through a benchmark
+    private static void topUpGold(Hunter hunter)
+    {
+        if (hunter.getGold() < 1000)
+        {
+            hunter.changeGold(1_000_000);
+        }
+    }
+
+    private static void writeJson(List<Result> results, String file) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(file))
+        {
+            out.println("[");
+            for (int i = 0; i < results.size(); i++)
+            {
+                Result result = results.get(i);
+                out.printf(Locale.ROOT, "  {\"benchmark\": \"%s\", \"param\": \"%s\", \"opsPerSecond\": %.1f, \"error\": %.1f, \"bytesPerOp\": %.2f}%s%n",
+                        result.benchmark, result.param, result.opsPerSecond, result.error, result.bytesPerOp,
+                        i + 1 < results.size() ? "," : "");
+            }
+            out.println("]");
+        }
+    }
+
+    private static void writeCsv(List<Result> results, String file) throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(file))
+        {
+            out.println("benchmark,param,opsPerSecond,error,bytesPerOp");
+            for (Result result : results)
+            {
+                out.printf(Locale.ROOT, "%s,%s,%.1f,%.1f,%.2f%n",
+                        result.benchmark, result.param, result.opsPerSecond, result.error, result.bytesPerOp);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * The BrawlRules class holds the numbers behind looking for trouble in town: how likely a brawl is,
+ * how likely the hunter is to win it, and how much gold is won or lost.<p>
+ * The same chance is used twice. A brawl happens when the first roll is at most the no-trouble chance,
+ * and the hunter wins when the second roll is above it. Gold won is a whole number between winGoldMin
+ * and winGoldMax; when the loss range is different, the gold lost is rolled again from it.
+ */
+public class BrawlRules
+{
+    public static final BrawlRules EASY = new BrawlRules(0.25, 0.50, 5, 24, 1, 10, false);
+    public static final BrawlRules NORMAL = new BrawlRules(0.33, 0.66, 1, 15, 1, 15, false);
+    public static final BrawlRules HARD = new BrawlRules(0.33, 0.66, 1, 10, 1, 10, false);
+    public static final BrawlRules CHEAT = new BrawlRules(0.33, 0.66, 100, 100, 100, 100, true);
+
+    //instance variables
+    private final double noTroubleChance;
+    private final double toughNoTroubleChance;
+    private final int winGoldMin;
+    private final int winGoldMax;
+    private final int lossGoldMin;
+    private final int lossGoldMax;
+    private final boolean alwaysWin;
+
+    //Constructor
+    /**
+     * @param noTroubleChance The no-trouble chance in a sleepy town.
+     * @param toughNoTroubleChance The no-trouble chance in a tough town.
+     * @param winGoldMin The least gold won in a brawl.
+     * @param winGoldMax The most gold won in a brawl.
+     * @param lossGoldMin The least gold lost in a brawl.
+     * @param lossGoldMax The most gold lost in a brawl.
+     * @param alwaysWin true if the hunter wins every brawl.
+     */
+    public BrawlRules(double noTroubleChance, double toughNoTroubleChance, int winGoldMin, int winGoldMax,
+                      int lossGoldMin, int lossGoldMax, boolean alwaysWin)
+    {
+        this.noTroubleChance = noTroubleChance;
+        this.toughNoTroubleChance = toughNoTroubleChance;
+        this.winGoldMin = winGoldMin;
+        this.winGoldMax = winGoldMax;
+        this.lossGoldMin = lossGoldMin;
+        this.lossGoldMax = lossGoldMax;
+        this.alwaysWin = alwaysWin;
+    }
+
+    /**
+     * @param toughTown true for a tough town.
+     * @return The chance used for both rolls of a brawl in that kind of town.
+     */
+    public double getNoTroubleChance(boolean toughTown)
+    {
+        return toughTown ? toughNoTroubleChance : noTroubleChance;
+    }
+
+    public double getNoTroubleChance()
+    {
+        return noTroubleChance;
+    }
+
+    public double getToughNoTroubleChance()
+    {
+        return toughNoTroubleChance;
+    }
+
+    public int getWinGoldMin()
+    {
+        return winGoldMin;
+    }
+
+    public int getWinGoldMax()
+    {
+        return winGoldMax;
+    }
+
+    public int getLossGoldMin()
+    {
+        return lossGoldMin;
+    }
+
+    public int getLossGoldMax()
+    {
+        return lossGoldMax;
+    }
+
+    public boolean isAlwaysWin()
+    {
+        return alwaysWin;
+    }
+
+    /**
+     * @return true if the gold lost is rolled separately from the gold that would have been won.
+     */
+    public boolean hasSeparateLossRoll()
+    {
+        return lossGoldMin != winGoldMin || lossGoldMax != winGoldMax;
+    }
+
+    /**
+     * @param random The source of random numbers.
+     * @return A number of gold pieces to win, from winGoldMin to winGoldMax.
+     */
+    public int rollWinGold(GameRandom random)
+    {
+        return (int) (random.nextDouble() * (winGoldMax - winGoldMin + 1)) + winGoldMin;
+    }
+
+    /**
+     * @param random The source of random numbers.
+     * @return A number of gold pieces to lose, from lossGoldMin to lossGoldMax.
+     */
+    public int rollLossGold(GameRandom random)
+    {
+        return (int) (random.nextDouble() * (lossGoldMax - lossGoldMin + 1)) + lossGoldMin;
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * The CautiousStrategy plays the game the way most players do:
+ * hunt for treasure in every town, buy whatever is needed to cross the terrain,
+ * and only go looking for trouble when there isn't enough gold to buy it.
+ */
+public class CautiousStrategy implements PlayerStrategy
+{
+    public void playTurn(GameSession session)
+    {
+        Hunter hunter = session.getHunter();
+        Town town = session.getCurrentTown();
+
+        // treasure can only be picked up with at least 1 gold in hand
+        if (!town.hasSearchedForTreasure() && hunter.getGold() > 0)
+        {
+            session.huntForTreasure();
+            return;
+        }
+
+        int neededItem = town.getTerrain().getNeededItemId();
+        if (hunter.hasItem(neededItem))
+        {
+            session.move();
+        }
+        else if (hunter.getGold() >= town.getShop().checkMarketPrice(neededItem, true))
+        {
+            session.buy(neededItem);
+        }
+        else
+        {
+            session.lookForTrouble();
+        }
+    }
+}
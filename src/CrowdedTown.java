@@ -0,0 +1,272 @@
+/**
+ * The CrowdedTown class checks that one town can be shared by many hunters at once.<p>
+ * Every hunter visits the same town and searches it for treasure, then a number of threads trade in the
+ * town's shop for a while, each thread picking hunters at random, so the same hunter is often served by
+ * several threads at the same moment. Each hunter also looks for trouble now and then, always on the same
+ * thread, as their visit is theirs alone, while the other threads go on trading for them. Each thread
+ * keeps its own tally of what it bought and sold for every hunter, and each hunter's events go to a ledger
+ * that checks the gold reported with every event against the sum of the gold that changed hands before it.
+ * At the end, each hunter's gold and kit must match the tallies and the brawls exactly; a lost update, an
+ * item bought twice or a brawl that overlapped a trade shows up as a difference, and the run exits with
+ * status 1.<p>
+ * The run is repeated with more and more threads, and the trades per second are printed for each, along
+ * with the speed-up over one thread. Nothing is shared between hunters, so the speed-up should follow the
+ * number of cores.<p>
+ * Run it with: java CrowdedTown [hunters] [millis] [maxThreads]
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class CrowdedTown
+{
+    // enough gold that no hunter runs out during a run
+    private static final int STARTING_GOLD = 1_000_000_000;
+
+    /**
+     * Keeps a running total of one hunter's gold from their events. Events are reported with the hunter
+     * locked, so they arrive one at a time.
+     */
+    static class Ledger implements GameEventSink
+    {
+        long gold = STARTING_GOLD;
+        long brawlGold;
+        String problem;
+
+        public void onEvent(int type, int itemId, int amount, int gold)
+        {
+            if (type == GameEvent.PURCHASE)
+            {
+                this.gold -= amount;
+            }
+            else if (type == GameEvent.SALE)
+            {
+                this.gold += amount;
+            }
+            else if (type == GameEvent.BRAWL_WON || type == GameEvent.BRAWL_LOST)
+            {
+                // a lost brawl's amount is already negative
+                this.gold += amount;
+                brawlGold += amount;
+            }
+            if (gold != this.gold && problem == null)
+            {
+                problem = "had " + gold + " gold after " + GameEvent.typeName(type) + ", expected " + this.gold;
+            }
+        }
+    }
+
+    /**
+     * What one thread did to every hunter.
+     */
+    static class Tally
+    {
+        final long[] gold;
+        // net items bought, per hunter and item
+        final int[][] items;
+        long trades;
+
+        Tally(int hunters)
+        {
+            gold = new long[hunters];
+            items = new int[hunters][Items.SHOP_ITEM_COUNT];
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int hunters = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 1000;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println(hunters + " hunters in one town, " + Runtime.getRuntime().availableProcessors() + " cores");
+        boolean passed = true;
+        double oneThread = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2)
+        {
+            Town town = GameMode.NORMAL.createTown(new GameRandom(threads));
+            Hunter[] crowd = new Hunter[hunters];
+            Ledger[] ledgers = new Ledger[hunters];
+            for (int i = 0; i < hunters; i++)
+            {
+                crowd[i] = new Hunter("Hunter-" + i, STARTING_GOLD);
+                ledgers[i] = new Ledger();
+                crowd[i].setEventSink(ledgers[i]);
+            }
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try
+            {
+                List<Town.Visit> visits = arrive(executor, town, crowd, threads);
+                List<Tally> tallies = trade(executor, town, crowd, visits, threads, millis);
+
+                long trades = 0;
+                for (Tally tally : tallies)
+                {
+                    trades += tally.trades;
+                }
+                double rate = trades * 1000.0 / millis;
+                oneThread = threads == 1 ? rate : oneThread;
+                boolean consistent = check(town, crowd, visits, ledgers, tallies);
+                passed &= consistent;
+                System.out.printf("%3d threads: %,14.0f trades/s  %5.2fx  %s%n", threads, rate, rate / oneThread,
+                        consistent ? "consistent" : "INCONSISTENT");
+            }
+            finally
+            {
+                executor.shutdown();
+            }
+        }
+        System.exit(passed ? 0 : 1);
+    }
+
+    // every hunter visits the town and searches it, a slice of the crowd per thread
+    private static List<Town.Visit> arrive(ExecutorService executor, Town town, Hunter[] crowd, int threads)
+            throws InterruptedException
+    {
+        Town.Visit[] visits = new Town.Visit[crowd.length];
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            int first = crowd.length * t / threads;
+            int last = crowd.length * (t + 1) / threads;
+            futures.add(executor.submit(() -> {
+                for (int i = first; i < last; i++)
+                {
+                    visits[i] = town.visit(crowd[i], new GameRandom(i));
+                    visits[i].huntForTreasure();
+                }
+            }));
+        }
+        waitFor(futures);
+        return List.of(visits);
+    }
+
+    // each thread buys and sells for hunters picked at random until the time is up, and every eighth trade
+    // sends one of its own hunters (those whose number leaves its own when divided by the threads) to a brawl
+    private static List<Tally> trade(ExecutorService executor, Town town, Hunter[] crowd, List<Town.Visit> visits,
+                                     int threads, long millis) throws InterruptedException
+    {
+        Shop shop = town.getShop();
+        long deadline = System.nanoTime() + millis * 1_000_000;
+        List<Future<Tally>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            long seed = t;
+            int own = t;
+            futures.add(executor.submit(() -> {
+                Tally tally = new Tally(crowd.length);
+                GameRandom random = new GameRandom(seed);
+                while (System.nanoTime() < deadline)
+                {
+                    for (int batch = 0; batch < 1024; batch++)
+                    {
+                        if ((batch & 7) == 0)
+                        {
+                            int brawler = own + threads * random.nextInt((crowd.length - own + threads - 1) / threads);
+                            visits.get(brawler).lookForTrouble();
+                        }
+                        int hunter = random.nextInt(crowd.length);
+                        int item = random.nextInt(Items.SHOP_ITEM_COUNT);
+                        if ((batch & 1) == 0)
+                        {
+                            if (shop.buy(crowd[hunter], item))
+                            {
+                                tally.gold[hunter] -= shop.checkMarketPrice(item, true);
+                                tally.items[hunter][item]++;
+                            }
+                        }
+                        else if (shop.sell(crowd[hunter], item))
+                        {
+                            tally.gold[hunter] += shop.checkMarketPrice(item, false);
+                            tally.items[hunter][item]--;
+                        }
+                    }
+                    tally.trades += 1024;
+                }
+                return tally;
+            }));
+        }
+        List<Tally> tallies = new ArrayList<>();
+        try
+        {
+            for (Future<Tally> future : futures)
+            {
+                tallies.add(future.get());
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("A trading thread failed", e.getCause());
+        }
+        return tallies;
+    }
+
+    // every hunter's gold and kit must be what the tallies and brawls say, and every visit must be theirs alone
+    private static boolean check(Town town, Hunter[] crowd, List<Town.Visit> visits, Ledger[] ledgers,
+                                 List<Tally> tallies)
+    {
+        if (town.getHunterCount() != crowd.length)
+        {
+            System.out.println("Expected " + crowd.length + " hunters in town, found " + town.getHunterCount());
+            return false;
+        }
+        for (int i = 0; i < crowd.length; i++)
+        {
+            Town.Visit visit = visits.get(i);
+            if (visit.getHunter() != crowd[i] || !visit.hasSearchedForTreasure())
+            {
+                System.out.println("Hunter " + i + " has the wrong visit");
+                return false;
+            }
+            if (ledgers[i].problem != null)
+            {
+                System.out.println("Hunter " + i + " " + ledgers[i].problem);
+                return false;
+            }
+            // the treasure is the only thing bought outside the shop, for 1 gold that is then given back
+            long gold = STARTING_GOLD + ledgers[i].brawlGold;
+            for (Tally tally : tallies)
+            {
+                gold += tally.gold[i];
+            }
+            if (crowd[i].getGold() != gold)
+            {
+                System.out.println("Hunter " + i + " has " + crowd[i].getGold() + " gold, expected " + gold);
+                return false;
+            }
+            for (int item = 0; item < Items.SHOP_ITEM_COUNT; item++)
+            {
+                int bought = 0;
+                for (Tally tally : tallies)
+                {
+                    bought += tally.items[i][item];
+                }
+                if (bought != (crowd[i].hasItem(item) ? 1 : 0))
+                {
+                    System.out.println("Hunter " + i + " has " + Items.nameOf(item) + " bought " + bought + " more times than sold");
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void waitFor(List<Future<?>> futures) throws InterruptedException
+    {
+        try
+        {
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("A hunter failed", e.getCause());
+        }
+    }
+}
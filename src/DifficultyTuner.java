@@ -0,0 +1,548 @@
+/**
+ * The DifficultyTuner class searches for game mode settings that give each mode the win rate, and if
+ * asked the median game length, that the game is aiming for.<p>
+ * A setting is a point in a box of ten parameters: the shop's markdown, the chance of a tough town, the
+ * starting gold, the two no-trouble chances, the four brawl gold limits and, in easy mode, the size of the
+ * easy discounts. A point is scored by playing CautiousStrategy games with it, the same seeded games for
+ * every point, on how far it misses the targets, plus a small penalty for straying from the mode's current
+ * settings, so that of the settings that hit the targets the closest one wins.<p>
+ * The search is successive halving. Many random points are played a few hundred games each, the best
+ * quarter go on to twice as many games, and so on until the survivors have had the full number of games;
+ * then the same is done with points scattered closer and closer around the best one found. A point stops
+ * early once its win rate is so far from the target that it can't beat the best score of the round
+ * before. Points are played in parallel, one per thread.<p>
+ * The best settings are written as a properties file, which GameMode reads with -Dtreasurehunter.modes=file.<p>
+ * Run it with: java DifficultyTuner [--out file] [--seed n] [--points n] [--games n] [--threads n] [mode=winRate[:medianTurns]...]<p>
+ * for example: java DifficultyTuner --out modes.properties easy=0.70 normal=0.45:30 hard=0.20
+ */
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class DifficultyTuner
+{
+    // the parameters, each scaled to 0..1 within its range
+    private static final int MARKDOWN = 0;
+    private static final int TOUGHNESS = 1;
+    private static final int STARTING_GOLD = 2;
+    private static final int NO_TROUBLE_CHANCE = 3;
+    private static final int TOUGH_NO_TROUBLE_CHANCE = 4;
+    private static final int WIN_GOLD_MIN = 5;
+    private static final int WIN_GOLD_MAX = 6;
+    private static final int LOSS_GOLD_MIN = 7;
+    private static final int LOSS_GOLD_MAX = 8;
+    private static final int EASY_DISCOUNT = 9;
+    private static final int PARAMETERS = 10;
+
+    private static final double[] MIN = {0.05, 0, 1, 0.05, 0.05, 1, 1, 1, 1, 0};
+    private static final double[] MAX = {0.8, 1, 50, 0.95, 0.95, 30, 50, 30, 50, 2};
+    private static final boolean[] WHOLE = {false, false, true, false, false, true, true, true, true, false};
+
+    // turns after which an unfinished game is counted as a loss
+    private static final int MAX_TURNS = 500;
+    // how often a point checks whether it can stop early
+    private static final int BATCH = 200;
+    // the games each point plays in the first round of a search
+    private static final int FIRST_ROUND_GAMES = 400;
+    // the fewest points that go on to the next round
+    private static final int SURVIVORS = 4;
+    // how far, in scaled units, the points of each refinement stray from the best one
+    private static final double[] REFINE_STEPS = {0.1, 0.03};
+    // the score lost for missing the median target by the whole target, and for straying across the whole box
+    private static final double MEDIAN_WEIGHT = 0.25;
+    private static final double CLOSENESS_WEIGHT = 0.1;
+
+    /**
+     * What one mode is being tuned for.
+     */
+    static class Target
+    {
+        final GameMode mode;
+        final double winRate;
+        // 0 when the game length doesn't matter
+        final int medianTurns;
+
+        Target(GameMode mode, double winRate, int medianTurns)
+        {
+            this.mode = mode;
+            this.winRate = winRate;
+            this.medianTurns = medianTurns;
+        }
+
+        public String toString()
+        {
+            return String.format("%s: win rate %.1f%%%s", mode, winRate * 100,
+                    medianTurns > 0 ? ", median " + medianTurns + " turns" : "");
+        }
+    }
+
+    /**
+     * How one point did.
+     */
+    static class Score
+    {
+        final double[] point;
+        final int games;
+        final double winRate;
+        final int medianTurns;
+        final double loss;
+        final boolean stoppedEarly;
+
+        Score(double[] point, int games, double winRate, int medianTurns, double loss, boolean stoppedEarly)
+        {
+            this.point = point;
+            this.games = games;
+            this.winRate = winRate;
+            this.medianTurns = medianTurns;
+            this.loss = loss;
+            this.stoppedEarly = stoppedEarly;
+        }
+
+        public String toString()
+        {
+            return String.format("loss %.4f (win rate %.2f%%, median %d turns, %,d games)", loss, winRate * 100, medianTurns, games);
+        }
+    }
+
+    //instance variables
+    private final ExecutorService executor;
+    private final long seed;
+    private final int points;
+    private final int maxGames;
+    private final GameRandom random;
+
+    //Constructor
+    /**
+     * @param threads The number of points played at once.
+     * @param seed The seed of the games every point is played on, and of the search.
+     * @param points The number of points tried in each search.
+     * @param maxGames The number of games the best points of each search are played on.
+     */
+    public DifficultyTuner(int threads, long seed, int points, int maxGames)
+    {
+        executor = Executors.newFixedThreadPool(threads);
+        this.seed = seed;
+        this.points = points;
+        this.maxGames = maxGames;
+        random = new GameRandom(seed);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        String out = "modes.properties";
+        long seed = 1;
+        int points = 256;
+        int games = 25_600;
+        int threads = Runtime.getRuntime().availableProcessors();
+        while (args.length >= 2 && args[0].startsWith("--"))
+        {
+            if (args[0].equals("--out"))
+            {
+                out = args[1];
+            }
+            else if (args[0].equals("--seed"))
+            {
+                seed = Long.parseLong(args[1]);
+            }
+            else if (args[0].equals("--points"))
+            {
+                points = Integer.parseInt(args[1]);
+            }
+            else if (args[0].equals("--games"))
+            {
+                games = Integer.parseInt(args[1]);
+            }
+            else if (args[0].equals("--threads"))
+            {
+                threads = Integer.parseInt(args[1]);
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+
+        List<Target> targets = new ArrayList<>();
+        for (String arg : args)
+        {
+            Target target = parseTarget(arg);
+            if (target == null)
+            {
+                System.out.println("Expected mode=winRate[:medianTurns], for example normal=0.45:30, not " + arg);
+                System.exit(1);
+            }
+            targets.add(target);
+        }
+        if (targets.isEmpty())
+        {
+            targets.add(new Target(GameMode.EASY, 0.70, 0));
+            targets.add(new Target(GameMode.NORMAL, 0.45, 0));
+            targets.add(new Target(GameMode.HARD, 0.20, 0));
+        }
+
+        System.out.println("Tuning on " + threads + " threads with seed " + seed);
+        DifficultyTuner tuner = new DifficultyTuner(threads, seed, points, games);
+        Properties config = new Properties();
+        StringBuilder comment = new StringBuilder("Written by DifficultyTuner");
+        try
+        {
+            for (Target target : targets)
+            {
+                long start = System.nanoTime();
+                GameMode tuned = tuner.tune(target);
+                Score check = tuner.check(tuned, target);
+                System.out.printf("%s tuned in %.1f s; on %,d fresh games: win rate %.2f%%, median %d turns%n",
+                        target.mode, (System.nanoTime() - start) / 1e9, check.games, check.winRate * 100, check.medianTurns);
+                tuned.store(config);
+                comment.append(String.format("%n%s -> %.2f%%, median %d turns", target, check.winRate * 100, check.medianTurns));
+            }
+        }
+        finally
+        {
+            tuner.close();
+        }
+        try (Writer writer = Files.newBufferedWriter(Path.of(out)))
+        {
+            config.store(writer, comment.toString());
+        }
+        System.out.println("Wrote " + out + "; play with it using java -D" + GameMode.CONFIG_PROPERTY + "=" + out + " ...");
+    }
+
+    /**
+     * Searches for the settings that best meet a target.
+     *
+     * @param target The mode to tune and what it is aiming for.
+     * @return The mode with the best settings found.
+     */
+    public GameMode tune(Target target) throws InterruptedException
+    {
+        double[] base = pointOf(target.mode);
+        List<double[]> candidates = new ArrayList<>();
+        candidates.add(base);
+        while (candidates.size() < points)
+        {
+            candidates.add(randomPoint(target.mode, base));
+        }
+        Score best = search(target, base, candidates, "search");
+
+        for (double step : REFINE_STEPS)
+        {
+            candidates = new ArrayList<>();
+            candidates.add(best.point);
+            while (candidates.size() < points / 2)
+            {
+                candidates.add(nearbyPoint(target.mode, best.point, step));
+            }
+            best = search(target, base, candidates, "refine " + step);
+        }
+        GameMode tuned = modeAt(target.mode, best.point);
+        System.out.println(target.mode + " best: " + describe(tuned));
+        return tuned;
+    }
+
+    /**
+     * Plays tuned settings on games none of the search was played on.
+     *
+     * @return How the settings did.
+     */
+    public Score check(GameMode mode, Target target) throws InterruptedException
+    {
+        return evaluate(mode, pointOf(mode), target, pointOf(target.mode), maxGames * 4, Double.MAX_VALUE, seed + 1);
+    }
+
+    public void close()
+    {
+        executor.shutdown();
+    }
+
+    // successive halving: returns the best point of the last round, which every survivor played in full
+    private Score search(Target target, double[] base, List<double[]> candidates, String label) throws InterruptedException
+    {
+        int games = Math.min(FIRST_ROUND_GAMES, maxGames);
+        double bestLoss = Double.MAX_VALUE;
+        int round = 1;
+        while (true)
+        {
+            List<Score> scores = run(candidates, target, base, games, bestLoss, seed);
+            scores.sort(Comparator.comparingDouble(score -> score.loss));
+            Score best = scores.get(0);
+            int stopped = 0;
+            for (Score score : scores)
+            {
+                stopped += score.stoppedEarly ? 1 : 0;
+            }
+            System.out.printf("%-7s %-11s round %d: %4d points x %,6d games (%d stopped early), best %s%n",
+                    target.mode, label, round, candidates.size(), games, stopped, best);
+            if (games >= maxGames && candidates.size() <= SURVIVORS)
+            {
+                return best;
+            }
+            bestLoss = best.loss;
+            int keep = Math.max(SURVIVORS, candidates.size() / 4);
+            candidates = new ArrayList<>();
+            for (int i = 0; i < keep && i < scores.size(); i++)
+            {
+                candidates.add(scores.get(i).point);
+            }
+            games = Math.min(maxGames, games * 2);
+            round++;
+        }
+    }
+
+    // plays every point in parallel
+    private List<Score> run(List<double[]> candidates, Target target, double[] base, int games, double bestLoss, long gameSeed)
+            throws InterruptedException
+    {
+        List<Future<Score>> futures = new ArrayList<>();
+        for (double[] point : candidates)
+        {
+            futures.add(executor.submit(() -> evaluate(modeAt(target.mode, point), point, target, base, games, bestLoss, gameSeed)));
+        }
+        List<Score> scores = new ArrayList<>();
+        try
+        {
+            for (Future<Score> future : futures)
+            {
+                scores.add(future.get());
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("A tuning game failed", e.getCause());
+        }
+        return scores;
+    }
+
+    /**
+     * Plays one point on up to the given number of games, one after another on one reused session.
+     *
+     * @param mode The mode with the point's settings.
+     * @param bestLoss The best score so far; the point stops once its win rate alone is clearly worse.
+     */
+    private static Score evaluate(GameMode mode, double[] point, Target target, double[] base, int games, double bestLoss,
+                                  long gameSeed)
+    {
+        GameSession session = new GameSession("Tuner", mode, new GameRandom(gameSeed));
+        PlayerStrategy strategy = new CautiousStrategy();
+        int[] lengths = new int[MAX_TURNS + 1];
+        int played = 0;
+        int wins = 0;
+        boolean stoppedEarly = false;
+        while (played < games)
+        {
+            if (played > 0)
+            {
+                session.restart();
+            }
+            int turn = 0;
+            while (!session.isFinished() && turn < MAX_TURNS)
+            {
+                strategy.playTurn(session);
+                turn++;
+            }
+            wins += session.getHunter().hasWonGame() ? 1 : 0;
+            lengths[turn]++;
+            played++;
+
+            if (played % BATCH == 0 && played < games)
+            {
+                // three standard errors, with the win rate kept off 0 and 1 so a few games can't look certain
+                double winRate = (double) wins / played;
+                double spread = Math.max(winRate * (1 - winRate), 0.01);
+                if (Math.abs(winRate - target.winRate) - 3 * Math.sqrt(spread / played) > bestLoss)
+                {
+                    stoppedEarly = true;
+                    break;
+                }
+            }
+        }
+
+        double winRate = (double) wins / played;
+        int median = median(lengths, played);
+        double loss = Math.abs(winRate - target.winRate) + CLOSENESS_WEIGHT * distance(point, base);
+        if (target.medianTurns > 0)
+        {
+            loss += MEDIAN_WEIGHT * Math.abs(median - target.medianTurns) / target.medianTurns;
+        }
+        return new Score(point, played, winRate, median, loss, stoppedEarly);
+    }
+
+    private static int median(int[] lengths, int games)
+    {
+        int seen = 0;
+        for (int turns = 0; turns < lengths.length; turns++)
+        {
+            seen += lengths[turns];
+            if (seen * 2 >= games)
+            {
+                return turns;
+            }
+        }
+        return MAX_TURNS;
+    }
+
+    // the average distance between two points along each parameter, from 0 to 1
+    private static double distance(double[] a, double[] b)
+    {
+        double sum = 0;
+        for (int i = 0; i < PARAMETERS; i++)
+        {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return sum / PARAMETERS;
+    }
+
+    private double[] randomPoint(GameMode mode, double[] base)
+    {
+        double[] point = new double[PARAMETERS];
+        for (int i = 0; i < PARAMETERS; i++)
+        {
+            point[i] = random.nextDouble();
+        }
+        return fixed(mode, point, base);
+    }
+
+    // moves each parameter by up to step either way
+    private double[] nearbyPoint(GameMode mode, double[] from, double step)
+    {
+        double[] point = new double[PARAMETERS];
+        for (int i = 0; i < PARAMETERS; i++)
+        {
+            point[i] = Math.min(1, Math.max(0, from[i] + (random.nextDouble() * 2 - 1) * step));
+        }
+        return fixed(mode, point, from);
+    }
+
+    // the easy discount only matters in easy mode, so elsewhere it stays where it was
+    private static double[] fixed(GameMode mode, double[] point, double[] from)
+    {
+        if (!mode.isEasyMode())
+        {
+            point[EASY_DISCOUNT] = from[EASY_DISCOUNT];
+        }
+        return point;
+    }
+
+    /**
+     * @return Where a mode's settings are in the search box.
+     */
+    private static double[] pointOf(GameMode mode)
+    {
+        BrawlRules rules = mode.getBrawlRules();
+        double[] values = new double[PARAMETERS];
+        values[MARKDOWN] = mode.getMarkdown();
+        values[TOUGHNESS] = mode.getToughness();
+        values[STARTING_GOLD] = mode.getStartingGold();
+        values[NO_TROUBLE_CHANCE] = rules.getNoTroubleChance();
+        values[TOUGH_NO_TROUBLE_CHANCE] = rules.getToughNoTroubleChance();
+        values[WIN_GOLD_MIN] = rules.getWinGoldMin();
+        values[WIN_GOLD_MAX] = rules.getWinGoldMax();
+        values[LOSS_GOLD_MIN] = rules.getLossGoldMin();
+        values[LOSS_GOLD_MAX] = rules.getLossGoldMax();
+        values[EASY_DISCOUNT] = easyDiscountOf(mode);
+
+        double[] point = new double[PARAMETERS];
+        for (int i = 0; i < PARAMETERS; i++)
+        {
+            point[i] = Math.min(1, Math.max(0, (values[i] - MIN[i]) / (MAX[i] - MIN[i])));
+        }
+        return point;
+    }
+
+    // the value of one parameter at a point, rounded to a whole number or to three places so the config stays readable
+    private static double valueAt(double[] point, int parameter)
+    {
+        double value = MIN[parameter] + point[parameter] * (MAX[parameter] - MIN[parameter]);
+        return WHOLE[parameter] ? Math.round(value) : Math.round(value * 1000) / 1000.0;
+    }
+
+    /**
+     * @return The mode with the settings at a point. The tough-town chance is never below the sleepy-town
+     *         one, and no maximum is below its minimum.
+     */
+    private static GameMode modeAt(GameMode mode, double[] point)
+    {
+        double noTroubleChance = valueAt(point, NO_TROUBLE_CHANCE);
+        int winGoldMin = (int) valueAt(point, WIN_GOLD_MIN);
+        int lossGoldMin = (int) valueAt(point, LOSS_GOLD_MIN);
+        BrawlRules rules = new BrawlRules(noTroubleChance,
+                Math.max(noTroubleChance, valueAt(point, TOUGH_NO_TROUBLE_CHANCE)),
+                winGoldMin, Math.max(winGoldMin, (int) valueAt(point, WIN_GOLD_MAX)),
+                lossGoldMin, Math.max(lossGoldMin, (int) valueAt(point, LOSS_GOLD_MAX)),
+                mode.getBrawlRules().isAlwaysWin());
+        return new GameMode(mode.getName(), valueAt(point, MARKDOWN), valueAt(point, TOUGHNESS),
+                (int) valueAt(point, STARTING_GOLD), mode.isCheatMode(), mode.isEasyMode(), rules,
+                easyCosts(valueAt(point, EASY_DISCOUNT)));
+    }
+
+    // easy prices with the standard discounts scaled; a scale of 1 gives the standard easy prices
+    private static int[] easyCosts(double scale)
+    {
+        int[] standard = Shop.getStandardEasyCosts();
+        int[] costs = new int[standard.length];
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            int cost = Shop.getStandardCost(itemId);
+            costs[itemId] = Math.max(1, cost - (int) Math.round((cost - standard[itemId]) * scale));
+        }
+        return costs;
+    }
+
+    // the scale of a mode's easy discounts against the standard ones, weighted by price
+    private static double easyDiscountOf(GameMode mode)
+    {
+        int[] standard = Shop.getStandardEasyCosts();
+        int[] costs = mode.getEasyCosts();
+        double discount = 0;
+        double standardDiscount = 0;
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            discount += Shop.getStandardCost(itemId) - costs[itemId];
+            standardDiscount += Shop.getStandardCost(itemId) - standard[itemId];
+        }
+        return discount / standardDiscount;
+    }
+
+    private static String describe(GameMode mode)
+    {
+        BrawlRules rules = mode.getBrawlRules();
+        String text = String.format("markdown %.3f, toughness %.3f, starting gold %d, no trouble %.3f/%.3f, win %d-%d, lose %d-%d",
+                mode.getMarkdown(), mode.getToughness(), mode.getStartingGold(), rules.getNoTroubleChance(),
+                rules.getToughNoTroubleChance(), rules.getWinGoldMin(), rules.getWinGoldMax(),
+                rules.getLossGoldMin(), rules.getLossGoldMax());
+        return mode.isEasyMode() ? text + ", easy prices " + Arrays.toString(Arrays.copyOf(mode.getEasyCosts(), Items.SHOP_ITEM_COUNT)) : text;
+    }
+
+    // "mode=winRate[:medianTurns]"
+    private static Target parseTarget(String arg)
+    {
+        int equals = arg.indexOf('=');
+        if (equals < 0)
+        {
+            return null;
+        }
+        GameMode mode = GameMode.fromName(arg.substring(0, equals));
+        if (mode == null || mode.isCheatMode())
+        {
+            return null;
+        }
+        String[] values = arg.substring(equals + 1).split(":");
+        try
+        {
+            double winRate = Double.parseDouble(values[0]);
+            int medianTurns = values.length > 1 ? Integer.parseInt(values[1]) : 0;
+            return winRate >= 0 && winRate <= 1 ? new Target(mode, winRate, medianTurns) : null;
+        }
+        catch (NumberFormatException e)
+        {
+            return null;
+        }
+    }
+}
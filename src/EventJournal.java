@@ -0,0 +1,302 @@
+/**
+ * The EventJournal class keeps an append-only record of every game event, for analytics and for
+ * settling disputes about what happened in a game.<p>
+ * Events are stored as fixed-size 32-byte records in segment files ("events-000000.log", ...) that are
+ * memory-mapped for writing. A writing thread claims a slot by bumping an atomic counter, fills the slot
+ * in, and then publishes it by writing the record's header last. Nothing is locked on the way, so game
+ * threads never wait for each other or for the disk; the operating system writes the mapped pages out.
+ * A new segment is mapped when the current one fills up.<p>
+ * Record layout (little-endian):
+ * <pre>
+ *  0  int   header: type | (item id + 1) &lt;&lt; 8 | format version &lt;&lt; 16 (0 means the slot is empty)
+ *  4  int   gold that changed hands
+ *  8  long  timestamp, milliseconds since the epoch
+ * 16  long  session id
+ * 24  int   the hunter's gold after the event
+ * 28  int   unused
+ * </pre>
+ * Run it with: java EventJournal directory, to print a journal.
+ */
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+public class EventJournal implements AutoCloseable
+{
+    public static final int RECORD_SIZE = 32;
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final int FORMAT_VERSION = 1;
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // segments this far behind the newest one are unmapped once nothing should be writing to them
+    private static final int SEGMENTS_KEPT_MAPPED = 2;
+
+    private static final VarHandle INT_AT =
+            MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    //instance variables
+    private final Path directory;
+    private final long recordsPerSegment;
+    private final AtomicLong nextSequence;
+    private final Map<Long, MappedByteBuffer> segments = new ConcurrentHashMap<>();
+    private volatile Segment newest;
+
+    /**
+     * The newest segment, cached so that writers don't need to look it up in the map.
+     */
+    private static class Segment
+    {
+        final long number;
+        final MappedByteBuffer buffer;
+
+        Segment(long number, MappedByteBuffer buffer)
+        {
+            this.number = number;
+            this.buffer = buffer;
+        }
+    }
+
+    //Constructor
+    /**
+     * Opens a journal, carrying on after any events already in the directory.
+     *
+     * @param directory The directory the segment files are kept in; created if it doesn't exist.
+     * @param segmentSize The size of each segment file in bytes; rounded down to whole records.
+     */
+    public EventJournal(Path directory, long segmentSize) throws IOException
+    {
+        this.directory = directory;
+        Files.createDirectories(directory);
+        recordsPerSegment = Math.max(1, segmentSize / RECORD_SIZE);
+        nextSequence = new AtomicLong(findEnd(directory, recordsPerSegment * RECORD_SIZE));
+    }
+
+    public EventJournal(Path directory) throws IOException
+    {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: java EventJournal directory");
+            return;
+        }
+        long count = read(Path.of(args[0]), DEFAULT_SEGMENT_SIZE, System.out::println);
+        System.out.println(count + " events");
+    }
+
+    /**
+     * @return The number of events written so far, including those from earlier runs.
+     */
+    public long size()
+    {
+        return nextSequence.get();
+    }
+
+    /**
+     * @param sessionId The id written with every event of one game.
+     * @return A sink that writes a game's events to this journal.
+     */
+    public GameEventSink sinkFor(long sessionId)
+    {
+        return (type, itemId, amount, gold) -> append(sessionId, type, itemId, amount, gold);
+    }
+
+    /**
+     * Writes one event. Safe to call from any number of threads at once.
+     */
+    public void append(long sessionId, int type, int itemId, int amount, int gold)
+    {
+        long sequence = nextSequence.getAndIncrement();
+        long segment = sequence / recordsPerSegment;
+        Segment current = newest;
+        MappedByteBuffer buffer;
+        if (current != null && current.number == segment)
+        {
+            buffer = current.buffer;
+        }
+        else
+        {
+            buffer = segment(segment);
+        }
+
+        int offset = (int) ((sequence % recordsPerSegment) * RECORD_SIZE);
+        buffer.putInt(offset + 4, amount);
+        buffer.putLong(offset + 8, System.currentTimeMillis());
+        buffer.putLong(offset + 16, sessionId);
+        buffer.putInt(offset + 24, gold);
+        // the header goes last, so a reader never sees a half-written record
+        INT_AT.setRelease(buffer, offset, type | (itemId + 1) << 8 | FORMAT_VERSION << 16);
+    }
+
+    /**
+     * Flushes every mapped segment to disk.
+     */
+    public void flush()
+    {
+        for (MappedByteBuffer buffer : segments.values())
+        {
+            buffer.force();
+        }
+    }
+
+    public void close()
+    {
+        flush();
+        segments.clear();
+        newest = null;
+    }
+
+    /**
+     * Reads a journal from start to finish, skipping any slot that was claimed but never written.
+     *
+     * @param directory The journal's directory.
+     * @param segmentSize The segment size the journal was written with.
+     * @param reader Called with each event, in the order they were written.
+     * @return The number of events read.
+     */
+    public static long read(Path directory, long segmentSize, Consumer<GameEvent> reader) throws IOException
+    {
+        long recordsPerSegment = Math.max(1, segmentSize / RECORD_SIZE);
+        long count = 0;
+        for (Path file : segmentFiles(directory))
+        {
+            long segment = segmentNumber(file);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+            {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                long records = channel.size() / RECORD_SIZE;
+                for (long record = 0; record < records; record++)
+                {
+                    int offset = (int) (record * RECORD_SIZE);
+                    int header = (int) INT_AT.getAcquire(buffer, offset);
+                    if (header == 0)
+                    {
+                        continue;
+                    }
+                    reader.accept(new GameEvent(segment * recordsPerSegment + record,
+                            buffer.getLong(offset + 8), buffer.getLong(offset + 16),
+                            header & 0xff, ((header >>> 8) & 0xff) - 1,
+                            buffer.getInt(offset + 4), buffer.getInt(offset + 24)));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    // maps a segment on the rare path where a writer moves into a segment that isn't the newest one
+    private synchronized MappedByteBuffer segment(long segment)
+    {
+        MappedByteBuffer buffer = segments.get(segment);
+        if (buffer != null)
+        {
+            return buffer;
+        }
+        try (FileChannel channel = FileChannel.open(segmentPath(directory, segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, recordsPerSegment * RECORD_SIZE);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        catch (IOException e)
+        {
+            throw new IllegalStateException("Could not map journal segment " + segment, e);
+        }
+        segments.put(segment, buffer);
+        if (newest == null || segment > newest.number)
+        {
+            newest = new Segment(segment, buffer);
+            retireOldSegments(segment);
+        }
+        return buffer;
+    }
+
+    private void retireOldSegments(long newest)
+    {
+        for (Long segment : segments.keySet())
+        {
+            if (segment <= newest - SEGMENTS_KEPT_MAPPED)
+            {
+                MappedByteBuffer buffer = segments.remove(segment);
+                if (buffer != null)
+                {
+                    buffer.force();
+                }
+            }
+        }
+    }
+
+    // finds the sequence number after the last written record, so a reopened journal appends to the end
+    private static long findEnd(Path directory, long segmentBytes) throws IOException
+    {
+        List<Path> files = segmentFiles(directory);
+        if (files.isEmpty())
+        {
+            return 0;
+        }
+        Path last = files.get(files.size() - 1);
+        long recordsPerSegment = segmentBytes / RECORD_SIZE;
+        long end = segmentNumber(last) * recordsPerSegment;
+        try (FileChannel channel = FileChannel.open(last, StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            long records = channel.size() / RECORD_SIZE;
+            for (long record = records - 1; record >= 0; record--)
+            {
+                if (buffer.getInt((int) (record * RECORD_SIZE)) != 0)
+                {
+                    return end + record + 1;
+                }
+            }
+        }
+        return end;
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory))
+        {
+            return files;
+        }
+        try (Stream<Path> list = Files.list(directory))
+        {
+            list.filter(file -> {
+                String name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().forEach(files::add);
+        }
+        return files;
+    }
+
+    private static Path segmentPath(Path directory, long segment)
+    {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, segment, SEGMENT_SUFFIX));
+    }
+
+    private static long segmentNumber(Path file)
+    {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,502 @@
+/**
+ * The GameApiServer class serves Treasure Hunter as a small HTTP API that speaks JSON, for front ends that
+ * can't drive a console game.<p>
+ * Each game is a GameSession, so every action is the same one the menu would take, with nothing printed.
+ * Requests run on the JDK's built-in HTTP server, one session thread per request (see SessionThreads), and
+ * two requests for the same game take turns. Every answer is the game's state:
+ * <pre>
+ * POST   /sessions?mode=normal&amp;name=Ann&amp;seed=42   start a game; mode, name and seed are optional
+ * GET    /sessions/{id}                           the game as it is
+ * POST   /sessions/{id}/buy?item=rope             buy from the shop in the current town
+ * POST   /sessions/{id}/sell?item=rope            sell to it
+ * POST   /sessions/{id}/move                      cross the terrain to the next town
+ * POST   /sessions/{id}/back                      cross it back to the town before
+ * POST   /sessions/{id}/trouble                   look for trouble
+ * POST   /sessions/{id}/hunt                      hunt for treasure
+ * DELETE /sessions/{id}                           give up the game and forget it
+ * </pre>
+ * An action answers with "ok": false if it didn't work out, such as a purchase the hunter couldn't
+ * afford; the news says why. An unknown game is 404, a bad mode or item, a game id that isn't a number
+ * or a badly escaped query is 400, and any action on a game that is over is 409.<p>
+ * Games are kept in a SessionStore, which moves the least recently used ones to disk once they fill its
+ * memory budget and loads them back in on their next command. GET /stats shows its hits, misses and
+ * evictions. With --sessions directory, games are kept there and outlive the server; otherwise they go in
+ * a temporary directory. --memory sets the budget in megabytes.<p>
+ * The API has no authentication, so it only listens on the loopback interface unless it is started with
+ * --public, which listens on every interface.<p>
+ * Run it with: java GameApiServer [--sessions directory] [--memory megabytes] [--public] [port],
+ * then try e.g. "curl -X POST localhost:4568/sessions?mode=easy".
+ * LoadGenerator puts it under load.
+ */
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+public class GameApiServer implements AutoCloseable
+{
+    public static final int DEFAULT_PORT = 4568;
+
+    private static final String PATH = "/sessions";
+    private static final String STATS_PATH = "/stats";
+
+    static
+    {
+        // the server writes the headers and the body separately, and with Nagle's algorithm on, the body then
+        // waits for the client's delayed ACK, about 40 ms on every request; GameServer turns it off for the same reason
+        if (System.getProperty("sun.net.httpserver.nodelay") == null)
+        {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    //instance variables
+    private final HttpServer server;
+    private final ExecutorService requests;
+    private final SessionStore store;
+
+    /**
+     * What to send back: a status and a JSON body.
+     */
+    private static class Answer
+    {
+        final int status;
+        final String json;
+
+        Answer(int status, String json)
+        {
+            this.status = status;
+            this.json = json;
+        }
+    }
+
+    //Constructor
+    /**
+     * Opens the server socket on the loopback interface and starts answering requests, keeping games in a
+     * temporary SessionStore with the default memory budget.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     */
+    public GameApiServer(int port) throws IOException
+    {
+        this(port, SessionStore.temporary(SessionStore.DEFAULT_BUDGET));
+    }
+
+    /**
+     * Opens the server socket on the loopback interface and starts answering requests.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param store Where the games are kept; close() closes it.
+     */
+    public GameApiServer(int port, SessionStore store) throws IOException
+    {
+        this(port, store, false);
+    }
+
+    /**
+     * Opens the server socket and starts answering requests.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     * @param store Where the games are kept; close() closes it.
+     * @param exposed Whether to listen on every interface rather than only the loopback one.
+     */
+    public GameApiServer(int port, SessionStore store, boolean exposed) throws IOException
+    {
+        this.store = store;
+        InetSocketAddress address = exposed ? new InetSocketAddress(port)
+                : new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+        server = HttpServer.create(address, 1024);
+        requests = SessionThreads.newPerSessionExecutor("api");
+        server.setExecutor(requests);
+        server.createContext(PATH, this::handle);
+        server.createContext(STATS_PATH, this::stats);
+        server.start();
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = DEFAULT_PORT;
+        Path directory = null;
+        long budget = SessionStore.DEFAULT_BUDGET;
+        boolean exposed = false;
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--sessions") && i + 1 < args.length)
+            {
+                directory = Path.of(args[++i]);
+            }
+            else if (args[i].equals("--memory") && i + 1 < args.length)
+            {
+                budget = Long.parseLong(args[++i]) * 1024 * 1024;
+            }
+            else if (args[i].equals("--public"))
+            {
+                exposed = true;
+            }
+            else
+            {
+                port = Integer.parseInt(args[i]);
+            }
+        }
+        SessionStore store = directory == null ? SessionStore.temporary(budget) : new SessionStore(directory, budget);
+        GameApiServer server = new GameApiServer(port, store, exposed);
+        System.out.println("Treasure Hunter API listening on http://" + (exposed ? "*:" : "localhost:") + server.getPort() + PATH
+                + (SessionThreads.hasVirtualThreads() ? " (virtual threads)" : " (platform threads)")
+                + ", games kept in " + store.getDirectory());
+    }
+
+    //Accessors
+    public int getPort()
+    {
+        return server.getAddress().getPort();
+    }
+
+    public SessionStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * Stops answering requests, waits up to a second for the ones already started, and closes the store.
+     */
+    public void close() throws IOException
+    {
+        server.stop(1);
+        requests.shutdown();
+        store.close();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            drain(exchange.getRequestBody());
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().substring(PATH.length()).split("/");
+            Map<String, String> query;
+            long id;
+            try
+            {
+                query = parseQuery(exchange.getRequestURI().getRawQuery());
+                id = path.length > 1 ? parseId(path[1]) : -1;
+            }
+            catch (IllegalArgumentException e)
+            {
+                error(exchange, 400, e.getMessage());
+                return;
+            }
+            if (path.length == 0 || (path.length == 1 && path[0].isEmpty()))
+            {
+                if (method.equals("POST"))
+                {
+                    start(exchange, query);
+                }
+                else
+                {
+                    error(exchange, 405, "Use POST to start a game");
+                }
+                return;
+            }
+
+            String action = path.length > 2 ? path[2] : null;
+            if (path.length > 3 || (action != null && !isAction(action)))
+            {
+                error(exchange, 404, "No such action: " + action);
+            }
+            else if (action == null && method.equals("GET"))
+            {
+                answer(exchange, store.use(id, session -> new Answer(200, state(id, session, true))));
+            }
+            else if (action == null && method.equals("DELETE"))
+            {
+                GameSession session = store.remove(id);
+                String state = null;
+                if (session != null)
+                {
+                    synchronized (session)
+                    {
+                        session.quit();
+                        state = state(id, session, true);
+                    }
+                }
+                answer(exchange, state == null ? null : new Answer(200, state));
+            }
+            else if (action != null && method.equals("POST"))
+            {
+                act(exchange, id, action, query.get("item"));
+            }
+            else
+            {
+                error(exchange, 405, "Not allowed here: " + method);
+            }
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private void stats(HttpExchange exchange) throws IOException
+    {
+        try
+        {
+            drain(exchange.getRequestBody());
+            ActionMetrics restores = store.getRestores();
+            respond(exchange, 200, "{\"inMemory\":" + store.getResidentCount() + ",\"bytes\":" + store.getResidentBytes()
+                    + ",\"budget\":" + store.getBudget() + ",\"onDisk\":" + store.getOnDiskCount()
+                    + ",\"hits\":" + store.getHits() + ",\"misses\":" + store.getMisses()
+                    + ",\"evictions\":" + store.getEvictions() + ",\"restoreP50Nanos\":" + restores.getP50Nanos()
+                    + ",\"restoreP99Nanos\":" + restores.getP99Nanos() + ",\"restoreMaxNanos\":" + restores.getMaxNanos() + "}");
+        }
+        finally
+        {
+            exchange.close();
+        }
+    }
+
+    private void start(HttpExchange exchange, Map<String, String> query) throws IOException
+    {
+        GameMode mode = GameMode.fromName(query.getOrDefault("mode", "normal"));
+        if (mode == null)
+        {
+            error(exchange, 400, "No such mode: " + query.get("mode"));
+            return;
+        }
+        GameRandom random;
+        try
+        {
+            random = query.containsKey("seed") ? new GameRandom(Long.parseLong(query.get("seed"))) : new GameRandom();
+        }
+        catch (NumberFormatException e)
+        {
+            error(exchange, 400, "The seed must be a number");
+            return;
+        }
+        GameSession session = new GameSession(query.getOrDefault("name", "Hunter"), mode, random);
+        long id = store.add(session);
+        String state;
+        synchronized (session)
+        {
+            state = state(id, session, true);
+        }
+        respond(exchange, 201, state);
+    }
+
+    private void act(HttpExchange exchange, long id, String action, String item) throws IOException
+    {
+        int itemId = Items.idOf(item);
+        if ((action.equals("buy") || action.equals("sell")) && itemId == Items.NONE)
+        {
+            error(exchange, 400, "No such item: " + item);
+            return;
+        }
+        // the game's state is read while it is locked, but sent after, so a slow client holds up nobody
+        answer(exchange, store.use(id, session -> session.isFinished()
+                ? new Answer(409, state(id, session, false))
+                : new Answer(200, state(id, session, act(session, action, itemId)))));
+    }
+
+    private static boolean isAction(String action)
+    {
+        switch (action)
+        {
+            case "buy":
+            case "sell":
+            case "move":
+            case "back":
+            case "trouble":
+            case "hunt":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // takes the action, and returns whether it worked out
+    private static boolean act(GameSession session, String action, int itemId)
+    {
+        switch (action)
+        {
+            case "buy":
+                return session.buy(itemId);
+            case "sell":
+                return session.sell(itemId);
+            case "move":
+                return session.move();
+            case "back":
+                return session.moveBack();
+            case "trouble":
+                session.lookForTrouble();
+                return true;
+            default:
+                session.huntForTreasure();
+                return true;
+        }
+    }
+
+    /**
+     * Writes what a player can see of their game as JSON.
+     */
+    static String state(long id, GameSession session, boolean ok)
+    {
+        Hunter hunter = session.getHunter();
+        Town town = session.getCurrentTown();
+        Shop shop = town.getShop();
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"id\":").append(id).append(",\"ok\":").append(ok);
+        json.append(",\"name\":");
+        appendString(json, hunter.getHunterName());
+        json.append(",\"mode\":");
+        appendString(json, session.getMode().getName());
+        json.append(",\"gold\":").append(hunter.getGold());
+        json.append(",\"kit\":[");
+        boolean first = true;
+        for (int itemId = 0; itemId < Items.COUNT; itemId++)
+        {
+            if (hunter.hasItem(itemId))
+            {
+                json.append(first ? "" : ",");
+                appendString(json, Items.nameOf(itemId));
+                first = false;
+            }
+        }
+        json.append("],\"treasures\":").append(hunter.getHuntedItemTotal());
+        json.append(",\"town\":").append(session.getWorld().getPosition());
+        json.append(",\"terrain\":");
+        appendString(json, town.getTerrain().getTerrainName());
+        json.append(",\"needs\":");
+        appendString(json, town.getTerrain().getNeededItem());
+        json.append(",\"tough\":").append(town.isToughTown());
+        json.append(",\"prices\":{");
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            json.append(itemId == 0 ? "" : ",");
+            appendString(json, Items.nameOf(itemId));
+            json.append(":{\"buy\":").append(shop.checkMarketPrice(itemId, true))
+                    .append(",\"sell\":").append(shop.checkMarketPrice(itemId, false))
+                    .append(",\"soldOut\":").append(shop.isSoldOut(itemId)).append('}');
+        }
+        json.append("},\"news\":");
+        appendString(json, town.getLatestNews());
+        json.append(",\"turns\":").append(session.getTurns());
+        json.append(",\"finished\":").append(session.isFinished());
+        json.append(",\"won\":").append(hunter.hasWonGame());
+        json.append(",\"lost\":").append(hunter.hasLostGame());
+        json.append(",\"quit\":").append(session.hasQuit());
+        return json.append('}').toString();
+    }
+
+    private static void appendString(StringBuilder json, String str)
+    {
+        json.append('"');
+        for (int i = 0; i < str.length(); i++)
+        {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                json.append('\\').append(c);
+            }
+            else if (c == '\n')
+            {
+                json.append("\\n");
+            }
+            else if (c < ' ')
+            {
+                json.append(String.format("\\u%04x", (int) c));
+            }
+            else
+            {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    // sends the answer, or a 404 if the command found no game
+    private static void answer(HttpExchange exchange, Answer answer) throws IOException
+    {
+        if (answer == null)
+        {
+            error(exchange, 404, "No such game");
+        }
+        else
+        {
+            respond(exchange, answer.status, answer.json);
+        }
+    }
+
+    private static void error(HttpExchange exchange, int status, String message) throws IOException
+    {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        appendString(json, message);
+        respond(exchange, status, json.append('}').toString());
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException
+    {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody())
+        {
+            out.write(body);
+        }
+    }
+
+    // the body is never used, but it has to be read for the connection to be kept open for the next request
+    private static void drain(InputStream body) throws IOException
+    {
+        body.transferTo(OutputStream.nullOutputStream());
+    }
+
+    private static long parseId(String id)
+    {
+        try
+        {
+            return Long.parseLong(id);
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("The game id must be a number: " + id);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query)
+    {
+        Map<String, String> parameters = new HashMap<>();
+        if (query == null)
+        {
+            return parameters;
+        }
+        for (String pair : query.split("&"))
+        {
+            int equals = pair.indexOf('=');
+            if (equals > 0)
+            {
+                parameters.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String text)
+    {
+        try
+        {
+            return URLDecoder.decode(text, StandardCharsets.UTF_8);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Badly escaped query: " + text, e);
+        }
+    }
+}
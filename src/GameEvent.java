@@ -0,0 +1,107 @@
+/**
+ * The GameEvent class is one event read back from the game's event journal.<p>
+ * It also lists the event types that Town, Shop and Hunter report to a GameEventSink.
+ */
+public class GameEvent
+{
+    // event types
+    public static final int PURCHASE = 1;
+    public static final int SALE = 2;
+    public static final int BRAWL_WON = 3;
+    public static final int BRAWL_LOST = 4;
+    public static final int TREASURE_FOUND = 5;
+    public static final int CROSSING = 6;
+    public static final int ITEM_BROKEN = 7;
+    public static final int GAME_WON = 8;
+    public static final int GAME_LOST = 9;
+
+    private static final String[] TYPE_NAMES = {"none", "purchase", "sale", "brawl won", "brawl lost",
+            "treasure found", "crossing", "item broken", "game won", "game lost"};
+
+    //instance variables
+    private final long sequence;
+    private final long timestamp;
+    private final long sessionId;
+    private final int type;
+    private final int itemId;
+    private final int amount;
+    private final int gold;
+
+    //Constructor
+    public GameEvent(long sequence, long timestamp, long sessionId, int type, int itemId, int amount, int gold)
+    {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.sessionId = sessionId;
+        this.type = type;
+        this.itemId = itemId;
+        this.amount = amount;
+        this.gold = gold;
+    }
+
+    /**
+     * @param type An event type.
+     * @return The event type's name, for printing.
+     */
+    public static String typeName(int type)
+    {
+        if (type < 0 || type >= TYPE_NAMES.length)
+        {
+            return "unknown";
+        }
+        return TYPE_NAMES[type];
+    }
+
+    //Accessors
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * @return When the event happened, in milliseconds since the epoch.
+     */
+    public long getTimestamp()
+    {
+        return timestamp;
+    }
+
+    public long getSessionId()
+    {
+        return sessionId;
+    }
+
+    public int getType()
+    {
+        return type;
+    }
+
+    public int getItemId()
+    {
+        return itemId;
+    }
+
+    public int getAmount()
+    {
+        return amount;
+    }
+
+    public int getGold()
+    {
+        return gold;
+    }
+
+    public String toString()
+    {
+        String str = "#" + sequence + " session " + sessionId + ": " + typeName(type);
+        if (itemId != Items.NONE)
+        {
+            str += " " + Items.nameOf(itemId);
+        }
+        if (amount != 0)
+        {
+            str += " (" + amount + " gold)";
+        }
+        return str + ", gold now " + gold;
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * A GameEventSink receives the events of a game as they happen: purchases, sales, brawls,
+ * treasure, crossings and the end of the game.<p>
+ * Events are passed as plain numbers, with the types listed in GameEvent, so reporting one
+ * doesn't create any objects.
+ */
+public interface GameEventSink
+{
+    /**
+     * @param type The kind of event, one of the GameEvent type constants.
+     * @param itemId The item involved, or Items.NONE.
+     * @param amount The gold that changed hands, or 0.
+     * @param gold The hunter's gold after the event.
+     */
+    void onEvent(int type, int itemId, int amount, int gold);
+}
@@ -0,0 +1,163 @@
+/**
+ * The GameIO class is where a game reads the player's input and writes what the player sees.<p>
+ * The console game uses the shared console instance, which wraps System.in and System.out;
+ * the game server gives each connection its own GameIO over the connection's streams.
+ * Output is buffered and flushed whenever the game waits for input, so a prompt is always
+ * seen before the game blocks on the answer.<p>
+ * When the input runs out (the player hangs up or a piped script ends), readLine() returns ""
+ * and isAtEnd() becomes true, so the game can finish normally instead of throwing.
+ */
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+public class GameIO
+{
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    // System.in must only be wrapped once, or the wrappers steal buffered lines from each other
+    private static GameIO console;
+
+    //instance variables
+    private final BufferedReader in;
+    private final PrintWriter out;
+    private boolean atEnd;
+    // how long reads have blocked, so timed actions can leave the player's thinking time out
+    private long waitNanos;
+
+    //Constructor
+    /**
+     * @param in Where the player's input comes from.
+     * @param out Where the game's output goes.
+     * @param charset The character encoding of both streams.
+     * @param bufferSize The size of the input and output buffers, in characters.
+     */
+    public GameIO(InputStream in, OutputStream out, Charset charset, int bufferSize)
+    {
+        this.in = new BufferedReader(new InputStreamReader(in, charset), bufferSize);
+        this.out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(out, charset), bufferSize), false);
+    }
+
+    /**
+     * @param in Where the player's input comes from.
+     * @param out Where the game's output goes.
+     */
+    public GameIO(InputStream in, OutputStream out)
+    {
+        this(in, out, StandardCharsets.UTF_8, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @return The GameIO for System.in and System.out.
+     */
+    public static synchronized GameIO console()
+    {
+        if (console == null)
+        {
+            console = new GameIO(System.in, System.out, Charset.defaultCharset(), DEFAULT_BUFFER_SIZE);
+        }
+        return console;
+    }
+
+    /**
+     * Flushes any output and waits for the next line of input.
+     *
+     * @return The line, without its line ending, or "" once the input has run out.
+     */
+    public String readLine()
+    {
+        out.flush();
+        return nextInputLine();
+    }
+
+    /**
+     * Reads the next line of input without flushing the output first.
+     *
+     * @return The line, without its line ending, or "" once the input has run out.
+     */
+    protected String nextInputLine()
+    {
+        if (atEnd)
+        {
+            return "";
+        }
+        long start = GameMetrics.ENABLED ? System.nanoTime() : 0;
+        try
+        {
+            String line = in.readLine();
+            if (line != null)
+            {
+                return line;
+            }
+        }
+        catch (IOException e)
+        {
+            // a dropped connection is treated the same as the end of the input
+        }
+        finally
+        {
+            if (GameMetrics.ENABLED)
+            {
+                waitNanos += System.nanoTime() - start;
+            }
+        }
+        atEnd = true;
+        return "";
+    }
+
+    /**
+     * @return How long this GameIO has waited for input in all, in nanoseconds; only counted when metrics are enabled.
+     */
+    public long getWaitNanos()
+    {
+        return waitNanos;
+    }
+
+    /**
+     * @return true once the input has run out.
+     */
+    public boolean isAtEnd()
+    {
+        return atEnd;
+    }
+
+    public void print(String str)
+    {
+        out.print(str);
+    }
+
+    public void println(String str)
+    {
+        out.println(str);
+    }
+
+    public void println(Object obj)
+    {
+        out.println(obj);
+    }
+
+    public void println()
+    {
+        out.println();
+    }
+
+    public void flush()
+    {
+        out.flush();
+    }
+
+    /**
+     * Writes characters straight to the output buffer, for subclasses that build their own output.
+     */
+    protected void write(char[] chars, int length)
+    {
+        out.write(chars, 0, length);
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * The GameMetrics class holds the metrics for each action on the command path.<p>
+ * Metrics are off unless the JVM is started with -Dtreasurehunter.metrics=true. The switch is read once
+ * into a constant, so when it is off the JIT removes the calls altogether. When it is on, every action is
+ * counted, and one run in SAMPLE_RATE is timed for the latency histogram; reading the clock twice costs
+ * more than counting, so sampling keeps the average cost of recording down to a few nanoseconds.<p>
+ * The metrics are published as JMX MBeans named "TreasureHunter:type=Action,name=...", and with
+ * -Dtreasurehunter.metrics.dumpSeconds=n they are also printed to System.err every n seconds.<p>
+ * An action is measured like this:
+ * <pre>
+ * long start = GameMetrics.start();
+ * ...
+ * GameMetrics.LOOK_FOR_TROUBLE.record(start);
+ * </pre>
+ * An action that asks the player something, like a visit to the shop, moves its start on past the time
+ * spent waiting for the answer with skip(), so that only the game's own work is timed.
+ */
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class GameMetrics
+{
+    public static final boolean ENABLED = Boolean.getBoolean("treasurehunter.metrics");
+
+    // one run in this many is timed; a power of two
+    public static final int SAMPLE_RATE = 64;
+
+    public static final ActionMetrics COMMAND = new ActionMetrics("TreasureHunter.command");
+    public static final ActionMetrics SHOP_ENTER = new ActionMetrics("Shop.enter");
+    public static final ActionMetrics SHOP_BUY = new ActionMetrics("Shop.buy");
+    public static final ActionMetrics SHOP_SELL = new ActionMetrics("Shop.sell");
+    public static final ActionMetrics LEAVE_TOWN = new ActionMetrics("Town.leaveTown");
+    public static final ActionMetrics LOOK_FOR_TROUBLE = new ActionMetrics("Town.lookForTrouble");
+    public static final ActionMetrics HUNT_FOR_TREASURE = new ActionMetrics("Town.huntForTreasure");
+
+    private static final List<ActionMetrics> ALL = List.of(COMMAND, SHOP_ENTER, SHOP_BUY, SHOP_SELL,
+            LEAVE_TOWN, LOOK_FOR_TROUBLE, HUNT_FOR_TREASURE);
+
+    static
+    {
+        if (ENABLED)
+        {
+            registerMBeans();
+            long dumpSeconds = Long.getLong("treasurehunter.metrics.dumpSeconds", 0);
+            if (dumpSeconds > 0)
+            {
+                ScheduledExecutorService dumper = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "metrics-dump");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                dumper.scheduleAtFixedRate(() -> System.err.print(report()), dumpSeconds, dumpSeconds, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private GameMetrics()
+    {
+    }
+
+    /**
+     * Marks the start of an action.
+     *
+     * @return The time now, if this run is to be timed; otherwise 0.
+     */
+    public static long start()
+    {
+        if (!ENABLED || (ThreadLocalRandom.current().nextInt() & (SAMPLE_RATE - 1)) != 0)
+        {
+            return 0;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Moves the start of an action on past time that wasn't the action's own, such as waiting for the player.
+     *
+     * @param start What start() returned.
+     * @param nanos How long the action was held up.
+     * @return The later start, or 0 if the action isn't being timed.
+     */
+    public static long skip(long start, long nanos)
+    {
+        return start == 0 ? 0 : start + nanos;
+    }
+
+    /**
+     * @return Every action's metrics.
+     */
+    public static List<ActionMetrics> all()
+    {
+        return ALL;
+    }
+
+    /**
+     * @return The metrics as text, one line per action.
+     */
+    public static String report()
+    {
+        StringBuilder report = new StringBuilder();
+        for (ActionMetrics metrics : ALL)
+        {
+            report.append(metrics).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static void registerMBeans()
+    {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ActionMetrics metrics : ALL)
+        {
+            try
+            {
+                ObjectName name = new ObjectName("TreasureHunter:type=Action,name=" + metrics.getName());
+                if (!server.isRegistered(name))
+                {
+                    server.registerMBean(metrics, name);
+                }
+            }
+            catch (JMException e)
+            {
+                System.err.println("Could not publish metrics for " + metrics.getName() + ": " + e);
+            }
+        }
+    }
+}
@@ -0,0 +1,407 @@
+/**
+ * The GameMode class holds the settings that change between the difficulty levels of the Treasure Hunter game.<p>
+ * Each mode knows how to build the shops and towns a hunter will travel through, so the console game
+ * and the headless simulation set up their games the same way.<p>
+ * The standard modes can be overridden from a properties file, such as one written by DifficultyTuner,
+ * by starting the JVM with -Dtreasurehunter.modes=file. Each setting is a key of the form
+ * "mode.setting" (for example "normal.toughness=0.4"); anything the file leaves out keeps its usual value.
+ * A file that can't be read, or that has a setting that isn't one of the modes', isn't a number or is out
+ * of range, is reported on System.err and ignored, and the game is played with the standard modes.
+ */
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+public class GameMode
+{
+    public static final String CONFIG_PROPERTY = "treasurehunter.modes";
+
+    // the settings a config can have for each mode, after the mode's name and a "."
+    private static final String[] SETTINGS = {"markdown", "toughness", "startingGold", "noTroubleChance",
+            "toughNoTroubleChance", "winGoldMin", "winGoldMax", "lossGoldMin", "lossGoldMax", "alwaysWin"};
+
+    public static final GameMode EASY;
+    public static final GameMode NORMAL;
+    public static final GameMode HARD;
+    public static final GameMode CHEAT;
+
+    static
+    {
+        GameMode[] modes = {
+                new GameMode("easy", 0.5, 0.20, 20, false, true, BrawlRules.EASY),
+                new GameMode("normal", 0.27, 0.4, 10, false, false, BrawlRules.NORMAL),
+                new GameMode("hard", 0.17, 0.75, 10, false, false, BrawlRules.HARD),
+                new GameMode("ch34t", 0, 0, 10, true, false, BrawlRules.CHEAT)};
+        String file = System.getProperty(CONFIG_PROPERTY);
+        if (file != null)
+        {
+            // thrown from here, a bad file would only show up as an ExceptionInInitializerError
+            try
+            {
+                modes = configure(loadConfig(file), modes);
+            }
+            catch (UncheckedIOException | IllegalArgumentException e)
+            {
+                System.err.println("Ignoring -D" + CONFIG_PROPERTY + "=" + file + " and playing with the standard modes: "
+                        + e.getMessage());
+            }
+        }
+        EASY = modes[0];
+        NORMAL = modes[1];
+        HARD = modes[2];
+        CHEAT = modes[3];
+    }
+
+    //instance variables
+    private final String name;
+    private final double markdown;
+    private final double toughness;
+    private final int startingGold;
+    private final boolean cheatMode;
+    private final boolean easyMode;
+    private final BrawlRules brawlRules;
+    private final int[] easyCosts;
+    // every town builds a shop, and all of this mode's shops share one price table
+    private final PriceTable prices;
+
+    //Constructor
+    /**
+     * @param name The name of the mode, as used by the Town.
+     * @param markdown The fraction of an item's price a shop pays when buying it back.
+     * @param toughness The chance of a town being a tough town.
+     * @param startingGold The gold a hunter starts the game with.
+     * @param cheatMode true if everything in the shop costs 1 gold.
+     * @param easyMode true if the shop uses the easy prices.
+     * @param brawlRules The rules for brawls in town.
+     */
+    public GameMode(String name, double markdown, double toughness, int startingGold, boolean cheatMode, boolean easyMode,
+                    BrawlRules brawlRules)
+    {
+        this(name, markdown, toughness, startingGold, cheatMode, easyMode, brawlRules, Shop.getStandardEasyCosts());
+    }
+
+    /**
+     * Builds a mode with its own easy mode prices, for example ones found by DifficultyTuner.
+     * @param easyCosts The price of each item, indexed by item id, in a mode that uses the easy prices.
+     */
+    public GameMode(String name, double markdown, double toughness, int startingGold, boolean cheatMode, boolean easyMode,
+                    BrawlRules brawlRules, int[] easyCosts)
+    {
+        this.name = name;
+        this.markdown = markdown;
+        this.toughness = toughness;
+        this.startingGold = startingGold;
+        this.cheatMode = cheatMode;
+        this.easyMode = easyMode;
+        this.brawlRules = brawlRules;
+        this.easyCosts = easyCosts.clone();
+        prices = Shop.createPriceTable(markdown, cheatMode, easyMode, this.easyCosts);
+    }
+
+    /**
+     * Reads a mode's settings from a config, keeping the defaults' value for any setting the config leaves out.
+     *
+     * @param config Settings keyed by "mode.setting", as written by store().
+     * @param defaults The mode to read settings for, and the values to fall back on.
+     * @return The configured mode.
+     * @throws IllegalArgumentException if a setting isn't a number, or is out of range.
+     */
+    public static GameMode fromProperties(Properties config, GameMode defaults)
+    {
+        String prefix = defaults.name + ".";
+        BrawlRules rules = defaults.brawlRules;
+        rules = new BrawlRules(
+                getDouble(config, prefix + "noTroubleChance", rules.getNoTroubleChance()),
+                getDouble(config, prefix + "toughNoTroubleChance", rules.getToughNoTroubleChance()),
+                getInt(config, prefix + "winGoldMin", rules.getWinGoldMin()),
+                getInt(config, prefix + "winGoldMax", rules.getWinGoldMax()),
+                getInt(config, prefix + "lossGoldMin", rules.getLossGoldMin()),
+                getInt(config, prefix + "lossGoldMax", rules.getLossGoldMax()),
+                Boolean.parseBoolean(config.getProperty(prefix + "alwaysWin", String.valueOf(rules.isAlwaysWin()))));
+        checkRange(prefix + "noTroubleChance", rules.getNoTroubleChance(), 0, 1);
+        checkRange(prefix + "toughNoTroubleChance", rules.getToughNoTroubleChance(), 0, 1);
+        checkRange(prefix + "winGoldMin", rules.getWinGoldMin(), 0, rules.getWinGoldMax());
+        checkRange(prefix + "lossGoldMin", rules.getLossGoldMin(), 0, rules.getLossGoldMax());
+        int[] easyCosts = defaults.easyCosts.clone();
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            String key = prefix + "easyPrice." + Items.nameOf(itemId);
+            easyCosts[itemId] = getInt(config, key, easyCosts[itemId]);
+            checkRange(key, easyCosts[itemId], 1, Integer.MAX_VALUE);
+        }
+        double markdown = getDouble(config, prefix + "markdown", defaults.markdown);
+        double toughness = getDouble(config, prefix + "toughness", defaults.toughness);
+        int startingGold = getInt(config, prefix + "startingGold", defaults.startingGold);
+        checkRange(prefix + "markdown", markdown, 0, 1);
+        checkRange(prefix + "toughness", toughness, 0, 1);
+        checkRange(prefix + "startingGold", startingGold, 0, Integer.MAX_VALUE);
+        return new GameMode(defaults.name, markdown, toughness, startingGold, defaults.cheatMode, defaults.easyMode,
+                rules, easyCosts);
+    }
+
+    /**
+     * Reads every mode's settings from a config, after checking that it has no setting the modes don't.
+     *
+     * @param config Settings keyed by "mode.setting", as written by store().
+     * @param defaults The modes to read settings for, and the values to fall back on.
+     * @return The configured modes, in the same order.
+     * @throws IllegalArgumentException if a setting isn't one of the modes', isn't a number, or is out of range.
+     */
+    public static GameMode[] configure(Properties config, GameMode[] defaults)
+    {
+        Set<String> known = new HashSet<>();
+        for (GameMode mode : defaults)
+        {
+            for (String setting : SETTINGS)
+            {
+                known.add(mode.name + "." + setting);
+            }
+            for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+            {
+                known.add(mode.name + ".easyPrice." + Items.nameOf(itemId));
+            }
+        }
+        for (String key : config.stringPropertyNames())
+        {
+            if (!known.contains(key))
+            {
+                throw new IllegalArgumentException("There is no setting called " + key);
+            }
+        }
+        GameMode[] modes = new GameMode[defaults.length];
+        for (int i = 0; i < defaults.length; i++)
+        {
+            modes[i] = fromProperties(config, defaults[i]);
+        }
+        return modes;
+    }
+
+    /**
+     * Writes this mode's settings into a config, in the form fromProperties() reads.
+     *
+     * @param config The config to add the settings to.
+     */
+    public void store(Properties config)
+    {
+        String prefix = name + ".";
+        config.setProperty(prefix + "markdown", String.valueOf(markdown));
+        config.setProperty(prefix + "toughness", String.valueOf(toughness));
+        config.setProperty(prefix + "startingGold", String.valueOf(startingGold));
+        config.setProperty(prefix + "noTroubleChance", String.valueOf(brawlRules.getNoTroubleChance()));
+        config.setProperty(prefix + "toughNoTroubleChance", String.valueOf(brawlRules.getToughNoTroubleChance()));
+        config.setProperty(prefix + "winGoldMin", String.valueOf(brawlRules.getWinGoldMin()));
+        config.setProperty(prefix + "winGoldMax", String.valueOf(brawlRules.getWinGoldMax()));
+        config.setProperty(prefix + "lossGoldMin", String.valueOf(brawlRules.getLossGoldMin()));
+        config.setProperty(prefix + "lossGoldMax", String.valueOf(brawlRules.getLossGoldMax()));
+        config.setProperty(prefix + "alwaysWin", String.valueOf(brawlRules.isAlwaysWin()));
+        if (easyMode)
+        {
+            for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+            {
+                config.setProperty(prefix + "easyPrice." + Items.nameOf(itemId), String.valueOf(easyCosts[itemId]));
+            }
+        }
+    }
+
+    /**
+     * Finds the mode a Town was given by name. Any name that isn't one of the modes plays by the
+     * hard mode rules, which is what the town always did with a mode it didn't recognise.
+     *
+     * @param name The mode's name.
+     * @return The matching mode, or HARD.
+     */
+    public static GameMode forTown(String name)
+    {
+        GameMode mode = fromName(name);
+        return mode == null ? HARD : mode;
+    }
+
+    /**
+     * Finds the mode matching what the player typed at the "Hard, Easy, or Normal mode?" prompt.
+     *
+     * @param choice The player's answer.
+     * @return The matching mode, or null if the answer isn't a mode.
+     */
+    public static GameMode fromChoice(String choice)
+    {
+        if (choice.equalsIgnoreCase("h"))
+        {
+            return HARD;
+        }
+        else if (choice.equalsIgnoreCase("e"))
+        {
+            return EASY;
+        }
+        else if (choice.equalsIgnoreCase("n"))
+        {
+            return NORMAL;
+        }
+        else if (choice.equals("ch34t"))
+        {
+            return CHEAT;
+        }
+        return null;
+    }
+
+    /**
+     * Finds a mode by its name ("easy", "normal", "hard" or "ch34t").
+     *
+     * @param name The name of the mode.
+     * @return The matching mode, or null if there is none.
+     */
+    public static GameMode fromName(String name)
+    {
+        for (GameMode mode : new GameMode[] {EASY, NORMAL, HARD, CHEAT})
+        {
+            if (mode.name.equalsIgnoreCase(name))
+            {
+                return mode;
+            }
+        }
+        return null;
+    }
+
+    //Accessors
+    public String getName()
+    {
+        return name;
+    }
+
+    public double getMarkdown()
+    {
+        return markdown;
+    }
+
+    public double getToughness()
+    {
+        return toughness;
+    }
+
+    public int getStartingGold()
+    {
+        return startingGold;
+    }
+
+    public boolean isCheatMode()
+    {
+        return cheatMode;
+    }
+
+    public boolean isEasyMode()
+    {
+        return easyMode;
+    }
+
+    public BrawlRules getBrawlRules()
+    {
+        return brawlRules;
+    }
+
+    /**
+     * @return The price of each item, indexed by item id, when this mode uses the easy prices.
+     */
+    public int[] getEasyCosts()
+    {
+        return easyCosts.clone();
+    }
+
+    /**
+     * @return A new Shop with this mode's prices.
+     */
+    public Shop createShop()
+    {
+        Shop shop = new Shop(cheatMode, prices);
+        if (ShopStock.DEFAULT_STOCK > 0)
+        {
+            shop.setStock(Restocker.shared().register(new ShopStock(ShopStock.DEFAULT_STOCK)));
+        }
+        return shop;
+    }
+
+    /**
+     * @param random The game's source of random numbers.
+     * @return A new Town, with its own Shop, for this mode.
+     */
+    public Town createTown(GameRandom random)
+    {
+        return new Town(createShop(), toughness, this, random, random);
+    }
+
+    /**
+     * @param layout The generator the town's layout is drawn from.
+     * @param events The game's source of random numbers for what happens in town.
+     * @return A new Town, with its own Shop, for this mode.
+     */
+    public Town createTown(GameRandom layout, GameRandom events)
+    {
+        return new Town(createShop(), toughness, this, layout, events);
+    }
+
+    public String toString()
+    {
+        return name;
+    }
+
+    private static Properties loadConfig(String file)
+    {
+        Properties config = new Properties();
+        try (Reader in = Files.newBufferedReader(Path.of(file)))
+        {
+            config.load(in);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Can't read the game mode settings in " + file + ": " + e, e);
+        }
+        return config;
+    }
+
+    private static double getDouble(Properties config, String key, double defaultValue)
+    {
+        String value = config.getProperty(key);
+        try
+        {
+            return value == null ? defaultValue : Double.parseDouble(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("The setting " + key + " should be a number, not " + value);
+        }
+    }
+
+    private static void checkRange(String key, double value, double min, double max)
+    {
+        if (!(value >= min && value <= max))
+        {
+            throw new IllegalArgumentException("The setting " + key + " should be between " + min + " and " + max
+                    + ", not " + value);
+        }
+    }
+
+    private static void checkRange(String key, int value, int min, int max)
+    {
+        if (value < min || value > max)
+        {
+            throw new IllegalArgumentException("The setting " + key + " should be "
+                    + (max == Integer.MAX_VALUE ? "at least " + min : "between " + min + " and " + max) + ", not " + value);
+        }
+    }
+
+    private static int getInt(Properties config, String key, int defaultValue)
+    {
+        String value = config.getProperty(key);
+        try
+        {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        }
+        catch (NumberFormatException e)
+        {
+            throw new IllegalArgumentException("The setting " + key + " should be a whole number, not " + value);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/**
+ * The GameRandom class is the source of every random draw in a game of Treasure Hunter.<p>
+ * It replaces Math.random(), which shares one synchronized generator between every thread in the JVM.
+ * Each game gets its own GameRandom, so games never contend with each other, and a game started
+ * from the same seed plays out the same way every time.<p>
+ * The generator is SplitMix64 (the algorithm behind java.util.SplittableRandom). Its whole state is two
+ * longs that can be read back, which lets a game be saved and resumed with the same sequence of draws.
+ * It is not thread-safe; use split() or forGame() to hand a separate generator to each thread or game.
+ */
+public class GameRandom
+{
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    //instance variables
+    private long seed;
+    private long gamma;
+
+    //Constructor
+    /**
+     * Creates a generator with a seed taken from the clock, for games that don't need to be repeatable.
+     */
+    public GameRandom()
+    {
+        this(mix64(System.nanoTime()) ^ mix64(Thread.currentThread().getId() * GOLDEN_GAMMA));
+    }
+
+    /**
+     * @param seed The seed; generators created with the same seed produce the same draws.
+     */
+    public GameRandom(long seed)
+    {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * Restores a generator from its state.
+     *
+     * @param seed The value returned by getSeed().
+     * @param gamma The value returned by getGamma(); must be odd.
+     */
+    public GameRandom(long seed, long gamma)
+    {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Creates the generator for one game out of a numbered series of games.<p>
+     * The result only depends on the seed and the game number, so a batch of games gives the same results
+     * however the games are shared out between threads.
+     *
+     * @param seed The seed of the whole series.
+     * @param gameNumber The number of the game within the series.
+     * @return The game's generator.
+     */
+    public static GameRandom forGame(long seed, long gameNumber)
+    {
+        GameRandom random = new GameRandom(0, GOLDEN_GAMMA);
+        random.resetForGame(seed, gameNumber);
+        return random;
+    }
+
+    /**
+     * Turns this generator into the one forGame() would create, without creating a new one, so a
+     * generator can be reused for one town or game after another.
+     *
+     * @param seed The seed of the whole series.
+     * @param gameNumber The number of the game within the series.
+     */
+    public void resetForGame(long seed, long gameNumber)
+    {
+        long base = seed + gameNumber * GOLDEN_GAMMA;
+        this.seed = mix64(base);
+        gamma = mixGamma(base + GOLDEN_GAMMA);
+    }
+
+    //Accessors
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    public long getGamma()
+    {
+        return gamma;
+    }
+
+    /**
+     * @return A new generator whose draws are independent of this one's.
+     */
+    public GameRandom split()
+    {
+        return new GameRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    public long nextLong()
+    {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * @return A random number from 0 (inclusive) to 1 (exclusive), like Math.random().
+     */
+    public double nextDouble()
+    {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * @param bound The number of possible values; must be positive.
+     * @return A random number from 0 (inclusive) to bound (exclusive).
+     */
+    public int nextInt(int bound)
+    {
+        return (int) (((nextLong() >>> 32) * bound) >>> 32);
+    }
+
+    private long nextSeed()
+    {
+        seed += gamma;
+        return seed;
+    }
+
+    // also used by Population, which keeps one SplitMix64 state per hunter in an array
+    static long mix64(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // makes an odd gamma with enough bit transitions to give a good sequence
+    private static long mixGamma(long z)
+    {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int transitions = Long.bitCount(z ^ (z >>> 1));
+        return (transitions < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
@@ -0,0 +1,232 @@
+/**
+ * The GameServer class lets many players play Treasure Hunter at once over TCP.<p>
+ * Every connection gets its own game with its own GameIO and GameRandom, running on its own
+ * session thread (see SessionThreads). A game ends by returning from TreasureHunter.play(), which
+ * closes that one connection and leaves every other game running.<p>
+ * With --record directory, every game is recorded there so it can be replayed with SessionReplayer.
+ * With --leaderboard directory, every finished game is added to the leaderboard kept there.
+ * With --screen ansi, players are sent only the lines of each screen that change (see ScreenIO);
+ * --screen plain sends whole screens.<p>
+ * Run it with: java GameServer [--record directory] [--leaderboard directory] [--screen ansi|plain] [port],
+ * then connect with e.g. "nc localhost 4567".
+ */
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class GameServer implements AutoCloseable
+{
+    public static final int DEFAULT_PORT = 4567;
+
+    // sessions mostly sit idle waiting for a short command, so small buffers are plenty
+    private static final int SESSION_BUFFER_SIZE = 512;
+
+    //instance variables
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    private final AtomicInteger activeSessions = new AtomicInteger();
+    private final AtomicLong sessionCount = new AtomicLong();
+    private volatile Path recordingDirectory;
+    private volatile Leaderboard leaderboard;
+    // null for a plain GameIO, otherwise whether ScreenIO uses ANSI
+    private volatile Boolean ansiScreens;
+
+    //Constructor
+    /**
+     * Opens the server socket; call serve() to start accepting players.
+     *
+     * @param port The port to listen on, or 0 for any free port.
+     */
+    public GameServer(int port) throws IOException
+    {
+        serverSocket = new ServerSocket(port, 1024);
+        sessions = SessionThreads.newPerSessionExecutor("session");
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        int port = DEFAULT_PORT;
+        Path recordings = null;
+        Path leaderboardDirectory = null;
+        String screen = null;
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--record") && i + 1 < args.length)
+            {
+                recordings = Path.of(args[++i]);
+            }
+            else if (args[i].equals("--leaderboard") && i + 1 < args.length)
+            {
+                leaderboardDirectory = Path.of(args[++i]);
+            }
+            else if (args[i].equals("--screen") && i + 1 < args.length)
+            {
+                screen = args[++i];
+            }
+            else
+            {
+                port = Integer.parseInt(args[i]);
+            }
+        }
+        try (GameServer server = new GameServer(port))
+        {
+            if (recordings != null)
+            {
+                server.recordTo(recordings);
+            }
+            if (leaderboardDirectory != null)
+            {
+                server.setLeaderboard(new Leaderboard(leaderboardDirectory));
+            }
+            if (screen != null)
+            {
+                server.useScreens(screen.equals("ansi"));
+            }
+            System.out.println("Treasure Hunter server listening on port " + server.getPort()
+                    + (SessionThreads.hasVirtualThreads() ? " (virtual threads)" : " (platform threads)"));
+            server.serve();
+        }
+    }
+
+    //Accessors
+    public int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getActiveSessions()
+    {
+        return activeSessions.get();
+    }
+
+    /**
+     * Adds every game that finishes from now on to a leaderboard, which close() then closes.
+     *
+     * @param leaderboard The leaderboard, or null for none.
+     */
+    public void setLeaderboard(Leaderboard leaderboard)
+    {
+        this.leaderboard = leaderboard;
+    }
+
+    /**
+     * Draws every game started from now on as screens, with ScreenIO.
+     *
+     * @param ansi true to send only the lines that change, false to send whole screens.
+     */
+    public void useScreens(boolean ansi)
+    {
+        ansiScreens = ansi;
+    }
+
+    /**
+     * Records every game started from now on, one file per game.
+     *
+     * @param directory Where the recordings go; created if it doesn't exist.
+     */
+    public void recordTo(Path directory) throws IOException
+    {
+        Files.createDirectories(directory);
+        recordingDirectory = directory;
+    }
+
+    /**
+     * Accepts connections until the server is closed, starting a game for each one.
+     */
+    public void serve() throws IOException
+    {
+        while (!serverSocket.isClosed())
+        {
+            Socket socket;
+            try
+            {
+                socket = serverSocket.accept();
+            }
+            catch (SocketException e)
+            {
+                // the server was closed while waiting for a connection
+                return;
+            }
+            sessions.execute(() -> playSession(socket));
+        }
+    }
+
+    /**
+     * Stops accepting connections. Games already running carry on until their players leave, and then
+     * the leaderboard is closed, so every game that finishes makes it onto it. If the waiting thread is
+     * interrupted, the leaderboard is closed straight away, and games finishing after that fail.
+     */
+    public void close() throws IOException
+    {
+        serverSocket.close();
+        sessions.shutdown();
+        try
+        {
+            while (!sessions.awaitTermination(1, TimeUnit.SECONDS))
+            {
+                // the players are still playing
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            Leaderboard current = leaderboard;
+            if (current != null)
+            {
+                current.close();
+            }
+        }
+    }
+
+    private void playSession(Socket socket)
+    {
+        activeSessions.incrementAndGet();
+        try (socket)
+        {
+            socket.setTcpNoDelay(true);
+            GameRandom random = new GameRandom();
+            Path directory = recordingDirectory;
+            if (directory == null)
+            {
+                Boolean ansi = ansiScreens;
+                GameIO io = ansi == null
+                        ? new GameIO(socket.getInputStream(), socket.getOutputStream(), StandardCharsets.UTF_8, SESSION_BUFFER_SIZE)
+                        : new ScreenIO(socket.getInputStream(), socket.getOutputStream(), ansi);
+                TreasureHunter game = new TreasureHunter(random, io);
+                game.setLeaderboard(leaderboard);
+                game.play();
+            }
+            else
+            {
+                Path file = directory.resolve("session-" + System.currentTimeMillis() + "-" + sessionCount.incrementAndGet() + ".rec");
+                try (SessionRecorder recorder = new SessionRecorder(socket.getInputStream(), socket.getOutputStream(),
+                        random, Files.newOutputStream(file)))
+                {
+                    TreasureHunter game = new TreasureHunter(random, recorder);
+                    game.setLeaderboard(leaderboard);
+                    recorder.watch(game::getSession);
+                    game.play();
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            // the player disconnected; only this session is affected
+        }
+        finally
+        {
+            activeSessions.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * The GameSession class holds one game of Treasure Hunter without any console attached.<p>
+ * It owns the hunter and the town the hunter is currently in, and offers the same actions as the menu
+ * in TreasureHunter. Nothing is printed and nothing reads from System.in; what happened can be read back
+ * from the town's latest news and from the hunter.
+ */
+public class GameSession
+{
+    //instance variables
+    private final GameMode mode;
+    private final Hunter hunter;
+    private final GameRandom random;
+    private final World world;
+    private Town currentTown;
+    private int turns;
+    private boolean quit;
+
+    //Constructor
+    /**
+     * Starts a new game: creates the hunter with the mode's starting gold and puts them in the first town.
+     *
+     * @param hunterName The hunter's name.
+     * @param mode The difficulty mode.
+     */
+    public GameSession(String hunterName, GameMode mode)
+    {
+        this(hunterName, mode, new GameRandom());
+    }
+
+    /**
+     * Starts a new game whose random events are drawn from the given generator.
+     *
+     * @param hunterName The hunter's name.
+     * @param mode The difficulty mode.
+     * @param random The game's own source of random numbers; games started with the same seed play out the same way.
+     */
+    public GameSession(String hunterName, GameMode mode, GameRandom random)
+    {
+        this.mode = mode;
+        this.random = random;
+        world = new World(mode, random.nextLong(), random, World.DEFAULT_WINDOW);
+        hunter = new Hunter(hunterName, mode.getStartingGold());
+        enterTown(0);
+    }
+
+    /**
+     * Resumes a game part way through, for example from a saved snapshot.
+     *
+     * @param mode The difficulty mode.
+     * @param hunter The hunter, as they were.
+     * @param world The world, holding the town the hunter is in.
+     * @param random The game's generator, in the state it was in.
+     * @param turns The number of actions already taken.
+     * @param quit true if the hunter had given up.
+     */
+    public GameSession(GameMode mode, Hunter hunter, World world, GameRandom random, int turns, boolean quit)
+    {
+        this.mode = mode;
+        this.hunter = hunter;
+        this.world = world;
+        this.random = random;
+        this.turns = turns;
+        this.quit = quit;
+        currentTown = world.getCurrentTown();
+        currentTown.hunterReturns(hunter);
+    }
+
+    /**
+     * Starts a new game with the same hunter, mode and generator, reusing this session's objects. The new
+     * game plays out exactly as new GameSession(hunterName, mode, getRandom()) would, without creating a
+     * new hunter or new towns, so a simulation can play game after game without allocating.
+     */
+    public void restart()
+    {
+        world.restart(random.nextLong());
+        hunter.restart(mode.getStartingGold());
+        turns = 0;
+        quit = false;
+        enterTown(0);
+    }
+
+    //Accessors
+    public GameMode getMode()
+    {
+        return mode;
+    }
+
+    public Hunter getHunter()
+    {
+        return hunter;
+    }
+
+    public Town getCurrentTown()
+    {
+        return currentTown;
+    }
+
+    public World getWorld()
+    {
+        return world;
+    }
+
+    public GameRandom getRandom()
+    {
+        return random;
+    }
+
+    /**
+     * @return The number of actions taken so far.
+     */
+    public int getTurns()
+    {
+        return turns;
+    }
+
+    /**
+     * @return true once the hunter has won, lost, or given up the hunt.
+     */
+    public boolean isFinished()
+    {
+        return quit || hunter.isGameFinished();
+    }
+
+    /**
+     * @return true if the hunter gave up the hunt.
+     */
+    public boolean hasQuit()
+    {
+        return quit;
+    }
+
+    /**
+     * Sums up everything that changes as the game is played: the hunter, the town they are in and what is
+     * left in its shop, the turn count and the state of the random number generator. Two games that have
+     * played out the same way have the same checksum.
+     *
+     * @return The checksum of the game as it is now.
+     */
+    public int checksum()
+    {
+        Town town = currentTown;
+        long sum = random.getSeed();
+        sum = sum * 31 + hunter.getGold();
+        sum = sum * 31 + hunter.getKitMask();
+        sum = sum * 31 + hunter.getHuntedItemTotal();
+        sum = sum * 31 + (hunter.hasLostGame() ? 1 : 0) + (hunter.hasWonGame() ? 2 : 0) + (quit ? 4 : 0);
+        sum = sum * 31 + turns;
+        sum = sum * 31 + world.getPosition();
+        sum = sum * 31 + town.getTerrain().getId();
+        sum = sum * 31 + town.getGeneratedTreasure() + (town.hasSearchedForTreasure() ? 8 : 0) + (town.isToughTown() ? 16 : 0);
+        sum = sum * 31 + town.getLatestNews().hashCode();
+        ShopStock stock = town.getShop().getStock();
+        if (stock != null)
+        {
+            for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+            {
+                sum = sum * 31 + stock.getCount(itemId);
+            }
+        }
+        return (int) (sum ^ (sum >>> 32));
+    }
+
+    /**
+     * Buys an item from the current town's shop.
+     *
+     * @param item The item to buy.
+     * @return true if the item was bought.
+     */
+    public boolean buy(String item)
+    {
+        return buy(Items.idOf(item));
+    }
+
+    /**
+     * Buys an item from the current town's shop.
+     *
+     * @param itemId The id of the item to buy, from the Items registry.
+     * @return true if the item was bought.
+     */
+    public boolean buy(int itemId)
+    {
+        turns++;
+        return currentTown.getShop().buy(hunter, itemId);
+    }
+
+    /**
+     * Sells an item to the current town's shop.
+     *
+     * @param item The item to sell.
+     * @return true if the item was sold.
+     */
+    public boolean sell(String item)
+    {
+        return sell(Items.idOf(item));
+    }
+
+    /**
+     * Sells an item to the current town's shop.
+     *
+     * @param itemId The id of the item to sell, from the Items registry.
+     * @return true if the item was sold.
+     */
+    public boolean sell(int itemId)
+    {
+        turns++;
+        return currentTown.getShop().sell(hunter, itemId);
+    }
+
+    /**
+     * Tries to cross the terrain around the current town and, if the hunter can, moves them into a new town.
+     *
+     * @return true if the hunter moved on to a new town.
+     */
+    public boolean move()
+    {
+        turns++;
+        if (!currentTown.leaveTown())
+        {
+            return false;
+        }
+        enterTown(world.getPosition() + 1);
+        return true;
+    }
+
+    /**
+     * Tries to cross the terrain around the current town and, if the hunter can, takes them back to the
+     * town they came from. The first town has nothing before it, so there the hunter stays put.
+     *
+     * @return true if the hunter went back to the previous town.
+     */
+    public boolean moveBack()
+    {
+        turns++;
+        if (world.getPosition() == 0 || !currentTown.leaveTown())
+        {
+            return false;
+        }
+        enterTown(world.getPosition() - 1);
+        return true;
+    }
+
+    public void lookForTrouble()
+    {
+        turns++;
+        currentTown.lookForTrouble();
+    }
+
+    public void huntForTreasure()
+    {
+        turns++;
+        currentTown.huntForTreasure();
+    }
+
+    /**
+     * Gives up the hunt.
+     */
+    public void quit()
+    {
+        quit = true;
+    }
+
+    /**
+     * Moves to a town along the road, building it if need be, and adds the Hunter to it.
+     */
+    private void enterTown(int number)
+    {
+        if (currentTown != null)
+        {
+            currentTown.hunterLeaves();
+        }
+        currentTown = world.moveTo(number);
+        currentTown.hunterArrives(hunter);
+    }
+}
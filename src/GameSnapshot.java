@@ -0,0 +1,365 @@
+/**
+ * The GameSnapshot class saves a game to bytes and loads it back, so a game can be checkpointed
+ * after every command and resumed later, even in another process.<p>
+ * The encoding is written field by field into a ByteBuffer rather than with Java serialization,
+ * so it is small (a couple of hundred bytes, most of it the latest news) and takes about a microsecond each way.
+ * It starts with a magic number and a format version; load() reads this version and the ones before it,
+ * and refuses anything else. A game saved before version 3 comes back with its shop's shelves full.<p>
+ * Layout, in order:
+ * <pre>
+ * short magic, byte version
+ * mode:    name, double markdown, double toughness, int startingGold, byte flags (cheat, easy)
+ * brawls:  double noTroubleChance, double toughNoTroubleChance, int winGoldMin, int winGoldMax,
+ *          int lossGoldMin, int lossGoldMax, byte alwaysWin (version 2 on; version 1 used the mode's own rules)
+ * prices:  for each shop item, int easy mode price (version 4 on; before, the mode's own prices were used)
+ * random:  long seed, long gamma
+ * session: int turns, byte quit
+ * hunter:  name, int gold, long kit, int huntedItemTotal, byte flags (lost, won)
+ * world:   long seed, int window, int position, int n, n longs of searched-town bits
+ * town:    byte terrain, byte generatedTreasure, byte brawlAnimation, byte flags (tough, searched), news
+ * stock:   the current town's shop stock, int n, then n other towns kept in memory whose shelves a rebuilt
+ *          town wouldn't have, each an int town number and its shop stock (version 3 on)
+ * </pre>
+ * A shop stock is an int perItem, 0 if the shop never runs out, and unless it is 0, an int for what is
+ * left of each shop item.
+ * Strings are written as a short length followed by UTF-8 bytes.
+ */
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.BitSet;
+
+public class GameSnapshot
+{
+    public static final short MAGIC = 0x5448;
+    public static final byte VERSION = 4;
+
+    // big enough for any game with a reasonably sized name and journey
+    private static final int INITIAL_SIZE = 256;
+
+    private GameSnapshot()
+    {
+    }
+
+    /**
+     * @param session The game to save.
+     * @return The saved game.
+     */
+    public static byte[] save(GameSession session)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(INITIAL_SIZE);
+        while (true)
+        {
+            try
+            {
+                save(session, buffer);
+                byte[] bytes = new byte[buffer.position()];
+                buffer.flip().get(bytes);
+                return bytes;
+            }
+            catch (BufferOverflowException e)
+            {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * Writes a game into a buffer, starting at the buffer's position.
+     *
+     * @param session The game to save.
+     * @param buffer The buffer to write into.
+     * @throws BufferOverflowException if the buffer is too small.
+     */
+    public static void save(GameSession session, ByteBuffer buffer)
+    {
+        buffer.putShort(MAGIC);
+        buffer.put(VERSION);
+
+        GameMode mode = session.getMode();
+        putString(buffer, mode.getName());
+        buffer.putDouble(mode.getMarkdown());
+        buffer.putDouble(mode.getToughness());
+        buffer.putInt(mode.getStartingGold());
+        buffer.put(flags(mode.isCheatMode(), mode.isEasyMode()));
+        BrawlRules rules = mode.getBrawlRules();
+        buffer.putDouble(rules.getNoTroubleChance());
+        buffer.putDouble(rules.getToughNoTroubleChance());
+        buffer.putInt(rules.getWinGoldMin());
+        buffer.putInt(rules.getWinGoldMax());
+        buffer.putInt(rules.getLossGoldMin());
+        buffer.putInt(rules.getLossGoldMax());
+        buffer.put(flags(rules.isAlwaysWin(), false));
+        int[] easyCosts = mode.getEasyCosts();
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            buffer.putInt(easyCosts[itemId]);
+        }
+
+        GameRandom random = session.getRandom();
+        buffer.putLong(random.getSeed());
+        buffer.putLong(random.getGamma());
+
+        buffer.putInt(session.getTurns());
+        buffer.put(flags(session.hasQuit(), false));
+
+        Hunter hunter = session.getHunter();
+        putString(buffer, hunter.getHunterName());
+        buffer.putInt(hunter.getGold());
+        buffer.putLong(hunter.getKitMask());
+        buffer.putInt(hunter.getHuntedItemTotal());
+        buffer.put(flags(hunter.hasLostGame(), hunter.hasWonGame()));
+
+        World world = session.getWorld();
+        buffer.putLong(world.getSeed());
+        buffer.putInt(world.getWindow());
+        buffer.putInt(world.getPosition());
+        long[] searched = world.getSearchedTowns().toLongArray();
+        buffer.putInt(searched.length);
+        for (long bits : searched)
+        {
+            buffer.putLong(bits);
+        }
+
+        Town town = session.getCurrentTown();
+        buffer.put((byte) town.getTerrain().getId());
+        buffer.put((byte) town.getGeneratedTreasure());
+        buffer.put((byte) town.getBrawlAnimation());
+        buffer.put(flags(town.isToughTown(), town.hasSearchedForTreasure()));
+        putString(buffer, town.getLatestNews());
+
+        putStock(buffer, town.getShop().getStock());
+        int countAt = buffer.position();
+        int count = 0;
+        buffer.putInt(0);
+        for (int slot = 0; slot < world.getWindow(); slot++)
+        {
+            int number = world.getTownNumber(slot);
+            if (number >= 0 && number != world.getPosition())
+            {
+                ShopStock stock = world.getTown(number).getShop().getStock();
+                if (!rebuiltTheSame(stock))
+                {
+                    buffer.putInt(number);
+                    putStock(buffer, stock);
+                    count++;
+                }
+            }
+        }
+        buffer.putInt(countAt, count);
+    }
+
+    /**
+     * @param bytes A game saved by save().
+     * @return The game, ready to carry on.
+     * @throws IllegalArgumentException if the bytes aren't a saved game this version can read.
+     */
+    public static GameSession load(byte[] bytes)
+    {
+        return load(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Reads a game from a buffer, starting at the buffer's position.
+     *
+     * @param buffer The buffer holding a saved game.
+     * @return The game, ready to carry on.
+     * @throws IllegalArgumentException if the buffer doesn't hold a saved game this version can read.
+     */
+    public static GameSession load(ByteBuffer buffer)
+    {
+        try
+        {
+            if (buffer.getShort() != MAGIC)
+            {
+                throw new IllegalArgumentException("Not a saved game");
+            }
+            byte version = buffer.get();
+            if (version < 1 || version > VERSION)
+            {
+                throw new IllegalArgumentException("Unsupported saved game version " + version);
+            }
+
+            String modeName = getString(buffer);
+            double markdown = buffer.getDouble();
+            double toughness = buffer.getDouble();
+            int startingGold = buffer.getInt();
+            byte modeFlags = buffer.get();
+            BrawlRules rules;
+            if (version >= 2)
+            {
+                rules = new BrawlRules(buffer.getDouble(), buffer.getDouble(), buffer.getInt(), buffer.getInt(),
+                        buffer.getInt(), buffer.getInt(), flag(buffer.get(), 0));
+            }
+            else
+            {
+                rules = GameMode.forTown(modeName).getBrawlRules();
+            }
+            int[] easyCosts = GameMode.forTown(modeName).getEasyCosts();
+            if (version >= 4)
+            {
+                for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+                {
+                    easyCosts[itemId] = buffer.getInt();
+                }
+            }
+            GameMode mode = findMode(modeName, markdown, toughness, startingGold, flag(modeFlags, 0), flag(modeFlags, 1), rules,
+                    easyCosts);
+
+            GameRandom random = new GameRandom(buffer.getLong(), buffer.getLong());
+
+            int turns = buffer.getInt();
+            boolean quit = flag(buffer.get(), 0);
+
+            String hunterName = getString(buffer);
+            int gold = buffer.getInt();
+            long kit = buffer.getLong();
+            int huntedItemTotal = buffer.getInt();
+            byte hunterFlags = buffer.get();
+            Hunter hunter = new Hunter(hunterName, gold, kit, huntedItemTotal, flag(hunterFlags, 0), flag(hunterFlags, 1));
+
+            long worldSeed = buffer.getLong();
+            int window = buffer.getInt();
+            int position = buffer.getInt();
+            long[] searched = new long[buffer.getInt()];
+            for (int i = 0; i < searched.length; i++)
+            {
+                searched[i] = buffer.getLong();
+            }
+
+            Terrain terrain = Terrain.byId(buffer.get());
+            int generatedTreasure = buffer.get();
+            int brawlAnimation = buffer.get();
+            byte townFlags = buffer.get();
+            String news = getString(buffer);
+            Shop shop = mode.createShop();
+            if (version >= 3)
+            {
+                getStock(buffer, shop);
+            }
+            Town town = new Town(shop, terrain, flag(townFlags, 0), generatedTreasure, flag(townFlags, 1),
+                    mode, brawlAnimation, random);
+            town.setLatestNews(news);
+
+            World world = new World(mode, worldSeed, random, window, position, town, BitSet.valueOf(searched));
+            if (version >= 3)
+            {
+                int count = buffer.getInt();
+                for (int i = 0; i < count; i++)
+                {
+                    getStock(buffer, world.getTown(buffer.getInt()).getShop());
+                }
+            }
+            return new GameSession(mode, hunter, world, random, turns, quit);
+        }
+        catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e)
+        {
+            throw new IllegalArgumentException("Saved game is truncated or corrupt", e);
+        }
+    }
+
+    // whether a town rebuilt from the world's seed would have this stock: the one createShop() gives, full
+    private static boolean rebuiltTheSame(ShopStock stock)
+    {
+        if (stock == null || stock.getCapacity(0) != ShopStock.DEFAULT_STOCK)
+        {
+            return stock == null && ShopStock.DEFAULT_STOCK == 0;
+        }
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            if (stock.getCount(itemId) != stock.getCapacity(itemId))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void putStock(ByteBuffer buffer, ShopStock stock)
+    {
+        if (stock == null)
+        {
+            buffer.putInt(0);
+            return;
+        }
+        buffer.putInt(stock.getCapacity(0));
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            buffer.putInt(stock.getCount(itemId));
+        }
+    }
+
+    // a shop stocked the way -Dtreasurehunter.stock stocks every shop keeps the stock createShop() registered
+    // with the shared Restocker; any other stock was the game's own, and comes back unregistered as it was
+    private static void getStock(ByteBuffer buffer, Shop shop)
+    {
+        int perItem = buffer.getInt();
+        if (perItem == 0)
+        {
+            shop.setStock(null);
+            return;
+        }
+        ShopStock stock = shop.getStock();
+        if (stock == null || stock.getCapacity(0) != perItem)
+        {
+            stock = new ShopStock(perItem);
+            shop.setStock(stock);
+        }
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            stock.setCount(itemId, buffer.getInt());
+        }
+    }
+
+    // the standard modes are shared objects, so a saved standard mode comes back as the same object
+    private static GameMode findMode(String name, double markdown, double toughness, int startingGold,
+                                     boolean cheatMode, boolean easyMode, BrawlRules rules, int[] easyCosts)
+    {
+        GameMode mode = GameMode.fromName(name);
+        if (mode != null && mode.getMarkdown() == markdown && mode.getToughness() == toughness
+                && mode.getStartingGold() == startingGold && mode.isCheatMode() == cheatMode && mode.isEasyMode() == easyMode
+                && sameRules(mode.getBrawlRules(), rules) && Arrays.equals(mode.getEasyCosts(), easyCosts))
+        {
+            return mode;
+        }
+        return new GameMode(name, markdown, toughness, startingGold, cheatMode, easyMode, rules, easyCosts);
+    }
+
+    private static boolean sameRules(BrawlRules a, BrawlRules b)
+    {
+        return a.getNoTroubleChance() == b.getNoTroubleChance() && a.getToughNoTroubleChance() == b.getToughNoTroubleChance()
+                && a.getWinGoldMin() == b.getWinGoldMin() && a.getWinGoldMax() == b.getWinGoldMax()
+                && a.getLossGoldMin() == b.getLossGoldMin() && a.getLossGoldMax() == b.getLossGoldMax()
+                && a.isAlwaysWin() == b.isAlwaysWin();
+    }
+
+    private static byte flags(boolean first, boolean second)
+    {
+        return (byte) ((first ? 1 : 0) | (second ? 2 : 0));
+    }
+
+    private static boolean flag(byte flags, int bit)
+    {
+        return (flags & (1 << bit)) != 0;
+    }
+
+    private static void putString(ByteBuffer buffer, String str)
+    {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xffff)
+        {
+            throw new IllegalArgumentException("Text too long to save: " + bytes.length + " bytes");
+        }
+        buffer.putShort((short) bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getShort() & 0xffff];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -10,9 +10,16 @@ public class Hunter
 
     //instance variables
     private String hunterName;
-    private String kit;
+    // one bit per item id from the Items registry
+    private long kit;
+    // the String form of the kit, rendered when first asked for; null once the kit changes
+    private String kitView;
+    private String inventoryView;
     private int gold;
     private int huntedItemTotal;
+    private boolean lostGame;
+    private boolean wonGame;
+    private GameEventSink eventSink;
 
     //Constructor
     /**
@@ -23,17 +30,68 @@ public class Hunter
     public Hunter(String hunterName, int startingGold)
     {
         this.hunterName = hunterName;
-        kit = "";
+        kit = 0;
         gold = startingGold;
     }
 
+    /**
+     * Rebuilds a hunter part way through a game, for example from a saved snapshot.
+     *
+     * @param hunterName The hunter's name.
+     * @param gold The hunter's gold.
+     * @param kit The kit as a bit mask, as returned by getKitMask().
+     * @param huntedItemTotal The total of the treasures found so far.
+     * @param lostGame true if the hunter has lost the game.
+     * @param wonGame true if the hunter has won the game.
+     */
+    public Hunter(String hunterName, int gold, long kit, int huntedItemTotal, boolean lostGame, boolean wonGame)
+    {
+        this.hunterName = hunterName;
+        this.gold = gold;
+        this.kit = kit;
+        this.huntedItemTotal = huntedItemTotal;
+        this.lostGame = lostGame;
+        this.wonGame = wonGame;
+    }
+
+    /**
+     * Starts the hunter on a new game, as if they had just been created, but keeps their name and where
+     * their events are reported.
+     *
+     * @param startingGold The gold the new game starts with.
+     */
+    public void restart(int startingGold)
+    {
+        gold = startingGold;
+        kit = 0;
+        huntedItemTotal = 0;
+        lostGame = false;
+        wonGame = false;
+        kitChanged();
+    }
+
     //Accessors
     public String getHunterName()
     {
         return hunterName;
     }
 
+    /**
+     * @return The kit as a String of lower case item names, each followed by a KIT_DELIMITER.
+     */
     public String getKit()
+    {
+        if (kitView == null)
+        {
+            kitView = renderKit(KIT_DELIMITER);
+        }
+        return kitView;
+    }
+
+    /**
+     * @return The kit as a bit mask, with one bit per item id from the Items registry.
+     */
+    public long getKitMask()
     {
         return kit;
     }
@@ -60,6 +118,60 @@ public class Hunter
         huntedItemTotal += amount;
     }
 
+    public boolean hasLostGame() {
+        return lostGame;
+    }
+
+    public boolean hasWonGame() {
+        return wonGame;
+    }
+
+    /**
+     * Ends the hunt with a "Game Over".<p>
+     * The game is not stopped here; whoever is driving the game checks hasLostGame() after each action.
+     */
+    public void loseGame() {
+        lostGame = true;
+        recordEvent(GameEvent.GAME_LOST, Items.NONE, 0);
+    }
+
+    /**
+     * Ends the hunt with a win.
+     */
+    public void winGame() {
+        wonGame = true;
+        recordEvent(GameEvent.GAME_WON, Items.NONE, 0);
+    }
+
+    /**
+     * Sets where this hunter's game events are reported; null stops reporting.
+     *
+     * @param eventSink The sink for this hunter's events.
+     */
+    public void setEventSink(GameEventSink eventSink) {
+        this.eventSink = eventSink;
+    }
+
+    /**
+     * Reports something that happened to this hunter, along with their gold afterwards.
+     *
+     * @param type The kind of event, one of the GameEvent type constants.
+     * @param itemId The item involved, or Items.NONE.
+     * @param amount The gold that changed hands, or 0.
+     */
+    public void recordEvent(int type, int itemId, int amount) {
+        if (eventSink != null) {
+            eventSink.onEvent(type, itemId, amount, gold);
+        }
+    }
+
+    /**
+     * @return true if the hunt is over, either because the hunter won or lost the game.
+     */
+    public boolean isGameFinished() {
+        return lostGame || wonGame;
+    }
+
     /**
      * Buys an item from a shop.
      *
@@ -70,12 +182,35 @@ public class Hunter
      */
     public boolean buyItem(String item, int costOfItem)
     {
-        if (costOfItem == 0 || gold < costOfItem || hasItemInKit(item))
+        return buyItem(Items.idOf(item), costOfItem);
+    }
+
+    /**
+     * @param itemId The id of an item.
+     * @param costOfItem What the item costs.
+     * @return true if buyItem() would succeed: the item is for sale, the hunter can afford it and hasn't got one.
+     */
+    public boolean canBuy(int itemId, int costOfItem)
+    {
+        return itemId != Items.NONE && costOfItem != 0 && gold >= costOfItem && !hasItem(itemId);
+    }
+
+    /**
+     * Buys an item from a shop.
+     *
+     * @param itemId The id of the item the hunter is buying.
+     * @param costOfItem  the cost of the item
+     *
+     * @return true if the item is successfully bought.
+     */
+    public boolean buyItem(int itemId, int costOfItem)
+    {
+        if (!canBuy(itemId, costOfItem))
         {
             return false;
         }
         gold -= costOfItem;
-        addItem(item);
+        addItem(itemId);
         return true;
     }
 
@@ -89,13 +224,25 @@ public class Hunter
      */
     public boolean sellItem(String item, int buyBackPrice)
     {
-        if (buyBackPrice <= 0 || !hasItemInKit(item))
+        return sellItem(Items.idOf(item), buyBackPrice);
+    }
+
+    /**
+     * The Hunter is selling an item to a shop for gold.
+     *
+     * @param itemId The id of the item being sold.
+     * @param buyBackPrice  the amount of gold earned from selling the item
+     * @return true if the item was successfully sold.
+     */
+    public boolean sellItem(int itemId, int buyBackPrice)
+    {
+        if (buyBackPrice <= 0 || !hasItem(itemId))
         {
             return false;
         }
 
         gold += buyBackPrice;
-        removeItemFromKit(item);
+        removeItem(itemId);
         return true;
     }
 
@@ -106,33 +253,40 @@ public class Hunter
      */
     public void removeItemFromKit(String item)
     {
-        int itmIdx = kit.indexOf(item);
-
-        // if item is found
-        if (itmIdx >= 0)
+        int itemId = Items.idOf(item);
+        if (itemId != Items.NONE)
         {
-            String tmpKit = kit.substring(0, itmIdx);
-            int endIdx = kit.indexOf(KIT_DELIMITER, itmIdx);
-            tmpKit += kit.substring(endIdx + 1);
+            removeItem(itemId);
+        }
+    }
 
-            // update kit
-            kit = tmpKit;
+    /**
+     *  Removes an item from the kit.
+     *
+     * @param itemId The id of the item to be removed.
+     */
+    public void removeItem(int itemId)
+    {
+        if (hasItem(itemId))
+        {
+            kit &= ~Items.bitOf(itemId);
+            kitChanged();
         }
     }
 
     /**
      * Checks to make sure that the item is not already in the kit.
-     * If not, it adds an item to the end of the String representing the hunter's kit.<br /><br />
-     * A KIT_DELIMITER character is added to the end of the of String.
+     * If not, it sets the item's bit in the kit.
      *
-     * @param item The item to be added to the kit.
+     * @param itemId The id of the item to be added to the kit.
      * @returns true if the item is not in the kit and has been added.
      */
-    private boolean addItem(String item)
+    private boolean addItem(int itemId)
     {
-        if (!hasItemInKit(item))
+        if (!hasItem(itemId))
         {
-            kit += item.toLowerCase() + KIT_DELIMITER;
+            kit |= Items.bitOf(itemId);
+            kitChanged();
             return true;
         }
 
@@ -140,7 +294,7 @@ public class Hunter
     }
 
     /**
-     * Searches the kit String for a specified item.
+     * Searches the kit for a specified item, ignoring case.
      *
      * @param item The search item
      *
@@ -148,40 +302,30 @@ public class Hunter
      */
     public boolean hasItemInKit(String item)
     {
-        int placeholder = 0;
+        return hasItem(Items.idOf(item));
+    }
 
-        while (placeholder < kit.length() - 1)
-        {
-            int endOfItem = kit.indexOf(KIT_DELIMITER, placeholder);
-            String tmpItem = kit.substring(placeholder, endOfItem);
-            placeholder = endOfItem + 1;
-            if (tmpItem.equals(item))
-            {
-                // early return
-                return true;
-            }
-        }
-        return false;
+    /**
+     * @param itemId The id of the search item.
+     * @return true if the item is in the kit.
+     */
+    public boolean hasItem(int itemId)
+    {
+        return itemId != Items.NONE && (kit & Items.bitOf(itemId)) != 0;
     }
 
     /** Returns a printable representation of the inventory, which
-     *  is a list of the items in kit, with the KIT_DELIMITER replaced with a space
+     *  is a list of the items in kit, each followed by a space
      *
      * @return  The printable String representation of the inventory
      */
     public String getInventory()
     {
-        String printableKit = kit;
-        String space = " ";
-
-        int index = 0;
-
-        while (printableKit.indexOf(KIT_DELIMITER) != -1)
+        if (inventoryView == null)
         {
-            index = printableKit.indexOf(KIT_DELIMITER);
-            printableKit = printableKit.substring(0, index) + space + printableKit.substring(index + 1);
+            inventoryView = renderKit(" ");
         }
-        return printableKit;
+        return inventoryView;
     }
 
     /**
@@ -190,10 +334,30 @@ public class Hunter
     public String toString()
     {
         String str = hunterName + " has: " + gold + " gold";
-        if (!kit.equals(""))
+        if (kit != 0)
         {
             str += " and " + getInventory();
         }
         return str;
     }
-}
\ No newline at end of file
+
+    // throws away the rendered views of the kit; they are rebuilt the next time they're asked for
+    private void kitChanged()
+    {
+        kitView = null;
+        inventoryView = null;
+    }
+
+    private String renderKit(String separator)
+    {
+        StringBuilder str = new StringBuilder();
+        for (int itemId = 0; itemId < Items.COUNT; itemId++)
+        {
+            if (hasItem(itemId))
+            {
+                str.append(Items.nameOf(itemId)).append(separator);
+            }
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,94 @@
+/**
+ * The Items class is the registry of every item a hunter can carry: the goods sold in the shop
+ * plus the treasures found while hunting.<p>
+ * Each item has a small id, so a hunter's kit can be kept as one bit per item instead of a String.
+ */
+public class Items
+{
+    // shop goods
+    public static final int WATER = 0;
+    public static final int ROPE = 1;
+    public static final int MACHETE = 2;
+    public static final int HORSE = 3;
+    public static final int BOAT = 4;
+    public static final int BRAVERY = 5;
+
+    // treasure
+    public static final int BANANA = 6;
+    public static final int TWIG = 7;
+    public static final int SPOON = 8;
+
+    public static final int COUNT = 9;
+    public static final int SHOP_ITEM_COUNT = 6;
+
+    // returned by idOf() for anything that isn't an item
+    public static final int NONE = -1;
+
+    // names as they appear in the hunter's kit
+    private static final String[] NAMES = {"water", "rope", "machete", "horse", "boat", "bravery", "banana", "twig", "spoon"};
+
+    // names as they appear in the shop and in the news
+    private static final String[] DISPLAY_NAMES = {"Water", "Rope", "Machete", "Horse", "Boat", "Bravery", "Banana", "Twig", "Spoon"};
+
+    private Items()
+    {
+    }
+
+    /**
+     * Looks up an item by name, ignoring case. Nothing is allocated, so this is safe to call on every action.
+     *
+     * @param item The item's name.
+     * @return The item's id, or NONE if there is no such item.
+     */
+    public static int idOf(String item)
+    {
+        if (item == null)
+        {
+            return NONE;
+        }
+        for (int id = 0; id < COUNT; id++)
+        {
+            if (NAMES[id].equalsIgnoreCase(item))
+            {
+                return id;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @param id An item id.
+     * @return The item's name in lower case, as kept in the kit.
+     */
+    public static String nameOf(int id)
+    {
+        return NAMES[id];
+    }
+
+    /**
+     * @param id An item id.
+     * @return The item's name with a capital letter, as shown in the shop.
+     */
+    public static String displayNameOf(int id)
+    {
+        return DISPLAY_NAMES[id];
+    }
+
+    /**
+     * @param id An item id.
+     * @return The bit that stands for the item in a kit mask.
+     */
+    public static long bitOf(int id)
+    {
+        return 1L << id;
+    }
+
+    /**
+     * @param id An item id.
+     * @return true if the item is sold in the shop rather than found as treasure.
+     */
+    public static boolean isShopItem(int id)
+    {
+        return id >= 0 && id < SHOP_ITEM_COUNT;
+    }
+}
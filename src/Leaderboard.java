@@ -0,0 +1,538 @@
+/**
+ * The Leaderboard class is the high-score table of every finished game, kept on disk.<p>
+ * It is a small log-structured merge tree. New games go into a sorted in-memory table; when that fills
+ * up it is written out as an immutable sorted segment file and memory-mapped (see LeaderboardSegment).
+ * Segments are merged in size tiers: whenever MERGE_WIDTH segments are within TIER_RATIO of each other's
+ * size, they are merged into one by streaming through them in order. A merge makes the segment a game
+ * is in about four times bigger, so a game is rewritten about log4(n / memtable size) times: 4 times at
+ * 10 million games, 6 at 100 million. That leaves a few segments per tier, and a few tiers. Merges run
+ * on a background thread, so adding a game never waits for one; only if merging falls so far behind that
+ * a tree has MAX_SEGMENTS segments does flushing wait for it to catch up.
+ * The heap only ever holds the in-memory table and one cursor per segment, however many games the
+ * table holds.<p>
+ * Two trees are kept: every game, sorted by score, for the top of the table and for ranks; and each
+ * player's best game, sorted by name, for looking a player up. Adding a game and every query take a
+ * binary search per segment, and there are O(log n) segments.<p>
+ * Games still in the in-memory table are written out by close(), and a closed leaderboard takes no
+ * more games, since nothing would write them out. Games added after the last flush are lost if the
+ * process dies, and a crash part way through a merge can leave its games counted twice.<p>
+ * Run it with: java Leaderboard directory [count], to print the top of a table,
+ * or java Leaderboard directory --rank name, to look up a player.
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+public class Leaderboard implements AutoCloseable
+{
+    public static final int DEFAULT_MEMTABLE_SIZE = 32 * 1024;
+
+    // segments are merged this many at a time, once they are all within TIER_RATIO of the smallest's size
+    private static final int MERGE_WIDTH = 4;
+    private static final int TIER_RATIO = 4;
+    // flushing waits for the merges once a tree has more segments than this
+    private static final int MAX_SEGMENTS = 32;
+    private static final int MAX_SEGMENT_ENTRIES =
+            (Integer.MAX_VALUE - LeaderboardSegment.HEADER_SIZE) / LeaderboardEntry.RECORD_SIZE;
+
+    private static final String GAMES = "games";
+    private static final String PLAYERS = "players";
+    private static final String SUFFIX = ".seg";
+
+    //instance variables
+    private final Path directory;
+    private final int memtableSize;
+    // the in-memory tables: games kept sorted by score, and each player's best game
+    private final List<LeaderboardEntry> games = new ArrayList<>();
+    private final TreeMap<String, LeaderboardEntry> players = new TreeMap<>();
+    // segments, oldest first
+    private final List<LeaderboardSegment> gameSegments = new ArrayList<>();
+    private final List<LeaderboardSegment> playerSegments = new ArrayList<>();
+    private long nextSequence;
+    private long nextSegment;
+    // merges segments in the background; started by the first flush
+    private ExecutorService merger;
+    private int pendingMerges;
+    private IOException mergeFailure;
+    private boolean closed;
+
+    //Constructor
+    /**
+     * Opens a leaderboard, creating it if the directory is empty.
+     *
+     * @param directory Where the segment files are kept.
+     * @param memtableSize The number of games held in memory before they are written to a segment.
+     */
+    public Leaderboard(Path directory, int memtableSize) throws IOException
+    {
+        this.directory = directory;
+        this.memtableSize = memtableSize;
+        Files.createDirectories(directory);
+        for (Path file : segmentFiles(directory))
+        {
+            String name = file.getFileName().toString();
+            LeaderboardSegment segment = new LeaderboardSegment(file);
+            if (name.startsWith(GAMES))
+            {
+                gameSegments.add(segment);
+                nextSequence = Math.max(nextSequence, segment.getMaxSequence() + 1);
+            }
+            else
+            {
+                playerSegments.add(segment);
+            }
+            nextSegment = Math.max(nextSegment, segmentNumber(name) + 1);
+        }
+    }
+
+    public Leaderboard(Path directory) throws IOException
+    {
+        this(directory, DEFAULT_MEMTABLE_SIZE);
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: java Leaderboard directory [count | --rank name]");
+            return;
+        }
+        try (Leaderboard leaderboard = new Leaderboard(Path.of(args[0])))
+        {
+            if (args.length >= 3 && args[1].equals("--rank"))
+            {
+                LeaderboardEntry best = leaderboard.getBestGame(args[2]);
+                System.out.println(best == null ? args[2] + " has no games on the leaderboard."
+                        : "#" + leaderboard.getRank(args[2]) + " of " + leaderboard.size() + ": " + best);
+                return;
+            }
+            int count = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+            int place = 1;
+            for (LeaderboardEntry entry : leaderboard.getTop(count))
+            {
+                System.out.printf("%4d. %s%n", place++, entry);
+            }
+            System.out.println(leaderboard.size() + " games");
+        }
+    }
+
+    /**
+     * Adds a finished game.
+     *
+     * @return The game's entry.
+     * @throws IllegalStateException if the leaderboard has been closed.
+     */
+    public synchronized LeaderboardEntry add(GameSession session)
+    {
+        checkOpen();
+        LeaderboardEntry entry = LeaderboardEntry.of(nextSequence++, session);
+        add(entry);
+        return entry;
+    }
+
+    /**
+     * Adds a game's entry; its sequence number should be one not used before.
+     *
+     * @throws IllegalStateException if the leaderboard has been closed.
+     */
+    public synchronized void add(LeaderboardEntry entry)
+    {
+        checkOpen();
+        nextSequence = Math.max(nextSequence, entry.getSequence() + 1);
+        int index = Collections.binarySearch(games, entry, LeaderboardEntry.BY_SCORE);
+        games.add(index < 0 ? -index - 1 : index, entry);
+        LeaderboardEntry best = players.get(entry.getName());
+        if (best == null || LeaderboardEntry.BY_SCORE.compare(entry, best) < 0)
+        {
+            players.put(entry.getName(), entry);
+        }
+        if (games.size() >= memtableSize)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * @return The number of games on the leaderboard.
+     */
+    public synchronized long size()
+    {
+        long size = games.size();
+        for (LeaderboardSegment segment : gameSegments)
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @param count The number of games wanted.
+     * @return The best games, best first.
+     */
+    public synchronized List<LeaderboardEntry> getTop(int count)
+    {
+        List<Iterator<LeaderboardEntry>> sources = new ArrayList<>();
+        sources.add(games.iterator());
+        for (LeaderboardSegment segment : gameSegments)
+        {
+            sources.add(segment.iterator());
+        }
+        List<LeaderboardEntry> top = new ArrayList<>();
+        Iterator<LeaderboardEntry> merged = merge(sources, LeaderboardEntry.BY_SCORE);
+        while (top.size() < count && merged.hasNext())
+        {
+            top.add(merged.next());
+        }
+        return top;
+    }
+
+    /**
+     * @param name A player's name.
+     * @return The player's best game, or null if they have none on the leaderboard.
+     */
+    public synchronized LeaderboardEntry getBestGame(String name)
+    {
+        name = new LeaderboardEntry(0, name, 0, 0, 0, false, false).getName();
+        LeaderboardEntry best = players.get(name);
+        for (LeaderboardSegment segment : playerSegments)
+        {
+            LeaderboardEntry entry = segment.findByName(name);
+            if (entry != null && (best == null || LeaderboardEntry.BY_SCORE.compare(entry, best) < 0))
+            {
+                best = entry;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param name A player's name.
+     * @return The place of the player's best game among all games (1 is the top), or 0 if they have none.
+     */
+    public synchronized long getRank(String name)
+    {
+        LeaderboardEntry best = getBestGame(name);
+        return best == null ? 0 : getRank(best);
+    }
+
+    /**
+     * @param entry A game, which needn't be on the leaderboard.
+     * @return The place the game has, or would have, among all games (1 is the top).
+     */
+    public synchronized long getRank(LeaderboardEntry entry)
+    {
+        int index = Collections.binarySearch(games, entry, LeaderboardEntry.BY_SCORE);
+        long before = index < 0 ? -index - 1 : index;
+        for (LeaderboardSegment segment : gameSegments)
+        {
+            before += segment.countBefore(entry, LeaderboardEntry.BY_SCORE);
+        }
+        return before + 1;
+    }
+
+    /**
+     * Writes the games held in memory out to new segments.
+     */
+    public synchronized void flush()
+    {
+        if (games.isEmpty())
+        {
+            return;
+        }
+        try
+        {
+            gameSegments.add(LeaderboardSegment.write(nextSegmentPath(GAMES), games.iterator()));
+            playerSegments.add(LeaderboardSegment.write(nextSegmentPath(PLAYERS), players.values().iterator()));
+            games.clear();
+            players.clear();
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        if (merger == null)
+        {
+            merger = Executors.newSingleThreadExecutor(task -> {
+                Thread thread = new Thread(task, "leaderboard-merge");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        pendingMerges++;
+        merger.execute(this::mergeTiers);
+        while (pendingMerges > 0 && mergeFailure == null
+                && (gameSegments.size() > MAX_SEGMENTS || playerSegments.size() > MAX_SEGMENTS))
+        {
+            awaitMerge();
+        }
+    }
+
+    /**
+     * Writes out the games held in memory and waits for the merges to finish.
+     *
+     * @throws UncheckedIOException if a merge failed; its segments are left as they were.
+     */
+    public synchronized void close()
+    {
+        if (closed)
+        {
+            return;
+        }
+        closed = true;
+        flush();
+        while (pendingMerges > 0)
+        {
+            awaitMerge();
+        }
+        if (merger != null)
+        {
+            merger.shutdown();
+            merger = null;
+        }
+        if (mergeFailure != null)
+        {
+            throw new UncheckedIOException("Couldn't merge leaderboard segments", mergeFailure);
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (closed)
+        {
+            throw new IllegalStateException("The leaderboard is closed");
+        }
+    }
+
+    // called with the leaderboard locked; waits until a merge has finished
+    private void awaitMerge()
+    {
+        try
+        {
+            wait();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the leaderboard to merge", e);
+        }
+    }
+
+    // runs on the merge thread: merges tiers until none is left to merge
+    private void mergeTiers()
+    {
+        try
+        {
+            while (mergeTier(gameSegments, GAMES, LeaderboardEntry.BY_SCORE, false))
+            {
+                // keep merging
+            }
+            while (mergeTier(playerSegments, PLAYERS, LeaderboardEntry.BY_NAME, true))
+            {
+                // keep merging
+            }
+        }
+        catch (IOException e)
+        {
+            synchronized (this)
+            {
+                mergeFailure = e;
+            }
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                pendingMerges--;
+                notifyAll();
+            }
+        }
+    }
+
+    // merges one tier of segments, if a tree has one; for players, only each one's best game is kept
+    private boolean mergeTier(List<LeaderboardSegment> segments, String kind, Comparator<LeaderboardEntry> order,
+                              boolean bestPerPlayer) throws IOException
+    {
+        List<LeaderboardSegment> tier;
+        Path file;
+        synchronized (this)
+        {
+            tier = findTier(segments);
+            if (tier == null)
+            {
+                return false;
+            }
+            file = nextSegmentPath(kind);
+        }
+
+        // segments never change once written, so they can be read while games are added and looked up
+        List<Iterator<LeaderboardEntry>> sources = new ArrayList<>();
+        for (LeaderboardSegment segment : tier)
+        {
+            sources.add(segment.iterator());
+        }
+        Iterator<LeaderboardEntry> merged = merge(sources, order);
+        if (bestPerPlayer)
+        {
+            merged = firstPerName(merged);
+        }
+        LeaderboardSegment result = LeaderboardSegment.write(file, merged);
+
+        synchronized (this)
+        {
+            segments.removeAll(tier);
+            // the merged segment holds the oldest of its inputs' games, but order between segments doesn't matter
+            segments.add(0, result);
+            notifyAll();
+        }
+        // nothing reads a segment once it is out of the list, as every query holds the lock
+        for (LeaderboardSegment segment : tier)
+        {
+            segment.delete();
+        }
+        return true;
+    }
+
+    // called with the leaderboard locked: the smallest MERGE_WIDTH segments within TIER_RATIO of each other's size,
+    // or null if there aren't any. Segments smaller than the in-memory table, such as those written by close(), count
+    // as its size, so they are merged with each other and with freshly flushed ones.
+    private List<LeaderboardSegment> findTier(List<LeaderboardSegment> segments)
+    {
+        List<LeaderboardSegment> bySize = new ArrayList<>(segments);
+        bySize.sort(Comparator.comparingInt(LeaderboardSegment::size));
+        for (int i = 0; i + MERGE_WIDTH <= bySize.size(); i++)
+        {
+            long smallest = Math.max(bySize.get(i).size(), memtableSize);
+            long total = 0;
+            for (int j = i; j < i + MERGE_WIDTH; j++)
+            {
+                total += bySize.get(j).size();
+            }
+            if (bySize.get(i + MERGE_WIDTH - 1).size() <= TIER_RATIO * smallest && total <= MAX_SEGMENT_ENTRIES)
+            {
+                return new ArrayList<>(bySize.subList(i, i + MERGE_WIDTH));
+            }
+        }
+        return null;
+    }
+
+    private Path nextSegmentPath(String kind)
+    {
+        return directory.resolve(String.format("%s-%06d%s", kind, nextSegment++, SUFFIX));
+    }
+
+    /**
+     * The next entry of one sorted source, while sources are being merged.
+     */
+    private static class Cursor
+    {
+        final Iterator<LeaderboardEntry> source;
+        LeaderboardEntry head;
+
+        Cursor(Iterator<LeaderboardEntry> source)
+        {
+            this.source = source;
+            head = source.next();
+        }
+    }
+
+    // merges sorted sources into one sorted stream, holding one entry per source
+    private static Iterator<LeaderboardEntry> merge(List<Iterator<LeaderboardEntry>> sources,
+                                                    Comparator<LeaderboardEntry> order)
+    {
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>(Math.max(1, sources.size()),
+                (a, b) -> order.compare(a.head, b.head));
+        for (Iterator<LeaderboardEntry> source : sources)
+        {
+            if (source.hasNext())
+            {
+                cursors.add(new Cursor(source));
+            }
+        }
+        return new Iterator<LeaderboardEntry>()
+        {
+            public boolean hasNext()
+            {
+                return !cursors.isEmpty();
+            }
+
+            public LeaderboardEntry next()
+            {
+                Cursor cursor = cursors.poll();
+                if (cursor == null)
+                {
+                    throw new NoSuchElementException();
+                }
+                LeaderboardEntry entry = cursor.head;
+                if (cursor.source.hasNext())
+                {
+                    cursor.head = cursor.source.next();
+                    cursors.add(cursor);
+                }
+                return entry;
+            }
+        };
+    }
+
+    // in a stream sorted BY_NAME, keeps only the first (best) game of each player
+    private static Iterator<LeaderboardEntry> firstPerName(Iterator<LeaderboardEntry> sorted)
+    {
+        return new Iterator<LeaderboardEntry>()
+        {
+            private LeaderboardEntry next = sorted.hasNext() ? sorted.next() : null;
+
+            public boolean hasNext()
+            {
+                return next != null;
+            }
+
+            public LeaderboardEntry next()
+            {
+                LeaderboardEntry entry = next;
+                if (entry == null)
+                {
+                    throw new NoSuchElementException();
+                }
+                next = null;
+                while (sorted.hasNext() && next == null)
+                {
+                    LeaderboardEntry candidate = sorted.next();
+                    if (!candidate.getName().equals(entry.getName()))
+                    {
+                        next = candidate;
+                    }
+                }
+                return entry;
+            }
+        };
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> list = Files.list(directory))
+        {
+            list.filter(file -> {
+                String name = file.getFileName().toString();
+                return (name.startsWith(GAMES + "-") || name.startsWith(PLAYERS + "-")) && name.endsWith(SUFFIX);
+            }).sorted(Comparator.comparingLong(file -> segmentNumber(file.getFileName().toString()))).forEach(files::add);
+        }
+        return files;
+    }
+
+    private static long segmentNumber(String name)
+    {
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.length() - SUFFIX.length()));
+    }
+}
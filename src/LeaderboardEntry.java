@@ -0,0 +1,178 @@
+/**
+ * The LeaderboardEntry class is one finished game on the leaderboard.<p>
+ * Games are ranked by gold (most first), then by treasure hunted (most first), then by turns taken
+ * (fewest first); the order games were added breaks any remaining tie.
+ */
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+
+public class LeaderboardEntry
+{
+    // size of an entry on disk; see write()
+    public static final int RECORD_SIZE = 64;
+    public static final int MAX_NAME_BYTES = RECORD_SIZE - 22;
+
+    private static final int WON = 1;
+    private static final int LOST = 2;
+
+    /**
+     * Best game first.
+     */
+    public static final Comparator<LeaderboardEntry> BY_SCORE = (a, b) -> {
+        if (a.gold != b.gold)
+        {
+            return Integer.compare(b.gold, a.gold);
+        }
+        if (a.huntedItemTotal != b.huntedItemTotal)
+        {
+            return Integer.compare(b.huntedItemTotal, a.huntedItemTotal);
+        }
+        if (a.turns != b.turns)
+        {
+            return Integer.compare(a.turns, b.turns);
+        }
+        return Long.compare(a.sequence, b.sequence);
+    };
+
+    /**
+     * By player name, and each player's best game first.
+     */
+    public static final Comparator<LeaderboardEntry> BY_NAME = (a, b) -> {
+        int byName = a.name.compareTo(b.name);
+        return byName != 0 ? byName : BY_SCORE.compare(a, b);
+    };
+
+    //instance variables
+    private final long sequence;
+    private final String name;
+    private final int gold;
+    private final int huntedItemTotal;
+    private final int turns;
+    private final boolean won;
+    private final boolean lost;
+
+    //Constructor
+    /**
+     * @param sequence The order the game was added in.
+     * @param name The player's name; cut short if it takes more than MAX_NAME_BYTES in UTF-8.
+     * @param gold The hunter's gold at the end of the game.
+     * @param huntedItemTotal The hunter's treasure total at the end of the game.
+     * @param turns The number of actions taken.
+     * @param won true if the hunter won.
+     * @param lost true if the hunter lost all their gold.
+     */
+    public LeaderboardEntry(long sequence, String name, int gold, int huntedItemTotal, int turns, boolean won, boolean lost)
+    {
+        this.sequence = sequence;
+        this.name = shorten(name);
+        this.gold = gold;
+        this.huntedItemTotal = huntedItemTotal;
+        this.turns = turns;
+        this.won = won;
+        this.lost = lost;
+    }
+
+    /**
+     * Makes the entry for a finished game.
+     */
+    public static LeaderboardEntry of(long sequence, GameSession session)
+    {
+        Hunter hunter = session.getHunter();
+        return new LeaderboardEntry(sequence, hunter.getHunterName(), hunter.getGold(), hunter.getHuntedItemTotal(),
+                session.getTurns(), hunter.hasWonGame(), hunter.hasLostGame());
+    }
+
+    /**
+     * Reads the entry at a position in a buffer.
+     */
+    public static LeaderboardEntry read(ByteBuffer buffer, int offset)
+    {
+        int flags = buffer.get(offset + 20);
+        int nameLength = buffer.get(offset + 21);
+        byte[] name = new byte[nameLength];
+        buffer.get(offset + 22, name);
+        return new LeaderboardEntry(buffer.getLong(offset), new String(name, StandardCharsets.UTF_8),
+                buffer.getInt(offset + 8), buffer.getInt(offset + 12), buffer.getInt(offset + 16),
+                (flags & WON) != 0, (flags & LOST) != 0);
+    }
+
+    /**
+     * Writes the entry as RECORD_SIZE bytes:
+     * sequence (long), gold, huntedItemTotal, turns (ints), flags, name length (bytes), then the name in UTF-8.
+     */
+    public void write(ByteBuffer buffer)
+    {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int start = buffer.position();
+        buffer.putLong(sequence);
+        buffer.putInt(gold);
+        buffer.putInt(huntedItemTotal);
+        buffer.putInt(turns);
+        buffer.put((byte) ((won ? WON : 0) | (lost ? LOST : 0)));
+        buffer.put((byte) nameBytes.length);
+        buffer.put(nameBytes);
+        buffer.position(start + RECORD_SIZE);
+    }
+
+    //Accessors
+    public long getSequence()
+    {
+        return sequence;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public int getGold()
+    {
+        return gold;
+    }
+
+    public int getHuntedItemTotal()
+    {
+        return huntedItemTotal;
+    }
+
+    public int getTurns()
+    {
+        return turns;
+    }
+
+    public boolean hasWon()
+    {
+        return won;
+    }
+
+    public boolean hasLost()
+    {
+        return lost;
+    }
+
+    public String toString()
+    {
+        return String.format("%-20s %8d gold  %d treasure  %5d turns%s", name, gold, huntedItemTotal, turns,
+                won ? "  won" : lost ? "  lost" : "");
+    }
+
+    // cuts a name down to MAX_NAME_BYTES of UTF-8 without splitting a character
+    private static String shorten(String name)
+    {
+        if (name.length() * 3 <= MAX_NAME_BYTES || name.getBytes(StandardCharsets.UTF_8).length <= MAX_NAME_BYTES)
+        {
+            return name;
+        }
+        int end = name.length();
+        while (name.substring(0, end).getBytes(StandardCharsets.UTF_8).length > MAX_NAME_BYTES)
+        {
+            end--;
+            if (Character.isLowSurrogate(name.charAt(end)) && end > 0)
+            {
+                end--;
+            }
+        }
+        return name.substring(0, end);
+    }
+}
@@ -0,0 +1,236 @@
+/**
+ * The LeaderboardSegment class is one immutable, sorted file of leaderboard entries.<p>
+ * A segment is written once, in order, and then memory-mapped read-only, so its entries live in the
+ * page cache rather than on the heap. Entries have a fixed size, so the i-th entry is found by
+ * arithmetic and a lookup is a binary search.<p>
+ * File layout: a HEADER_SIZE-byte header ("THLB" magic, version, entry count, highest sequence number)
+ * followed by the entries, each LeaderboardEntry.RECORD_SIZE bytes. The highest sequence number lets a
+ * Leaderboard carry on numbering games without reading them; version 1 segments, whose 16-byte header
+ * doesn't have it, are still read, and are scanned for it when opened.
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+public class LeaderboardSegment
+{
+    public static final int HEADER_SIZE = 24;
+
+    private static final int MAGIC = 0x54484C42;
+    private static final int VERSION = 2;
+    private static final int VERSION_1_HEADER_SIZE = 16;
+
+    // entries are written through a buffer of this many
+    private static final int WRITE_BATCH = 1024;
+
+    //instance variables
+    private final Path file;
+    private final MappedByteBuffer buffer;
+    private final int headerSize;
+    private final int size;
+    private final long maxSequence;
+
+    //Constructor
+    /**
+     * Opens an existing segment file.
+     *
+     * @throws IllegalArgumentException if the file isn't a leaderboard segment.
+     */
+    public LeaderboardSegment(Path file) throws IOException
+    {
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int version = buffer.capacity() < VERSION_1_HEADER_SIZE ? 0 : buffer.getInt(4);
+        headerSize = version == 1 ? VERSION_1_HEADER_SIZE : HEADER_SIZE;
+        if (buffer.capacity() < headerSize || buffer.getInt(0) != MAGIC || (version != 1 && version != VERSION))
+        {
+            throw new IllegalArgumentException(file + " is not a leaderboard segment");
+        }
+        long count = buffer.getLong(8);
+        if (count < 0 || headerSize + count * LeaderboardEntry.RECORD_SIZE > buffer.capacity())
+        {
+            throw new IllegalArgumentException(file + " is truncated");
+        }
+        size = (int) count;
+        maxSequence = version == 1 ? scanMaxSequence() : buffer.getLong(16);
+    }
+
+    /**
+     * Writes entries, which must already be in order, to a new segment file. The file is written under a
+     * temporary name and then renamed, so a crash never leaves a half-written segment behind.
+     *
+     * @param file The segment file to create.
+     * @param entries The entries, in order.
+     * @return The new segment, opened.
+     */
+    public static LeaderboardSegment write(Path file, Iterator<LeaderboardEntry> entries) throws IOException
+    {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        long count = 0;
+        long maxSequence = -1;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer batch = ByteBuffer.allocate(WRITE_BATCH * LeaderboardEntry.RECORD_SIZE);
+            channel.position(HEADER_SIZE);
+            while (entries.hasNext())
+            {
+                LeaderboardEntry entry = entries.next();
+                entry.write(batch);
+                maxSequence = Math.max(maxSequence, entry.getSequence());
+                count++;
+                if (!batch.hasRemaining())
+                {
+                    writeFully(channel, batch);
+                }
+            }
+            writeFully(channel, batch);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(count).putLong(maxSequence).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new LeaderboardSegment(file);
+    }
+
+    //Accessors
+    public Path getFile()
+    {
+        return file;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return The highest sequence number of the segment's entries, or -1 if it has none.
+     */
+    public long getMaxSequence()
+    {
+        return maxSequence;
+    }
+
+    public LeaderboardEntry get(int index)
+    {
+        return LeaderboardEntry.read(buffer, headerSize + index * LeaderboardEntry.RECORD_SIZE);
+    }
+
+    /**
+     * @param entry An entry, which needn't be in this segment.
+     * @param order The order the segment is sorted in.
+     * @return The number of entries in this segment that come before it.
+     */
+    public int countBefore(LeaderboardEntry entry, Comparator<LeaderboardEntry> order)
+    {
+        int low = 0;
+        int high = size;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (order.compare(get(middle), entry) < 0)
+            {
+                low = middle + 1;
+            }
+            else
+            {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * In a segment sorted BY_NAME, finds a player's best game.
+     *
+     * @return The entry, or null if the player has none here.
+     */
+    public LeaderboardEntry findByName(String name)
+    {
+        // sorts before every real entry with this name
+        LeaderboardEntry first = new LeaderboardEntry(Long.MIN_VALUE, name, Integer.MAX_VALUE, Integer.MAX_VALUE,
+                Integer.MIN_VALUE, false, false);
+        int index = countBefore(first, LeaderboardEntry.BY_NAME);
+        if (index == size)
+        {
+            return null;
+        }
+        LeaderboardEntry entry = get(index);
+        return entry.getName().equals(first.getName()) ? entry : null;
+    }
+
+    /**
+     * @return The entries in order, read one at a time from the mapped file.
+     */
+    public Iterator<LeaderboardEntry> iterator()
+    {
+        return new Iterator<LeaderboardEntry>()
+        {
+            private int next;
+
+            public boolean hasNext()
+            {
+                return next < size;
+            }
+
+            public LeaderboardEntry next()
+            {
+                if (next >= size)
+                {
+                    throw new NoSuchElementException();
+                }
+                return get(next++);
+            }
+        };
+    }
+
+    /**
+     * Deletes the segment's file. The segment must not be used afterwards.
+     */
+    public void delete()
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private long scanMaxSequence()
+    {
+        long max = -1;
+        for (int i = 0; i < size; i++)
+        {
+            max = Math.max(max, get(i).getSequence());
+        }
+        return max;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer batch) throws IOException
+    {
+        batch.flip();
+        while (batch.hasRemaining())
+        {
+            channel.write(batch);
+        }
+        batch.clear();
+    }
+}
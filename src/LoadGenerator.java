@@ -0,0 +1,221 @@
+/**
+ * The LoadGenerator class puts a GameApiServer under load and reports how fast it answers.<p>
+ * Each synthetic player is a session thread of its own (see SessionThreads) that plays game after game
+ * through the HTTP API, waiting for each answer before sending the next request, the way a front end
+ * would: it starts a game, then buys, sells, moves on, looks for trouble and hunts at random until the game
+ * is over, and deletes it. Every request is timed from sending it to reading the whole answer. The run
+ * starts with a second of warm-up for the JIT, which isn't measured; after that every request goes into
+ * an ActionMetrics histogram, and requests per second and the p50, p99 and p99.9 latencies are printed at
+ * the end. A failed request or an unexpected status is counted as an error, and any error exits with
+ * status 1.<p>
+ * Without a URL, a GameApiServer is started in this JVM on a free port, and its SessionStore's hits,
+ * misses and evictions are printed too; -Dtreasurehunter.sessionMemory sets its budget.<p>
+ * Run it with: java LoadGenerator [players] [seconds] [url], e.g. java LoadGenerator 200 10 http://localhost:4568
+ */
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LoadGenerator
+{
+    private static final long WARMUP_NANOS = 1_000_000_000L;
+    // a game that hasn't ended by now is abandoned, as real players do
+    private static final int MAX_TURNS = 200;
+    private static final String[] MODES = {"easy", "normal", "hard"};
+    private static final String[] ACTIONS = {"buy", "sell", "move", "back", "trouble", "hunt"};
+
+    //instance variables
+    private final HttpClient client;
+    private final String url;
+    private final ActionMetrics latency = new ActionMetrics("request");
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    private long measureFrom;
+    private long deadline;
+
+    //Constructor
+    /**
+     * @param url Where the API is, e.g. "http://localhost:4568".
+     */
+    public LoadGenerator(String url)
+    {
+        this.url = url + "/sessions";
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    public static void main(String[] args) throws InterruptedException, IOException
+    {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        GameApiServer server = null;
+        String url;
+        if (args.length > 2)
+        {
+            url = args[2];
+        }
+        else
+        {
+            server = new GameApiServer(0);
+            // the address it listens on; "localhost" may resolve to the other IP version first
+            url = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort();
+        }
+
+        System.out.println(players + " players against " + url + " for " + seconds + " s after warm-up, "
+                + (SessionThreads.hasVirtualThreads() ? "virtual" : "platform") + " threads");
+        LoadGenerator generator = new LoadGenerator(url);
+        try
+        {
+            generator.run(players, WARMUP_NANOS + seconds * 1_000_000_000L);
+        }
+        finally
+        {
+            if (server != null)
+            {
+                System.out.println(server.getStore());
+                server.close();
+            }
+        }
+
+        ActionMetrics latency = generator.getLatency();
+        System.out.printf("%,d requests in %d s: %,.0f requests/s, %,d games, %,d errors%n", latency.getCount(),
+                seconds, (double) latency.getCount() / seconds, generator.getGames(), generator.getErrors());
+        System.out.printf("latency  p50 %,8.1f us  p99 %,8.1f us  p99.9 %,8.1f us  max %,8.1f us%n",
+                latency.getP50Nanos() / 1e3, latency.getP99Nanos() / 1e3, latency.getP999Nanos() / 1e3,
+                latency.getMaxNanos() / 1e3);
+        System.exit(generator.getErrors() == 0 ? 0 : 1);
+    }
+
+    //Accessors
+    /**
+     * @return The latency of every request sent after the warm-up.
+     */
+    public ActionMetrics getLatency()
+    {
+        return latency;
+    }
+
+    public long getErrors()
+    {
+        return errors.sum();
+    }
+
+    public long getGames()
+    {
+        return games.sum();
+    }
+
+    /**
+     * Runs every player until the time is up, and waits for them to finish.
+     *
+     * @param players The number of players.
+     * @param nanos How long to run for, warm-up included.
+     */
+    public void run(int players, long nanos) throws InterruptedException
+    {
+        measureFrom = System.nanoTime() + WARMUP_NANOS;
+        deadline = System.nanoTime() + nanos;
+        ExecutorService executor = SessionThreads.newPerSessionExecutor("player");
+        List<Future<?>> futures = new ArrayList<>();
+        try
+        {
+            for (int i = 0; i < players; i++)
+            {
+                GameRandom random = new GameRandom(i);
+                String name = "Player-" + i;
+                futures.add(executor.submit(() -> play(name, random)));
+            }
+            for (Future<?> future : futures)
+            {
+                future.get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("A player failed", e.getCause());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    // plays games one after another until the time is up
+    private void play(String name, GameRandom random)
+    {
+        while (System.nanoTime() < deadline)
+        {
+            String created = send("POST", url + "?mode=" + MODES[random.nextInt(MODES.length)] + "&name=" + name, 201);
+            if (created == null)
+            {
+                continue;
+            }
+            String game = url + "/" + parseId(created);
+            String state = created;
+            for (int turn = 0; turn < MAX_TURNS && !state.contains("\"finished\":true") && System.nanoTime() < deadline; turn++)
+            {
+                String action = ACTIONS[random.nextInt(ACTIONS.length)];
+                String item = action.equals("buy") || action.equals("sell")
+                        ? "?item=" + Items.nameOf(random.nextInt(Items.SHOP_ITEM_COUNT)) : "";
+                String answer = send("POST", game + "/" + action + item, 200);
+                if (answer != null)
+                {
+                    state = answer;
+                }
+            }
+            send("DELETE", game, 200);
+            games.increment();
+        }
+    }
+
+    // sends a request and times it, returning the answer, or null if it failed
+    private String send(String method, String uri, int expectedStatus)
+    {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(uri))
+                .method(method, HttpRequest.BodyPublishers.noBody()).build();
+        long start = System.nanoTime();
+        try
+        {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (start >= measureFrom)
+            {
+                latency.recordNanos(System.nanoTime() - start);
+            }
+            if (response.statusCode() != expectedStatus)
+            {
+                errors.increment();
+                return null;
+            }
+            return response.body();
+        }
+        catch (IOException e)
+        {
+            errors.increment();
+            return null;
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private static long parseId(String state)
+    {
+        int start = state.indexOf("\"id\":") + 5;
+        int end = start;
+        while (end < state.length() && Character.isDigit(state.charAt(end)))
+        {
+            end++;
+        }
+        return Long.parseLong(state.substring(start, end));
+    }
+}
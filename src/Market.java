@@ -0,0 +1,341 @@
+/**
+ * The Market class moves shop prices with supply and demand.<p>
+ * The road has a ring of trading posts, and town n trades at post n % posts. Every post keeps a price
+ * level for each item, in 1/1024ths of the shop's own price: buying an item pushes its level up by
+ * NUDGE, and selling one pulls it down. A trade is one compare-and-set on that post's level, so it costs
+ * the same however many towns there are, and trading threads never wait for anything.<p>
+ * Neighbouring posts drift towards each other, and every post drifts back towards its shop's own prices.
+ * That is done in batches by diffuse(), which only visits the posts that have traded or changed since
+ * the last pass, and their neighbours; a quiet stretch of road costs one bit per post to skip over. A
+ * post keeps being visited until it is back at its shop's own prices.<p>
+ * Each pass publishes a Snapshot of every level, with a version number. Snapshots never change, and a
+ * new one shares every page of posts that didn't change with the one before, so reading prices for a
+ * whole road never blocks a trade and never sees a half-finished pass.<p>
+ * Shops don't use a market unless they are given one; start the JVM with -Dtreasurehunter.market=n to
+ * put every world's towns on one shared market of n posts, diffused every
+ * -Dtreasurehunter.marketMillis milliseconds (100 by default).
+ */
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class Market implements AutoCloseable
+{
+    /**
+     * The number of posts on the shared market, from -Dtreasurehunter.market; 0 means no market.
+     */
+    public static final int DEFAULT_POSTS = Integer.getInteger("treasurehunter.market", 0);
+
+    // a level of SCALE means the shop's own price
+    public static final int SCALE = 1024;
+    // how far one trade moves an item's price: about 1.5%
+    public static final int NUDGE = 16;
+    // the cheapest an item gets is half price, and the dearest four times the price
+    private static final int MIN_LEVEL = -SCALE / 2;
+    private static final int MAX_LEVEL = 3 * SCALE;
+    // each pass moves a post this fraction of the way towards each neighbour, and back towards its shop's own prices
+    private static final double SPREAD = 0.2;
+    private static final double RECOVERY = 0.05;
+
+    // levels are kept one row of ROW ints per post, so posts don't share cache lines
+    private static final int ROW = 16;
+    // posts per page of a snapshot; a pass copies only the pages it changed
+    private static final int PAGE = 64;
+
+    //instance variables
+    private final int posts;
+    private final AtomicIntegerArray levels;
+    // one bit per post that has changed since the last pass
+    private final AtomicLongArray dirty;
+    // scratch space for diffuse(): the posts that had changed, and how far each level moves
+    private final int[] changed;
+    private final int[] moves;
+    private final ScheduledExecutorService scheduler;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Every post's price levels as they were after one pass of diffuse().
+     */
+    public static class Snapshot
+    {
+        private final long version;
+        private final int posts;
+        // the levels of PAGE posts at a time, one row of Items.COUNT per post
+        private final int[][] pages;
+
+        private Snapshot(long version, int posts, int[][] pages)
+        {
+            this.version = version;
+            this.posts = posts;
+            this.pages = pages;
+        }
+
+        /**
+         * @return The number of passes of diffuse() before this snapshot was taken.
+         */
+        public long getVersion()
+        {
+            return version;
+        }
+
+        /**
+         * @return The level of an item at a post, where 0 means the shop's own price.
+         */
+        public int getLevel(int post, int itemId)
+        {
+            return pages[post / PAGE][post % PAGE * Items.COUNT + itemId];
+        }
+
+        /**
+         * @param town The number of a town on the road.
+         * @param itemId An item id.
+         * @param price The shop's own price for the item.
+         * @return What the item cost in that town when the snapshot was taken.
+         */
+        public int getPrice(int town, int itemId, int price)
+        {
+            return adjust(price, getLevel(town % posts, itemId));
+        }
+    }
+
+    private static class Shared
+    {
+        static final Market INSTANCE = new Market(DEFAULT_POSTS, Long.getLong("treasurehunter.marketMillis", 100));
+    }
+
+    //Constructor
+    /**
+     * Builds a market where every item is at its shop's own price.
+     *
+     * @param posts The number of trading posts along the road.
+     * @param periodMillis How often to diffuse prices, or 0 to only do it when diffuse() is called.
+     */
+    public Market(int posts, long periodMillis)
+    {
+        if (posts < 1)
+        {
+            throw new IllegalArgumentException("A market needs at least one post");
+        }
+        this.posts = posts;
+        levels = new AtomicIntegerArray(posts * ROW);
+        dirty = new AtomicLongArray((posts + 63) / 64);
+        changed = new int[posts];
+        moves = new int[posts * Items.COUNT];
+        // every page starts as the same page of zeros, and is copied the first time it changes
+        int[][] pages = new int[(posts + PAGE - 1) / PAGE][];
+        Arrays.fill(pages, new int[PAGE * Items.COUNT]);
+        snapshot = new Snapshot(0, posts, pages);
+        if (periodMillis > 0)
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "market");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::diffuse, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return The market shared by every world, started the first time it is used.
+     */
+    public static Market shared()
+    {
+        return Shared.INSTANCE;
+    }
+
+    //Accessors
+    /**
+     * @return The number of trading posts.
+     */
+    public int getPosts()
+    {
+        return posts;
+    }
+
+    /**
+     * @return The prices as of the last pass of diffuse(). This never blocks.
+     */
+    public Snapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * @return The level of an item in a town right now, where 0 means the shop's own price.
+     */
+    public int getLevel(int town, int itemId)
+    {
+        return levels.get(town % posts * ROW + itemId);
+    }
+
+    /**
+     * @param town The number of a town on the road.
+     * @param itemId An item id.
+     * @param price The shop's own price for the item.
+     * @return What the item costs in that town right now; never less than 1 gold, unless the price is 0.
+     */
+    public int getPrice(int town, int itemId, int price)
+    {
+        return adjust(price, getLevel(town, itemId));
+    }
+
+    /**
+     * Records that a hunter bought an item in a town, which makes it dearer there.
+     */
+    public void recordPurchase(int town, int itemId)
+    {
+        nudge(town % posts, itemId, NUDGE);
+    }
+
+    /**
+     * Records that a hunter sold an item in a town, which makes it cheaper there.
+     */
+    public void recordSale(int town, int itemId)
+    {
+        nudge(town % posts, itemId, -NUDGE);
+    }
+
+    /**
+     * Moves every post that has changed towards its neighbours and its shop's own prices, and publishes
+     * a new snapshot. Passes run one at a time; trades carry on while they do.
+     */
+    public synchronized void diffuse()
+    {
+        // a word of the dirty bits is cleared as it is taken, so a trade during the pass is left for the next one
+        int found = 0;
+        for (int word = 0; word < dirty.length(); word++)
+        {
+            if (dirty.get(word) == 0)
+            {
+                continue;
+            }
+            long bits = dirty.getAndSet(word, 0);
+            while (bits != 0)
+            {
+                changed[found++] = word * 64 + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        if (found == 0)
+        {
+            return;
+        }
+
+        // work out every move from the levels as they are, then apply them all
+        for (int i = 0; i < found; i++)
+        {
+            int row = changed[i];
+            int before = (row + posts - 1) % posts;
+            int after = (row + 1) % posts;
+            for (int itemId = 0; itemId < Items.COUNT; itemId++)
+            {
+                int level = levels.get(row * ROW + itemId);
+                int pull = posts == 1 ? 0 : levels.get(before * ROW + itemId) + levels.get(after * ROW + itemId) - 2 * level;
+                int move = (int) Math.round(SPREAD * pull - RECOVERY * level);
+                if (move == 0 && level != 0)
+                {
+                    // the last step home, which rounding would never take
+                    move = -Integer.signum(level);
+                }
+                moves[i * Items.COUNT + itemId] = move;
+            }
+        }
+
+        Snapshot last = snapshot;
+        int[][] pages = last.pages.clone();
+        for (int i = 0; i < found; i++)
+        {
+            int row = changed[i];
+            boolean moved = false;
+            for (int itemId = 0; itemId < Items.COUNT; itemId++)
+            {
+                int move = moves[i * Items.COUNT + itemId];
+                if (move != 0)
+                {
+                    nudge(row, itemId, move);
+                    moved = true;
+                }
+            }
+            if (moved)
+            {
+                // its neighbours are pulled by the new level next pass
+                markDirty((row + posts - 1) % posts);
+                markDirty((row + 1) % posts);
+            }
+            int page = row / PAGE;
+            if (pages[page] == last.pages[page])
+            {
+                pages[page] = last.pages[page].clone();
+            }
+            for (int itemId = 0; itemId < Items.COUNT; itemId++)
+            {
+                pages[page][row % PAGE * Items.COUNT + itemId] = levels.get(row * ROW + itemId);
+            }
+        }
+        snapshot = new Snapshot(last.version + 1, posts, pages);
+    }
+
+    /**
+     * Stops diffusing prices, waiting for a pass that has already started to finish.
+     */
+    public void close()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+            try
+            {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // moves one level by an amount, within the limits, and queues the post for the next pass
+    private void nudge(int post, int itemId, int amount)
+    {
+        int index = post * ROW + itemId;
+        int level = levels.get(index);
+        while (true)
+        {
+            int target = Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level + amount));
+            int seen = levels.compareAndExchange(index, level, target);
+            if (seen == level)
+            {
+                break;
+            }
+            level = seen;
+        }
+        markDirty(post);
+    }
+
+    private void markDirty(int post)
+    {
+        long bit = 1L << post;
+        // most trades are in a town that is already marked, and a read is cheaper than a write
+        if ((dirty.get(post >>> 6) & bit) == 0)
+        {
+            dirty.accumulateAndGet(post >>> 6, bit, (word, mark) -> word | mark);
+        }
+    }
+
+    private static int adjust(int price, int level)
+    {
+        if (price == 0 || level == 0)
+        {
+            return price;
+        }
+        return Math.max(1, (int) (((long) price * (SCALE + level) + SCALE / 2) / SCALE));
+    }
+}
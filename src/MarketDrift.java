@@ -0,0 +1,205 @@
+/**
+ * The MarketDrift class checks that a Market moves prices the way it should.<p>
+ * First, on a quiet market: buying in one town must make that item dearer there, diffusion must spread
+ * the rise to the neighbouring towns but not to the far side of the road, and once trading stops every
+ * price must come back to exactly the shop's own price, after which diffusion stops doing any work.
+ * Snapshots taken along the way must never change.<p>
+ * Then on a busy one: trading threads buy and sell at random all along the road while the market
+ * diffuses every millisecond and a reader keeps taking snapshots. Versions must only go up, a snapshot
+ * must read the same every time, and trades per second are printed for a small market and a big one.
+ * A trade does the same work whatever the size of the road, but a big road doesn't fit in the cache,
+ * so its trades spend longer waiting on memory.<p>
+ * Any failure exits with status 1.<p>
+ * Run it with: java MarketDrift [millis] [threads]
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class MarketDrift
+{
+    private static final int BUSY_TOWN = 10;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        boolean passed = checkQuietMarket();
+        for (int posts : new int[] {1_000, 1_000_000})
+        {
+            passed &= checkBusyMarket(posts, millis, threads);
+        }
+        System.out.println(passed ? "Market behaves" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // one town trades, the rest of the road only feels it through diffusion
+    private static boolean checkQuietMarket()
+    {
+        Market market = new Market(1_000, 0);
+        World world = new World(GameMode.NORMAL, 42, new GameRandom(42), World.DEFAULT_WINDOW);
+        world.setMarket(market);
+        Shop shop = world.getTown(BUSY_TOWN).getShop();
+        int rope = Items.ROPE;
+        int price = shop.checkMarketPrice(rope, true);
+
+        // each trader buys twice and sells once
+        for (int i = 0; i < 20; i++)
+        {
+            Hunter hunter = new Hunter("Trader-" + i, 1_000_000);
+            if (!shop.buy(hunter, rope) || !shop.sell(hunter, rope) || !shop.buy(hunter, rope))
+            {
+                return fail("A trade on the market failed");
+            }
+        }
+        if (market.getLevel(BUSY_TOWN, rope) != 20 * Market.NUDGE || shop.checkMarketPrice(rope, true) <= price)
+        {
+            return fail("Buying more than selling should make rope dearer, level " + market.getLevel(BUSY_TOWN, rope));
+        }
+        Market.Snapshot before = market.getSnapshot();
+        for (int pass = 0; pass < 5; pass++)
+        {
+            market.diffuse();
+        }
+        Market.Snapshot after = market.getSnapshot();
+        System.out.printf("After 5 passes: town %d at %d, town %d at %d, town %d at %d, town 500 at %d%n",
+                BUSY_TOWN, after.getLevel(BUSY_TOWN, rope), BUSY_TOWN + 1, after.getLevel(BUSY_TOWN + 1, rope),
+                BUSY_TOWN + 3, after.getLevel(BUSY_TOWN + 3, rope), after.getLevel(500, rope));
+        if (before.getLevel(BUSY_TOWN, rope) != 0 || after.getVersion() != before.getVersion() + 5)
+        {
+            return fail("An old snapshot changed, or a pass wasn't published");
+        }
+        if (after.getLevel(BUSY_TOWN + 1, rope) <= 0 || after.getLevel(BUSY_TOWN - 1, rope) <= 0
+                || after.getLevel(500, rope) != 0 || after.getLevel(BUSY_TOWN, Items.BOAT) != 0)
+        {
+            return fail("Diffusion should reach the neighbours and nothing else");
+        }
+
+        // a pass with nothing left to move publishes nothing
+        long version;
+        do
+        {
+            version = market.getSnapshot().getVersion();
+            market.diffuse();
+        }
+        while (market.getSnapshot().getVersion() != version && version < 10_000);
+        Market.Snapshot settled = market.getSnapshot();
+        System.out.println("Prices settled after " + (settled.getVersion() - before.getVersion()) + " passes");
+        for (int post = 0; post < market.getPosts(); post++)
+        {
+            for (int itemId = 0; itemId < Items.COUNT; itemId++)
+            {
+                if (settled.getLevel(post, itemId) != 0 || market.getLevel(post, itemId) != 0)
+                {
+                    return fail("Town " + post + " never settled: " + Items.nameOf(itemId) + " at " + settled.getLevel(post, itemId));
+                }
+            }
+        }
+        if (shop.checkMarketPrice(rope, true) != price)
+        {
+            return fail("Rope should cost " + price + " again, not " + shop.checkMarketPrice(rope, true));
+        }
+        return true;
+    }
+
+    // traders all along the road, a diffuser and a reader, all at once
+    private static boolean checkBusyMarket(int posts, long millis, int threads) throws InterruptedException
+    {
+        Market market = new Market(posts, 1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+        AtomicBoolean running = new AtomicBoolean(true);
+        try
+        {
+            Future<String> reader = executor.submit(() -> {
+                long version = -1;
+                while (running.get())
+                {
+                    Market.Snapshot snapshot = market.getSnapshot();
+                    if (snapshot.getVersion() < version)
+                    {
+                        return "version went from " + version + " to " + snapshot.getVersion();
+                    }
+                    version = snapshot.getVersion();
+                    long first = sum(snapshot, posts);
+                    if (sum(snapshot, posts) != first)
+                    {
+                        return "snapshot " + version + " changed while it was read";
+                    }
+                }
+                return null;
+            });
+            List<Future<Long>> traders = new ArrayList<>();
+            long deadline = System.nanoTime() + millis * 1_000_000;
+            for (int t = 0; t < threads; t++)
+            {
+                GameRandom random = new GameRandom(t);
+                traders.add(executor.submit(() -> {
+                    long trades = 0;
+                    while (System.nanoTime() < deadline)
+                    {
+                        for (int i = 0; i < 1024; i++)
+                        {
+                            int town = random.nextInt(posts);
+                            int itemId = random.nextInt(Items.SHOP_ITEM_COUNT);
+                            if ((i & 1) == 0)
+                            {
+                                market.recordPurchase(town, itemId);
+                            }
+                            else
+                            {
+                                market.recordSale(town, itemId);
+                            }
+                        }
+                        trades += 1024;
+                    }
+                    return trades;
+                }));
+            }
+            long trades = 0;
+            for (Future<Long> trader : traders)
+            {
+                trades += trader.get();
+            }
+            running.set(false);
+            String problem = reader.get();
+            System.out.printf("%,9d towns: %,14.0f trades/s, %,d snapshots published%n", posts, trades * 1000.0 / millis,
+                    market.getSnapshot().getVersion());
+            return problem == null || fail(problem);
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("A market thread failed", e.getCause());
+        }
+        finally
+        {
+            running.set(false);
+            executor.shutdown();
+            market.close();
+        }
+    }
+
+    // reads a sample of the road, enough to notice a snapshot being written to
+    private static long sum(Market.Snapshot snapshot, int posts)
+    {
+        long sum = 0;
+        for (int post = 0; post < posts; post += Math.max(1, posts / 4096))
+        {
+            for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+            {
+                sum += snapshot.getLevel(post, itemId);
+            }
+        }
+        return sum;
+    }
+
+    private static boolean fail(String problem)
+    {
+        System.out.println(problem);
+        return false;
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * The Menu class is the table of commands the player can type at each of the game's menus.<p>
+ * There are three menus (the main menu, the shop menu and the actions menu). Each one has a table
+ * indexed by the character typed, filled in for both upper and lower case, so finding the command
+ * for an answer is a single array read with no toLowerCase() and no String comparisons.
+ */
+public class Menu
+{
+    // menus
+    public static final int MAIN = 0;
+    public static final int SHOP = 1;
+    public static final int ACTIONS = 2;
+    private static final int MENU_COUNT = 3;
+
+    // commands
+    public static final int INVALID = 0;
+    public static final int OPEN_SHOP = 1;
+    public static final int OPEN_ACTIONS = 2;
+    public static final int RETURN = 3;
+    public static final int BUY = 4;
+    public static final int SELL = 5;
+    public static final int MOVE = 6;
+    public static final int LOOK_FOR_TROUBLE = 7;
+    public static final int HUNT = 8;
+    public static final int EXIT = 9;
+    public static final int GO_BACK = 10;
+
+    private static final byte[][] COMMANDS = new byte[MENU_COUNT][128];
+
+    static
+    {
+        // the main menu opens the other two, but the actions can also be typed straight in
+        add(MAIN, 's', OPEN_SHOP);
+        add(MAIN, 'a', OPEN_ACTIONS);
+        add(MAIN, 'r', RETURN);
+        add(MAIN, 'b', BUY);
+        add(MAIN, 'm', MOVE);
+        add(MAIN, 'g', GO_BACK);
+        add(MAIN, 'l', LOOK_FOR_TROUBLE);
+        add(MAIN, 'h', HUNT);
+        add(MAIN, 'e', EXIT);
+
+        for (int menu = SHOP; menu <= ACTIONS; menu++)
+        {
+            add(menu, 'b', BUY);
+            add(menu, 's', SELL);
+            add(menu, 'm', MOVE);
+            add(menu, 'g', GO_BACK);
+            add(menu, 'l', LOOK_FOR_TROUBLE);
+            add(menu, 'h', HUNT);
+            add(menu, 'r', RETURN);
+            add(menu, 'e', EXIT);
+        }
+    }
+
+    private Menu()
+    {
+    }
+
+    /**
+     * Finds the command the player chose.
+     *
+     * @param menu The menu the player is answering (MAIN, SHOP or ACTIONS).
+     * @param choice What the player typed.
+     * @return The command, or INVALID if the answer doesn't mean anything at this menu.
+     */
+    public static int lookup(int menu, String choice)
+    {
+        if (choice.length() != 1)
+        {
+            return INVALID;
+        }
+        char key = choice.charAt(0);
+        if (key >= 128)
+        {
+            return INVALID;
+        }
+        return COMMANDS[menu][key];
+    }
+
+    private static void add(int menu, char key, int command)
+    {
+        COMMANDS[menu][Character.toLowerCase(key)] = (byte) command;
+        COMMANDS[menu][Character.toUpperCase(key)] = (byte) command;
+    }
+}
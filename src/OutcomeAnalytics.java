@@ -0,0 +1,271 @@
+/**
+ * The OutcomeAnalytics class works out the exact odds of what can happen in town, for balance reviews.<p>
+ * Everything here follows from the same numbers the game uses: a brawl's chances and gold ranges come from
+ * the mode's BrawlRules, a hunter's gold never goes below 0, and an item breaks on a crossing with
+ * Town.ITEM_BREAK_CHANCE. The answers are exact rather than sampled, and each takes a few dozen
+ * arithmetic operations.<p>
+ * Run it with: java OutcomeAnalytics [trials], to check every answer against the real Town.lookForTrouble.
+ */
+import java.util.Arrays;
+
+public class OutcomeAnalytics
+{
+    // gold levels the Monte Carlo check is run at; small ones are where the clamp at 0 matters
+    private static final int[] CHECK_GOLD = {0, 1, 3, 5, 10, 20, 50};
+
+    /**
+     * The chance of each whole-number outcome from getMin() to getMax().
+     */
+    public static class Distribution
+    {
+        private final int min;
+        private final double[] chances;
+
+        Distribution(int min, double[] chances)
+        {
+            this.min = min;
+            this.chances = chances;
+        }
+
+        public int getMin()
+        {
+            return min;
+        }
+
+        public int getMax()
+        {
+            return min + chances.length - 1;
+        }
+
+        /**
+         * @param value An outcome.
+         * @return The chance of exactly that outcome; 0 outside getMin() to getMax().
+         */
+        public double chanceOf(int value)
+        {
+            int index = value - min;
+            return index < 0 || index >= chances.length ? 0 : chances[index];
+        }
+
+        public double getMean()
+        {
+            double mean = 0;
+            for (int i = 0; i < chances.length; i++)
+            {
+                mean += chances[i] * (min + i);
+            }
+            return mean;
+        }
+
+        public double getVariance()
+        {
+            double mean = getMean();
+            double variance = 0;
+            for (int i = 0; i < chances.length; i++)
+            {
+                double difference = min + i - mean;
+                variance += chances[i] * difference * difference;
+            }
+            return variance;
+        }
+
+        public String toString()
+        {
+            return String.format("mean %.4f, variance %.4f, from %d to %d", getMean(), getVariance(), getMin(), getMax());
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        int trials = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        boolean agreed = true;
+        for (GameMode mode : new GameMode[] {GameMode.EASY, GameMode.NORMAL, GameMode.HARD, GameMode.CHEAT})
+        {
+            for (boolean tough : new boolean[] {false, true})
+            {
+                for (int gold : CHECK_GOLD)
+                {
+                    agreed &= check(mode, tough, gold, trials);
+                }
+            }
+        }
+        long start = System.nanoTime();
+        int calls = 0;
+        double total = 0;
+        for (int gold = 0; calls < 1_000_000; gold = (gold + 1) % 100, calls++)
+        {
+            total += brawlGoldChange(GameMode.NORMAL, (calls & 1) == 0, gold).getMean() + gameOverChance(GameMode.HARD, true, gold);
+        }
+        System.out.printf("brawl distribution + game over chance: %.0f ns per call (checksum %.1f)%n",
+                (System.nanoTime() - start) / (double) calls, total);
+        System.out.printf("item breaks within 1, 2, 5 crossings: %.4f, %.4f, %.4f%n",
+                itemBreakChance(1), itemBreakChance(2), itemBreakChance(5));
+        System.out.println(agreed ? "All exact results agree with the simulation." : "Some exact results disagree with the simulation!");
+        if (!agreed)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param mode The game mode.
+     * @param toughTown true for a tough town.
+     * @return The chance that looking for trouble starts a brawl.
+     */
+    public static double brawlChance(GameMode mode, boolean toughTown)
+    {
+        return mode.getBrawlRules().getNoTroubleChance(toughTown);
+    }
+
+    /**
+     * @param mode The game mode.
+     * @param toughTown true for a tough town.
+     * @return The chance that a brawl, once started, is won.
+     */
+    public static double winChance(GameMode mode, boolean toughTown)
+    {
+        BrawlRules rules = mode.getBrawlRules();
+        return rules.isAlwaysWin() ? 1 : 1 - rules.getNoTroubleChance(toughTown);
+    }
+
+    /**
+     * Works out how a hunter's gold changes when they look for trouble once, including not finding any.
+     *
+     * @param mode The game mode.
+     * @param toughTown true for a tough town.
+     * @param gold The hunter's gold beforehand.
+     * @return The distribution of the change in gold.
+     */
+    public static Distribution brawlGoldChange(GameMode mode, boolean toughTown, int gold)
+    {
+        BrawlRules rules = mode.getBrawlRules();
+        double brawl = brawlChance(mode, toughTown);
+        double win = winChance(mode, toughTown);
+        int winCount = rules.getWinGoldMax() - rules.getWinGoldMin() + 1;
+        int lossCount = rules.getLossGoldMax() - rules.getLossGoldMin() + 1;
+
+        // a loss costs at most the gold the hunter has
+        int min = -Math.min(rules.getLossGoldMax(), gold);
+        double[] chances = new double[rules.getWinGoldMax() - min + 1];
+        chances[-min] = 1 - brawl;
+        for (int amount = rules.getWinGoldMin(); amount <= rules.getWinGoldMax(); amount++)
+        {
+            chances[amount - min] += brawl * win / winCount;
+        }
+        for (int amount = rules.getLossGoldMin(); amount <= rules.getLossGoldMax(); amount++)
+        {
+            chances[-Math.min(amount, gold) - min] += brawl * (1 - win) / lossCount;
+        }
+        return new Distribution(min, chances);
+    }
+
+    /**
+     * @param mode The game mode.
+     * @param toughTown true for a tough town.
+     * @param gold The hunter's gold beforehand.
+     * @return The expected change in gold from looking for trouble once.
+     */
+    public static double expectedGoldChange(GameMode mode, boolean toughTown, int gold)
+    {
+        BrawlRules rules = mode.getBrawlRules();
+        double brawl = brawlChance(mode, toughTown);
+        double win = winChance(mode, toughTown);
+        double won = (rules.getWinGoldMin() + rules.getWinGoldMax()) / 2.0;
+        double lost = 0;
+        for (int amount = rules.getLossGoldMin(); amount <= rules.getLossGoldMax(); amount++)
+        {
+            lost += Math.min(amount, gold);
+        }
+        lost /= rules.getLossGoldMax() - rules.getLossGoldMin() + 1;
+        return brawl * (win * won - (1 - win) * lost);
+    }
+
+    /**
+     * @param mode The game mode.
+     * @param toughTown true for a tough town.
+     * @param gold The hunter's gold beforehand.
+     * @return The chance that looking for trouble once ends the game, by losing every last piece of gold.
+     */
+    public static double gameOverChance(GameMode mode, boolean toughTown, int gold)
+    {
+        BrawlRules rules = mode.getBrawlRules();
+        int lossCount = rules.getLossGoldMax() - rules.getLossGoldMin() + 1;
+        int ruinous = rules.getLossGoldMax() - Math.max(gold, rules.getLossGoldMin()) + 1;
+        ruinous = Math.max(0, Math.min(ruinous, lossCount));
+        return brawlChance(mode, toughTown) * (1 - winChance(mode, toughTown)) * ruinous / lossCount;
+    }
+
+    /**
+     * @param crossings The number of times an item is used to cross terrain.
+     * @return The chance that it breaks on one of those crossings.
+     */
+    public static double itemBreakChance(int crossings)
+    {
+        return 1 - Math.pow(1 - Town.ITEM_BREAK_CHANCE, crossings);
+    }
+
+    /**
+     * @param crossings The number of crossings.
+     * @return The distribution of the crossing on which the item breaks, from 1 to crossings; the rest of
+     *         the chance, that it survives them all, is left out.
+     */
+    public static Distribution itemBreakCrossing(int crossings)
+    {
+        double[] chances = new double[Math.max(crossings, 0)];
+        double survives = 1;
+        for (int i = 0; i < chances.length; i++)
+        {
+            chances[i] = survives * Town.ITEM_BREAK_CHANCE;
+            survives *= 1 - Town.ITEM_BREAK_CHANCE;
+        }
+        return new Distribution(1, chances);
+    }
+
+    // samples the real Town.lookForTrouble and compares it with the exact answers, allowing 5 standard errors
+    private static boolean check(GameMode mode, boolean tough, int gold, int trials)
+    {
+        Town town = new Town(mode.createShop(), tough ? 1 : 0, mode, new GameRandom(7), new GameRandom(gold * 31L + 1));
+        Hunter hunter = new Hunter("Check", gold);
+        town.hunterArrives(hunter);
+
+        Distribution exact = brawlGoldChange(mode, tough, gold);
+        long[] counts = new long[exact.getMax() - exact.getMin() + 1];
+        long gameOvers = 0;
+        for (int trial = 0; trial < trials; trial++)
+        {
+            hunter.changeGold(gold - hunter.getGold());
+            boolean lostBefore = hunter.hasLostGame();
+            town.lookForTrouble();
+            counts[hunter.getGold() - gold - exact.getMin()]++;
+            if (hunter.getGold() == 0 && town.getLatestNews().contains("lost the brawl"))
+            {
+                gameOvers++;
+            }
+            if (hunter.hasLostGame() && !lostBefore)
+            {
+                hunter = new Hunter("Check", gold);
+                town.hunterReturns(hunter);
+            }
+        }
+
+        double mean = 0;
+        double worstGap = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            double sampled = (double) counts[i] / trials;
+            double expected = exact.chanceOf(exact.getMin() + i);
+            double error = Math.sqrt(expected * (1 - expected) / trials);
+            worstGap = Math.max(worstGap, Math.abs(sampled - expected) - 5 * error);
+            mean += sampled * (exact.getMin() + i);
+        }
+        double overExpected = gameOverChance(mode, tough, gold);
+        double overSampled = (double) gameOvers / trials;
+        worstGap = Math.max(worstGap, Math.abs(overSampled - overExpected) - 5 * Math.sqrt(overExpected * (1 - overExpected) / trials));
+
+        boolean agreed = worstGap <= 0 && Math.abs(exact.getMean() - expectedGoldChange(mode, tough, gold)) < 1e-9;
+        System.out.printf("%-6s %-6s gold %3d: mean %+8.4f (sampled %+8.4f), game over %.4f (sampled %.4f) %s%n",
+                mode.getName(), tough ? "tough" : "mild", gold, exact.getMean(), mean, overExpected, overSampled,
+                agreed ? "ok" : "MISMATCH " + Arrays.toString(counts));
+        return agreed;
+    }
+}
@@ -0,0 +1,13 @@
+/**
+ * A PlayerStrategy decides what a computer-controlled hunter does in the headless simulation.<p>
+ * Strategies are shared by every game running on every thread, so they must not keep per-game state.
+ */
+public interface PlayerStrategy
+{
+    /**
+     * Takes exactly one action (buy, sell, move, look for trouble, hunt or quit) in the given game.
+     *
+     * @param session The game being played.
+     */
+    void playTurn(GameSession session);
+}
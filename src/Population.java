@@ -0,0 +1,391 @@
+/**
+ * The Population class steps millions of hunters at once, for studies of the game's economy.<p>
+ * A GameSession is a graph of objects (Hunter, World, Town, Shop, news Strings) per game. Here every
+ * hunter is a row across a few primitive arrays instead: gold in an int[], the kit as a bitmask in a
+ * long[] (the same bits as Hunter's, by Items id), the treasure total and status in byte[]s, and
+ * the town they are in packed into one byte. Each hunter also has its own SplitMix64 state in a long[],
+ * so a run gives the same results whatever the number of threads.<p>
+ * Every tick, each hunter still playing takes one turn the way CautiousStrategy does, by the same rules
+ * as Town.huntForTreasure, Town.leaveTown, Shop.buy and Town.lookForTrouble, in the same order of
+ * random draws. The hunters are split into slices that are stepped in parallel, and each slice adds up
+ * its own statistics for the tick, which are then combined.<p>
+ * Run it with: java Population [hunters] [ticks] [mode]
+ */
+import java.util.stream.IntStream;
+
+public class Population
+{
+    // what is counted each tick; see Tick
+    public static final int PLAYING = 0;
+    public static final int WON = 1;
+    public static final int LOST = 2;
+    public static final int GOLD = 3;
+    public static final int HUNTS = 4;
+    public static final int TREASURES = 5;
+    public static final int CROSSINGS = 6;
+    public static final int BREAKS = 7;
+    public static final int PURCHASES = 8;
+    public static final int BRAWLS = 9;
+    public static final int BRAWLS_WON = 10;
+    public static final int STAT_COUNT = 11;
+
+    private static final String[] STAT_NAMES = {"playing", "won", "lost", "gold", "hunts", "treasures",
+            "crossings", "breaks", "purchases", "brawls", "brawlsWon"};
+
+    // hunter status
+    private static final byte STATUS_PLAYING = 0;
+    private static final byte STATUS_WON = 1;
+    private static final byte STATUS_LOST = 2;
+
+    // the town byte: terrain id in bits 0-2, tough in bit 3, treasure (1-4) in bits 4-6, searched in bit 7
+    private static final int TERRAIN_MASK = 0x07;
+    private static final int TOUGH = 0x08;
+    private static final int TREASURE_SHIFT = 4;
+    private static final int SEARCHED = 0x80;
+    private static final int NOTHING = 4;
+    private static final int ALL_TREASURE = 6;
+
+    private static final long GAMMA = 0x9e3779b97f4a7c15L;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    // hunters per slice of work
+    private static final int SLICE = 16 * 1024;
+
+    //instance variables
+    private final GameMode mode;
+    private final int size;
+    private final int[] gold;
+    private final long[] kit;
+    private final byte[] hunted;
+    private final byte[] town;
+    private final byte[] status;
+    private final long[] random;
+    private final long[] totals = new long[STAT_COUNT];
+
+    // the mode's rules, unpacked once
+    private final int[] neededItem = new int[Terrain.count()];
+    private final int[] buyPrice = new int[Items.SHOP_ITEM_COUNT];
+    private final int[] checkPrice = new int[Items.SHOP_ITEM_COUNT];
+    private final double toughness;
+    private final double[] noTroubleChance = new double[2];
+    private final int winMin;
+    private final int winRange;
+    private final int lossMin;
+    private final int lossRange;
+    private final boolean separateLossRoll;
+    private final boolean alwaysWin;
+    private int ticks;
+
+    /**
+     * The statistics for one tick. Counts of events are for that tick; PLAYING, WON, LOST and GOLD are
+     * totals at the end of it.
+     */
+    public static class Tick
+    {
+        private final int number;
+        private final long[] stats;
+
+        Tick(int number, long[] stats)
+        {
+            this.number = number;
+            this.stats = stats;
+        }
+
+        public int getNumber()
+        {
+            return number;
+        }
+
+        public long get(int stat)
+        {
+            return stats[stat];
+        }
+
+        public double getMeanGold()
+        {
+            return stats[PLAYING] == 0 ? 0 : (double) stats[GOLD] / stats[PLAYING];
+        }
+
+        public String toString()
+        {
+            StringBuilder line = new StringBuilder("tick " + number + ":");
+            for (int stat = 0; stat < STAT_COUNT; stat++)
+            {
+                line.append(' ').append(STAT_NAMES[stat]).append('=').append(stats[stat]);
+            }
+            return line.append(String.format(" meanGold=%.2f", getMeanGold())).toString();
+        }
+    }
+
+    //Constructor
+    /**
+     * Starts a population of new hunters, each in their own first town.
+     *
+     * @param mode The difficulty mode everyone plays.
+     * @param size The number of hunters.
+     * @param seed The seed every hunter's generator is derived from.
+     */
+    public Population(GameMode mode, int size, long seed)
+    {
+        this.mode = mode;
+        this.size = size;
+        gold = new int[size];
+        kit = new long[size];
+        hunted = new byte[size];
+        town = new byte[size];
+        status = new byte[size];
+        random = new long[size];
+
+        PriceTable prices = mode.createShop().getPriceTable();
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            buyPrice[itemId] = mode.isCheatMode() ? prices.getCheatPrice(itemId) : prices.getBuyPrice(itemId);
+            checkPrice[itemId] = prices.getBuyPrice(itemId);
+        }
+        for (int terrain = 0; terrain < neededItem.length; terrain++)
+        {
+            neededItem[terrain] = Terrain.byId(terrain).getNeededItemId();
+        }
+        BrawlRules rules = mode.getBrawlRules();
+        toughness = mode.getToughness();
+        noTroubleChance[0] = rules.getNoTroubleChance(false);
+        noTroubleChance[1] = rules.getNoTroubleChance(true);
+        winMin = rules.getWinGoldMin();
+        winRange = rules.getWinGoldMax() - winMin + 1;
+        lossMin = rules.getLossGoldMin();
+        lossRange = rules.getLossGoldMax() - lossMin + 1;
+        separateLossRoll = rules.hasSeparateLossRoll();
+        alwaysWin = rules.isAlwaysWin();
+
+        int startingGold = mode.getStartingGold();
+        for (int i = 0; i < size; i++)
+        {
+            gold[i] = startingGold;
+            random[i] = GameRandom.mix64(seed + i * GAMMA);
+            town[i] = newTown(i);
+        }
+        totals[PLAYING] = size;
+        totals[GOLD] = (long) startingGold * size;
+    }
+
+    public static void main(String[] args)
+    {
+        int hunters = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int ticks = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        GameMode mode = args.length > 2 ? GameMode.fromName(args[2]) : GameMode.NORMAL;
+        if (mode == null)
+        {
+            System.out.println("Unknown mode: " + args[2]);
+            return;
+        }
+
+        Population population = new Population(mode, hunters, 42);
+        long start = System.nanoTime();
+        long turns = 0;
+        for (int tick = 0; tick < ticks && population.getPlaying() > 0; tick++)
+        {
+            turns += population.getPlaying();
+            System.out.println(population.tick());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d hunters, %,d turns in %.2f s (%,.0f turns/s), win rate %.2f%%%n", hunters, turns, seconds,
+                turns / seconds, 100.0 * population.totals[WON] / hunters);
+    }
+
+    //Accessors
+    public GameMode getMode()
+    {
+        return mode;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int getTicks()
+    {
+        return ticks;
+    }
+
+    public long getPlaying()
+    {
+        return totals[PLAYING];
+    }
+
+    public int getGold(int hunter)
+    {
+        return gold[hunter];
+    }
+
+    public long getKit(int hunter)
+    {
+        return kit[hunter];
+    }
+
+    public int getHuntedItemTotal(int hunter)
+    {
+        return hunted[hunter];
+    }
+
+    public boolean hasWon(int hunter)
+    {
+        return status[hunter] == STATUS_WON;
+    }
+
+    public boolean hasLost(int hunter)
+    {
+        return status[hunter] == STATUS_LOST;
+    }
+
+    /**
+     * Gives every hunter still playing one turn.
+     *
+     * @return The statistics for the tick.
+     */
+    public Tick tick()
+    {
+        int slices = (size + SLICE - 1) / SLICE;
+        long[] stats = IntStream.range(0, slices).parallel()
+                .mapToObj(slice -> stepSlice(slice * SLICE, Math.min(size, (slice + 1) * SLICE)))
+                .reduce(new long[STAT_COUNT], Population::add);
+
+        totals[WON] += stats[WON];
+        totals[LOST] += stats[LOST];
+        totals[PLAYING] = size - totals[WON] - totals[LOST];
+        totals[GOLD] = stats[GOLD];
+        stats[PLAYING] = totals[PLAYING];
+        stats[WON] = totals[WON];
+        stats[LOST] = totals[LOST];
+        ticks++;
+        return new Tick(ticks, stats);
+    }
+
+    private static long[] add(long[] a, long[] b)
+    {
+        long[] sum = new long[STAT_COUNT];
+        for (int stat = 0; stat < STAT_COUNT; stat++)
+        {
+            sum[stat] = a[stat] + b[stat];
+        }
+        return sum;
+    }
+
+    // one turn for hunters first (inclusive) to last (exclusive); WON and LOST count this tick's new ones
+    private long[] stepSlice(int first, int last)
+    {
+        long[] stats = new long[STAT_COUNT];
+        for (int i = first; i < last; i++)
+        {
+            if (status[i] != STATUS_PLAYING)
+            {
+                continue;
+            }
+            int place = town[i] & 0xff;
+            int terrain = place & TERRAIN_MASK;
+            int needed = neededItem[terrain];
+            long neededBit = 1L << needed;
+
+            if ((place & SEARCHED) == 0 && gold[i] > 0)
+            {
+                huntForTreasure(i, place, stats);
+            }
+            else if ((kit[i] & neededBit) != 0)
+            {
+                // Town.leaveTown, then a new town
+                stats[CROSSINGS]++;
+                if (nextDouble(i) < Town.ITEM_BREAK_CHANCE)
+                {
+                    kit[i] &= ~neededBit;
+                    stats[BREAKS]++;
+                }
+                town[i] = newTown(i);
+            }
+            else if (gold[i] >= checkPrice[needed])
+            {
+                // Shop.buy; Hunter.buyItem turns down free items
+                int cost = buyPrice[needed];
+                if (cost > 0 && gold[i] >= cost)
+                {
+                    gold[i] -= cost;
+                    kit[i] |= neededBit;
+                    stats[PURCHASES]++;
+                }
+            }
+            else
+            {
+                lookForTrouble(i, (place & TOUGH) != 0 ? 1 : 0, stats);
+            }
+            stats[GOLD] += status[i] == STATUS_PLAYING ? gold[i] : 0;
+        }
+        return stats;
+    }
+
+    // Town.huntForTreasure; the gold check stands in for Hunter.buyItem(treasure, 1)
+    private void huntForTreasure(int i, int place, long[] stats)
+    {
+        stats[HUNTS]++;
+        town[i] = (byte) (place | SEARCHED);
+        int treasure = (place >>> TREASURE_SHIFT) & 0x07;
+        if (treasure == NOTHING)
+        {
+            return;
+        }
+        long bit = 1L << (Items.BANANA + treasure - 1);
+        if ((kit[i] & bit) == 0)
+        {
+            kit[i] |= bit;
+            hunted[i] += treasure;
+            stats[TREASURES]++;
+            if (hunted[i] == ALL_TREASURE)
+            {
+                status[i] = STATUS_WON;
+                stats[WON]++;
+            }
+        }
+    }
+
+    // Town.lookForTrouble, drawing the same numbers in the same order
+    private void lookForTrouble(int i, int tough, long[] stats)
+    {
+        double chance = noTroubleChance[tough];
+        if (nextDouble(i) > chance)
+        {
+            return;
+        }
+        stats[BRAWLS]++;
+        int amount = (int) (nextDouble(i) * winRange) + winMin;
+        if (nextDouble(i) > chance || alwaysWin)
+        {
+            gold[i] += amount;
+            stats[BRAWLS_WON]++;
+            return;
+        }
+        if (separateLossRoll)
+        {
+            amount = (int) (nextDouble(i) * lossRange) + lossMin;
+        }
+        gold[i] = Math.max(0, gold[i] - amount);
+        if (gold[i] == 0)
+        {
+            status[i] = STATUS_LOST;
+            stats[LOST]++;
+        }
+    }
+
+    // draws a town's layout in the same order as the Town constructor: terrain, treasure, toughness
+    private byte newTown(int i)
+    {
+        int terrain = Town.terrainFor(nextDouble(i)).getId();
+        int treasure = (int) (nextDouble(i) * 4) + 1;
+        int tough = nextDouble(i) < toughness ? TOUGH : 0;
+        return (byte) (terrain | tough | treasure << TREASURE_SHIFT);
+    }
+
+    private double nextDouble(int i)
+    {
+        long seed = random[i] + GAMMA;
+        random[i] = seed;
+        return (GameRandom.mix64(seed) >>> 11) * DOUBLE_UNIT;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * The PriceTable class holds every price a shop can quote, worked out once when the shop is built.<p>
+ * Prices are kept in a matrix with one row per kind of price (normal buy price, easy buy price,
+ * buy-back price with the markdown applied, and cheat price) and one column per item id from the
+ * Items registry, so looking up a price is a single array read. Items that aren't sold in the shop
+ * cost 0, just like the old if-chains returned. The table never changes after it is built, so
+ * one table can be shared by every shop with the same settings and read from any thread.
+ */
+public class PriceTable
+{
+    // rows of the price matrix
+    private static final int NORMAL_BUY = 0;
+    private static final int EASY_BUY = 1;
+    private static final int BUY_BACK = 2;
+    private static final int CHEAT = 3;
+    private static final int ROWS = 4;
+
+    //instance variables
+    private final int[] prices;
+    private final boolean cheatMode;
+    private final boolean easyMode;
+    private final String inventory;
+
+    //Constructor
+    /**
+     * @param costs The normal price of each item, indexed by item id.
+     * @param easyCosts The easy mode price of each item, indexed by item id.
+     * @param markdown The fraction of the price the shop pays when buying an item back.
+     * @param cheatMode true if everything costs 1 gold.
+     * @param easyMode true if the shop charges the easy mode prices.
+     */
+    public PriceTable(int[] costs, int[] easyCosts, double markdown, boolean cheatMode, boolean easyMode)
+    {
+        this.cheatMode = cheatMode;
+        this.easyMode = easyMode;
+        prices = new int[ROWS * Items.COUNT];
+        for (int itemId = 0; itemId < Items.COUNT; itemId++)
+        {
+            int ownCost = easyMode ? easyCosts[itemId] : costs[itemId];
+            prices[NORMAL_BUY * Items.COUNT + itemId] = costs[itemId];
+            prices[EASY_BUY * Items.COUNT + itemId] = easyCosts[itemId];
+            prices[BUY_BACK * Items.COUNT + itemId] = (int) (ownCost * markdown);
+            prices[CHEAT * Items.COUNT + itemId] = costs[itemId] == 0 ? 0 : 1;
+        }
+        inventory = renderInventory(null, null, 0);
+    }
+
+    /**
+     * @param itemId An item id, or Items.NONE.
+     * @param easyMode true for the easy mode price.
+     * @return The price of buying the item, or 0 if the shop doesn't sell it.
+     */
+    public int getBuyPrice(int itemId, boolean easyMode)
+    {
+        if (itemId < 0)
+        {
+            return 0;
+        }
+        return prices[(easyMode ? EASY_BUY : NORMAL_BUY) * Items.COUNT + itemId];
+    }
+
+    /**
+     * @param itemId An item id, or Items.NONE.
+     * @return The price of buying the item at this shop's own prices, or 0 if the shop doesn't sell it.
+     */
+    public int getBuyPrice(int itemId)
+    {
+        return getBuyPrice(itemId, easyMode);
+    }
+
+    /**
+     * @param itemId An item id, or Items.NONE.
+     * @return The gold the shop pays for the item, or 0 if it doesn't want it.
+     */
+    public int getBuyBackPrice(int itemId)
+    {
+        if (itemId < 0)
+        {
+            return 0;
+        }
+        return prices[BUY_BACK * Items.COUNT + itemId];
+    }
+
+    /**
+     * @param itemId An item id, or Items.NONE.
+     * @return The price of the item in cheat mode, or 0 if the shop doesn't sell it.
+     */
+    public int getCheatPrice(int itemId)
+    {
+        if (itemId < 0)
+        {
+            return 0;
+        }
+        return prices[CHEAT * Items.COUNT + itemId];
+    }
+
+    /**
+     * @return The list of items for sale and their prices, as shown when entering the shop.
+     */
+    public String getInventory()
+    {
+        return inventory;
+    }
+
+    /**
+     * @param stock What a shop has left, or null if it never runs out.
+     * @param market The market that sets the shop's prices, or null if they are fixed.
+     * @param town The number of the shop's town on the market.
+     * @return The list of items for sale and their prices today, with how many of each are left.
+     */
+    public String getInventory(ShopStock stock, Market market, int town)
+    {
+        return stock == null && market == null ? inventory : renderInventory(stock, market, town);
+    }
+
+    private String renderInventory(ShopStock stock, Market market, int town)
+    {
+        StringBuilder str = new StringBuilder();
+        for (int itemId = 0; itemId < Items.COUNT; itemId++)
+        {
+            if (!Items.isShopItem(itemId))
+            {
+                continue;
+            }
+            int price;
+            if (cheatMode)
+            {
+                price = getCheatPrice(itemId);
+            }
+            else if (market != null)
+            {
+                price = market.getPrice(town, itemId, getBuyPrice(itemId));
+            }
+            else
+            {
+                price = getBuyPrice(itemId);
+            }
+            str.append(Items.displayNameOf(itemId)).append(": ").append(price).append(" gold");
+            if (stock != null)
+            {
+                str.append(" (").append(stock.getCount(itemId)).append(" left)");
+            }
+            str.append('\n');
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ * The Restocker class refills the shops of every live town in the background.<p>
+ * Shops register their stock when they are built. A scheduled task then takes the next batch of shops
+ * round-robin and tops up each item by a delivery, up to the shop's capacity, so a world with a great many
+ * towns is refilled a batch at a time instead of in one long pass. Each top-up is a compare-and-set on the
+ * item's counter, so it never blocks a buyer. The registry only holds weak references, so a town that is
+ * no longer in use is dropped the next time its turn comes round.<p>
+ * Shops with a stock from -Dtreasurehunter.stock are refilled by the shared restocker, which delivers one
+ * of each item every -Dtreasurehunter.restockMillis milliseconds (1000 by default).
+ */
+import java.lang.ref.WeakReference;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class Restocker implements AutoCloseable
+{
+    // the most shops the shared restocker refills each time it runs
+    private static final int SHARED_BATCH_SIZE = 4096;
+
+    //instance variables
+    private final Queue<WeakReference<ShopStock>> shops = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger shopCount = new AtomicInteger();
+    private final int delivery;
+    private final int batchSize;
+    private final AtomicLong delivered = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+
+    private static class Shared
+    {
+        static final Restocker INSTANCE = new Restocker(Long.getLong("treasurehunter.restockMillis", 1000), 1,
+                SHARED_BATCH_SIZE);
+    }
+
+    //Constructor
+    /**
+     * Starts a restocker.
+     *
+     * @param periodMillis How often a batch of shops is refilled, or 0 to only refill when restockBatch() is called.
+     * @param delivery The most of each item a shop is given each time.
+     * @param batchSize The most shops refilled each time.
+     */
+    public Restocker(long periodMillis, int delivery, int batchSize)
+    {
+        this.delivery = delivery;
+        this.batchSize = batchSize;
+        if (periodMillis > 0)
+        {
+            scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "restocker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleAtFixedRate(this::restockBatch, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+        else
+        {
+            scheduler = null;
+        }
+    }
+
+    /**
+     * @return The restocker for shops given a stock by -Dtreasurehunter.stock, started the first time it is used.
+     */
+    public static Restocker shared()
+    {
+        return Shared.INSTANCE;
+    }
+
+    //Accessors
+    /**
+     * @return The number of registered shops, including any that have not been dropped yet.
+     */
+    public int getShopCount()
+    {
+        return shopCount.get();
+    }
+
+    /**
+     * @return The number of items delivered since the restocker started.
+     */
+    public long getDelivered()
+    {
+        return delivered.get();
+    }
+
+    /**
+     * Adds a shop's stock to the ones that get refilled.
+     *
+     * @return The stock, for chaining.
+     */
+    public ShopStock register(ShopStock stock)
+    {
+        shops.add(new WeakReference<>(stock));
+        shopCount.incrementAndGet();
+        return stock;
+    }
+
+    /**
+     * Refills the next batch of shops, and drops any that are no longer in use.
+     *
+     * @return The number of items delivered.
+     */
+    public int restockBatch()
+    {
+        int added = 0;
+        int count = Math.min(batchSize, shopCount.get());
+        for (int i = 0; i < count; i++)
+        {
+            WeakReference<ShopStock> shop = shops.poll();
+            if (shop == null)
+            {
+                break;
+            }
+            ShopStock stock = shop.get();
+            if (stock != null)
+            {
+                added += stock.restock(delivery);
+                shops.add(shop);
+            }
+            else
+            {
+                shopCount.decrementAndGet();
+            }
+        }
+        delivered.addAndGet(added);
+        return added;
+    }
+
+    /**
+     * Stops refilling shops, waiting for a batch that has already started to finish.
+     */
+    public void close()
+    {
+        if (scheduler != null)
+        {
+            scheduler.shutdown();
+            try
+            {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/**
+ * The ScreenCheck class checks that ScreenIO draws every frame correctly while sending less.<p>
+ * A seeded game is played from a script through an ANSI ScreenIO whose output goes into a small terminal
+ * emulator: cursor movement, erasing and scrolling, and the echo of each answer the player types. Every
+ * time the game asks a question, the emulated screen must show what ScreenIO thinks it does, and the frame
+ * the game printed must end on the row the cursor is on, so a line that should have been redrawn and
+ * wasn't, an answer left on screen, or a frame drawn in the wrong place is caught. The same game is then
+ * played through the plain fallback, whose output must be exactly what GameIO sends, and the number of
+ * characters each one sent is printed. ANSI sending more than the plain fallback is a failure too. Any
+ * failure exits with status 1.<p>
+ * Two players are watched: one who goes through the menus, and one who types actions straight in.<p>
+ * Run it with: java ScreenCheck [seed] [rounds]
+ */
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class ScreenCheck
+{
+    // a player who goes through the shop and action menus, so the screen keeps changing
+    private static final String[] MENUS = {"s", "b", "water", "y", "a", "l", "x", "s", "s", "water", "y",
+            "r", "a", "h", "m", "b", "rope", "n", "a", "g"};
+    // a player who types the actions straight in at the main menu, so it is drawn over itself
+    private static final String[] SHORTCUTS = {"l", "h", "b", "water", "y", "x", "m", "g", "l", "b", "rope", "n",
+            "h", "m"};
+
+    /**
+     * Just enough of a terminal to follow what ScreenIO sends.
+     */
+    static class Terminal extends OutputStream
+    {
+        final char[][] screen;
+        int row;
+        int column;
+        private final StringBuilder escape = new StringBuilder();
+        private boolean inEscape;
+
+        Terminal(int rows, int columns)
+        {
+            screen = new char[rows][columns];
+            clear(0, 0);
+        }
+
+        public void write(int b)
+        {
+            char c = (char) b;
+            if (inEscape)
+            {
+                if (c == '[' && escape.length() == 0)
+                {
+                    escape.append(c);
+                }
+                else if (Character.isLetter(c))
+                {
+                    command(escape.substring(1), c);
+                    escape.setLength(0);
+                    inEscape = false;
+                }
+                else
+                {
+                    escape.append(c);
+                }
+            }
+            else if (c == '\033')
+            {
+                inEscape = true;
+            }
+            else if (c == '\n')
+            {
+                newLine();
+            }
+            else if (c != '\r')
+            {
+                screen[row][column++] = c;
+            }
+        }
+
+        // what the player's terminal shows as they type an answer and press enter
+        void type(String answer)
+        {
+            for (int i = 0; i < answer.length(); i++)
+            {
+                screen[row][column++] = answer.charAt(i);
+            }
+            newLine();
+        }
+
+        String text()
+        {
+            StringBuilder text = new StringBuilder();
+            for (char[] line : screen)
+            {
+                text.append(new String(line).replaceAll(" +$", "")).append('\n');
+            }
+            return text.toString().replaceAll("\n+$", "\n");
+        }
+
+        private void command(String parameters, char command)
+        {
+            if (command == 'H')
+            {
+                String[] position = parameters.isEmpty() ? new String[] {"1", "1"} : parameters.split(";");
+                row = Integer.parseInt(position[0]) - 1;
+                column = Integer.parseInt(position[1]) - 1;
+            }
+            else if (command == 'J')
+            {
+                clear(parameters.equals("2") ? 0 : row, parameters.equals("2") ? 0 : column);
+            }
+            else if (command == 'K')
+            {
+                Arrays.fill(screen[row], column, screen[row].length, ' ');
+            }
+        }
+
+        private void clear(int fromRow, int fromColumn)
+        {
+            Arrays.fill(screen[fromRow], fromColumn, screen[fromRow].length, ' ');
+            for (int r = fromRow + 1; r < screen.length; r++)
+            {
+                Arrays.fill(screen[r], ' ');
+            }
+        }
+
+        private void newLine()
+        {
+            column = 0;
+            row++;
+            if (row == screen.length)
+            {
+                System.arraycopy(screen, 1, screen, 0, screen.length - 1);
+                screen[screen.length - 1] = new char[screen[0].length];
+                Arrays.fill(screen[screen.length - 1], ' ');
+                row--;
+            }
+        }
+    }
+
+    public static void main(String[] args)
+    {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 42;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        boolean passed = check("menus", MENUS, seed, rounds);
+        passed &= check("shortcuts", SHORTCUTS, seed, rounds);
+        System.out.println(passed ? "Every frame drawn correctly" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // plays the same game through GameIO, the plain fallback and ANSI, watching every ANSI frame
+    private static boolean check(String name, String[] round, long seed, int rounds)
+    {
+        StringBuilder script = new StringBuilder("Tester\nn\n");
+        for (int i = 0; i < rounds; i++)
+        {
+            for (String answer : round)
+            {
+                script.append(answer).append('\n');
+            }
+        }
+        script.append("e\n");
+        byte[] input = script.toString().getBytes(StandardCharsets.UTF_8);
+
+        Terminal terminal = new Terminal(ScreenIO.DEFAULT_ROWS, 200);
+        int[] frames = new int[1];
+        String[] problem = new String[1];
+        // what the game has printed since the last frame went out
+        StringBuilder frame = new StringBuilder();
+        ScreenIO ansi = new ScreenIO(new ByteArrayInputStream(input), terminal, StandardCharsets.UTF_8, true,
+                ScreenIO.DEFAULT_ROWS)
+        {
+            public String readLine()
+            {
+                String answer = super.readLine();
+                String expected = getScreen().replaceAll(" +\n", "\n").replaceAll("\n+$", "\n");
+                if (problem[0] == null && !getScreen().isEmpty() && !terminal.text().equals(expected))
+                {
+                    problem[0] = "Frame " + frames[0] + " should be:\n" + expected + "but the screen shows:\n" + terminal.text();
+                }
+                if (problem[0] == null && !endsAtCursor(terminal, frame.toString()))
+                {
+                    problem[0] = "Frame " + frames[0] + " doesn't end where the cursor is:\n" + frame + "\nbut the screen shows:\n"
+                            + terminal.text();
+                }
+                frame.setLength(0);
+                frames[0]++;
+                terminal.type(answer);
+                return answer;
+            }
+
+            public void print(String str)
+            {
+                frame.append(str);
+                super.print(str);
+            }
+
+            public void println(String str)
+            {
+                frame.append(str).append('\n');
+                super.println(str);
+            }
+
+            public void println(Object obj)
+            {
+                frame.append(obj).append('\n');
+                super.println(obj);
+            }
+
+            public void println()
+            {
+                frame.append('\n');
+                super.println();
+            }
+
+            public void flush()
+            {
+                super.flush();
+                frame.setLength(0);
+            }
+        };
+        new TreasureHunter(new GameRandom(seed), ansi).play();
+
+        ByteArrayOutputStream plainOut = new ByteArrayOutputStream();
+        ScreenIO plain = new ScreenIO(new ByteArrayInputStream(input), plainOut, false);
+        new TreasureHunter(new GameRandom(seed), plain).play();
+        ByteArrayOutputStream gameOut = new ByteArrayOutputStream();
+        new TreasureHunter(new GameRandom(seed), new GameIO(new ByteArrayInputStream(input), gameOut)).play();
+        if (problem[0] == null && !Arrays.equals(plainOut.toByteArray(), gameOut.toByteArray()))
+        {
+            problem[0] = "The plain fallback doesn't match GameIO";
+        }
+        if (problem[0] == null && ansi.getCharsSent() > plain.getCharsSent())
+        {
+            problem[0] = "ANSI sent more than the plain fallback";
+        }
+
+        System.out.printf("%-9s %4d frames: GameIO sent %,7d chars, plain %,7d, ANSI %,7d (%3.0f%% of GameIO)%n", name,
+                frames[0], gameOut.size(), plain.getCharsSent(), ansi.getCharsSent(),
+                100.0 * ansi.getCharsSent() / gameOut.size());
+        if (problem[0] != null)
+        {
+            System.out.println(problem[0]);
+        }
+        return problem[0] == null;
+    }
+
+    // whether the frame's lines are the rows of the screen down to the cursor's, the question on the cursor's row
+    private static boolean endsAtCursor(Terminal terminal, String frame)
+    {
+        if (frame.isEmpty())
+        {
+            return true;
+        }
+        String[] lines = frame.split("\n", -1);
+        if (lines.length > terminal.row + 1)
+        {
+            return false;
+        }
+        int top = terminal.row + 1 - lines.length;
+        for (int i = 0; i < lines.length; i++)
+        {
+            String shown = new String(terminal.screen[top + i]).replaceAll(" +$", "");
+            if (!shown.equals(lines[i].replaceAll(" +$", "")))
+            {
+                return false;
+            }
+        }
+        return terminal.column == lines[lines.length - 1].length();
+    }
+}
@@ -0,0 +1,463 @@
+/**
+ * The ScreenIO class is a GameIO that draws the game as screens instead of scrolling it past.<p>
+ * Everything the game prints between two questions is one frame. The frame is built up line by line in
+ * a buffer that is reused from frame to frame, and what is on each row of the screen is kept, including
+ * the answers the player's terminal echoes and the scrolling their enter key causes. When the game asks
+ * its next question, the frame goes out whichever of two ways sends less:
+ * <ul>
+ * <li>appended below what is on screen, scrolling it up if need be, which sends exactly what GameIO
+ * would; a sub-menu goes out this way, below the main menu, which stays where it is;</li>
+ * <li>redrawn at the bottom of the screen with the question on the last row but one, sending only the
+ * rows that differ from what is already there, each one addressed with ANSI cursor movement and cleared
+ * to the end of the line. The main menu is printed again after every command, but the hunter and the
+ * town are usually the same, and since the menu always ends on the same row, most of it never leaves
+ * the buffer.</li>
+ * </ul>
+ * What was on the screen before the game started isn't known, so frames are only appended until the
+ * game's own lines have filled it; the screen is never cleared. So ANSI never sends more than the plain
+ * fallback. The whole frame goes out with a single flush.<p>
+ * A terminal that can't move the cursor gets the plain fallback, which sends every frame in full, exactly
+ * as GameIO would.<p>
+ * Play with it from the console with TreasureHunterRunner --screen auto, which picks ANSI for an
+ * interactive terminal whose TERM isn't "dumb", or from GameServer with --screen ansi.
+ */
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+public class ScreenIO extends GameIO
+{
+    public static final int DEFAULT_ROWS = 24;
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final String ESCAPE = "\033[";
+    private static final String ERASE_LINE = ESCAPE + "K";
+    private static final StringBuilder EMPTY = new StringBuilder();
+    private static final String NEW_LINE = System.lineSeparator();
+
+    //instance variables
+    private final boolean ansi;
+    private final int screenRows;
+    // the frame being built, and what is on each row of the screen
+    private StringBuilder[] lines = new StringBuilder[0];
+    private final StringBuilder[] shown;
+    // the row being printed to in the frame being built
+    private int row;
+    private boolean framePending;
+    // false until the game's own lines have filled the screen, and the line feeds sent until then
+    private boolean screenKnown;
+    private int linesFed;
+    private int cursorRow;
+    private int cursorColumn;
+    // the player's last answer, which their terminal has echoed after the question; null once it is on the screen
+    private String answer;
+    // where the cursor would be part way through planning a redraw
+    private int planRow;
+    private int planColumn;
+    private final StringBuilder output = new StringBuilder();
+    private final StringBuilder appended = new StringBuilder();
+    private final StringBuilder redrawn = new StringBuilder();
+    private char[] chars = new char[BUFFER_SIZE];
+    private long charsSent;
+    private long charsDrawn;
+
+    //Constructor
+    /**
+     * @param in Where the player's input comes from.
+     * @param out Where the game's output goes.
+     * @param charset The character encoding of both streams.
+     * @param ansi true to send only the lines that changed, false to send every frame in full.
+     * @param screenRows The height of the player's screen.
+     */
+    public ScreenIO(InputStream in, OutputStream out, Charset charset, boolean ansi, int screenRows)
+    {
+        super(in, out, charset, BUFFER_SIZE);
+        this.ansi = ansi;
+        this.screenRows = screenRows;
+        shown = new StringBuilder[screenRows];
+        for (int r = 0; r < screenRows; r++)
+        {
+            shown[r] = new StringBuilder();
+        }
+        ensureLine(0);
+    }
+
+    /**
+     * @param in Where the player's input comes from.
+     * @param out Where the game's output goes.
+     * @param ansi true to send only the lines that changed, false to send every frame in full.
+     */
+    public ScreenIO(InputStream in, OutputStream out, boolean ansi)
+    {
+        this(in, out, StandardCharsets.UTF_8, ansi, DEFAULT_ROWS);
+    }
+
+    /**
+     * @param mode "ansi", "plain", or "auto" to use ANSI if System.in and System.out are an interactive
+     * terminal that can move the cursor.
+     * @return A ScreenIO for System.in and System.out, with the screen height from $LINES.
+     */
+    public static ScreenIO forConsole(String mode)
+    {
+        String term = System.getenv("TERM");
+        boolean ansi = mode.equals("ansi") || (mode.equals("auto") && System.console() != null && term != null
+                && !term.isEmpty() && !term.equals("dumb"));
+        int rows = DEFAULT_ROWS;
+        String lines = System.getenv("LINES");
+        if (lines != null && lines.matches("[0-9]+"))
+        {
+            rows = Integer.parseInt(lines);
+        }
+        return new ScreenIO(System.in, System.out, Charset.defaultCharset(), ansi, rows);
+    }
+
+    //Accessors
+    /**
+     * @return true if only the lines that change are sent.
+     */
+    public boolean isAnsi()
+    {
+        return ansi;
+    }
+
+    /**
+     * @return The number of characters sent to the player, escape sequences included.
+     */
+    public long getCharsSent()
+    {
+        return charsSent;
+    }
+
+    /**
+     * @return The number of characters in every frame drawn, which is what GameIO would have sent.
+     */
+    public long getCharsDrawn()
+    {
+        return charsDrawn;
+    }
+
+    /**
+     * @return What the screen shows, one line per row, or "" if that isn't known, as in the plain fallback.
+     */
+    public String getScreen()
+    {
+        if (!ansi || !screenKnown)
+        {
+            return "";
+        }
+        StringBuilder screen = new StringBuilder();
+        for (StringBuilder line : shown)
+        {
+            screen.append(line).append('\n');
+        }
+        return screen.toString();
+    }
+
+    /**
+     * Shows the frame, then waits for the next line of input.
+     */
+    public String readLine()
+    {
+        render();
+        String line = super.readLine();
+        // put on the screen when the next frame is drawn, so until then getScreen() shows what was sent
+        answer = line;
+        return line;
+    }
+
+    public void print(String str)
+    {
+        append(str);
+    }
+
+    public void println(String str)
+    {
+        append(str);
+        newLine();
+    }
+
+    public void println(Object obj)
+    {
+        append(String.valueOf(obj));
+        newLine();
+    }
+
+    public void println()
+    {
+        newLine();
+    }
+
+    /**
+     * Shows whatever has been printed since the last frame, and flushes it.
+     */
+    public void flush()
+    {
+        render();
+        super.flush();
+    }
+
+    private void append(String str)
+    {
+        framePending = true;
+        for (int i = 0; i < str.length(); i++)
+        {
+            char c = str.charAt(i);
+            if (c == '\n')
+            {
+                newLine();
+            }
+            else if (c != '\r')
+            {
+                lines[row].append(c);
+            }
+        }
+    }
+
+    private void newLine()
+    {
+        framePending = true;
+        row++;
+        ensureLine(row);
+    }
+
+    private void ensureLine(int index)
+    {
+        if (index == lines.length)
+        {
+            StringBuilder[] grown = new StringBuilder[Math.max(8, lines.length * 2)];
+            System.arraycopy(lines, 0, grown, 0, lines.length);
+            for (int i = lines.length; i < grown.length; i++)
+            {
+                grown[i] = new StringBuilder();
+            }
+            lines = grown;
+        }
+        lines[index].setLength(0);
+    }
+
+    private void render()
+    {
+        if (!framePending)
+        {
+            return;
+        }
+        int rows = row + 1;
+        output.setLength(0);
+        if (!ansi)
+        {
+            appendFrame(rows);
+        }
+        else
+        {
+            echoAnswer();
+            planAppend(appended, rows);
+            // the question goes on the last row but one, so a frame that doesn't fit above it can't be redrawn
+            boolean fits = screenKnown && rows < screenRows - 1;
+            if (fits)
+            {
+                planRedraw(redrawn, rows);
+            }
+            if (!fits || appended.length() <= redrawn.length())
+            {
+                output.append(appended);
+                commitAppend(rows);
+                // every row now holds one of the game's lines, and the cursor is on the bottom one
+                screenKnown = linesFed >= screenRows;
+            }
+            else
+            {
+                output.append(redrawn);
+                commitRedraw(rows);
+            }
+        }
+        send();
+
+        for (int r = 0; r <= row; r++)
+        {
+            charsDrawn += lines[r].length();
+        }
+        charsDrawn += row * NEW_LINE.length();
+        row = 0;
+        ensureLine(0);
+        framePending = false;
+    }
+
+    // every line of the frame, as plain text
+    private void appendFrame(int rows)
+    {
+        for (int r = 0; r < rows; r++)
+        {
+            if (r > 0)
+            {
+                output.append(NEW_LINE);
+            }
+            output.append(lines[r]);
+        }
+    }
+
+    // the player's answer went after the question, and their enter key moved the cursor to the next row
+    private void echoAnswer()
+    {
+        if (answer == null)
+        {
+            return;
+        }
+        shown[cursorRow].setLength(cursorColumn);
+        shown[cursorRow].append(answer);
+        lineFeed();
+        answer = null;
+    }
+
+    // the frame written from the cursor on, a line at a time the way GameIO sends it, scrolling the screen
+    // up as it reaches the bottom; anything left on a row from before is erased
+    private void planAppend(StringBuilder out, int rows)
+    {
+        out.setLength(0);
+        int at = cursorRow;
+        int scrolled = 0;
+        for (int r = 0; r < rows; r++)
+        {
+            if (r > 0 || cursorColumn > 0)
+            {
+                out.append(NEW_LINE);
+                if (at == screenRows - 1)
+                {
+                    scrolled++;
+                }
+                else
+                {
+                    at++;
+                }
+            }
+            out.append(lines[r]);
+            int old = at + scrolled < screenRows ? shown[at + scrolled].length() : 0;
+            if (old > lines[r].length())
+            {
+                out.append(ERASE_LINE);
+            }
+        }
+    }
+
+    private void commitAppend(int rows)
+    {
+        for (int r = 0; r < rows; r++)
+        {
+            if (r > 0 || cursorColumn > 0)
+            {
+                lineFeed();
+            }
+            shown[cursorRow].setLength(0);
+            shown[cursorRow].append(lines[r]);
+            cursorColumn = lines[r].length();
+        }
+    }
+
+    // the frame drawn at the bottom of the screen, question on the last row but one, sending only the parts
+    // of rows that change; the cursor is left at the end of the question
+    private void planRedraw(StringBuilder out, int rows)
+    {
+        out.setLength(0);
+        planRow = cursorRow;
+        planColumn = cursorColumn;
+        int top = screenRows - 1 - rows;
+        for (int r = 0; r < screenRows; r++)
+        {
+            StringBuilder line = frameLine(r, top, rows);
+            StringBuilder old = shown[r];
+            int same = 0;
+            int length = Math.min(line.length(), old.length());
+            while (same < length && line.charAt(same) == old.charAt(same))
+            {
+                same++;
+            }
+            if (same == line.length() && same == old.length())
+            {
+                continue;
+            }
+            moveTo(out, r, same);
+            out.append(line, same, line.length());
+            planColumn = line.length();
+            if (old.length() > line.length())
+            {
+                out.append(ERASE_LINE);
+            }
+        }
+        moveTo(out, screenRows - 2, lines[row].length());
+    }
+
+    private void commitRedraw(int rows)
+    {
+        int top = screenRows - 1 - rows;
+        for (int r = 0; r < screenRows; r++)
+        {
+            shown[r].setLength(0);
+            shown[r].append(frameLine(r, top, rows));
+        }
+        cursorRow = screenRows - 2;
+        cursorColumn = lines[row].length();
+    }
+
+    // what a redrawn frame puts on a row of the screen
+    private StringBuilder frameLine(int r, int top, int rows)
+    {
+        return r < top || r >= top + rows ? EMPTY : lines[r - top];
+    }
+
+    // moves the planned cursor the shortest way the terminal can be trusted with
+    private void moveTo(StringBuilder out, int r, int column)
+    {
+        if (r == planRow && column == planColumn)
+        {
+            return;
+        }
+        if (column == 0 && r == planRow)
+        {
+            out.append('\r');
+        }
+        else if (column == 0 && r == planRow + 1)
+        {
+            // the same line ending GameIO sends, which the terminal already takes to mean the start of the next row
+            out.append(NEW_LINE);
+        }
+        else
+        {
+            out.append(ESCAPE).append(r + 1).append(';').append(column + 1).append('H');
+        }
+        planRow = r;
+        planColumn = column;
+    }
+
+    // moves the cursor to the start of the next row, scrolling the screen up at the bottom, as a line ending does
+    private void lineFeed()
+    {
+        if (cursorRow == screenRows - 1)
+        {
+            StringBuilder first = shown[0];
+            System.arraycopy(shown, 1, shown, 0, screenRows - 1);
+            first.setLength(0);
+            shown[screenRows - 1] = first;
+        }
+        else
+        {
+            cursorRow++;
+        }
+        cursorColumn = 0;
+        if (!screenKnown)
+        {
+            linesFed++;
+        }
+    }
+
+    private void send()
+    {
+        int length = output.length();
+        if (length > chars.length)
+        {
+            chars = new char[Math.max(length, chars.length * 2)];
+        }
+        output.getChars(0, length, chars, 0);
+        write(chars, length);
+        charsSent += length;
+    }
+}
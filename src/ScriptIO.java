@@ -0,0 +1,65 @@
+/**
+ * The ScriptIO class is a GameIO for bots and scripted games.<p>
+ * Commands are read from one buffered reader, and a line may hold several of them separated by ';'
+ * (for example "Bot;n;a;l;l;h;e"), each with any surrounding spaces trimmed. Unlike the interactive
+ * GameIO, the output is not flushed every time the game asks for input, only when its buffer fills up
+ * and when the game ends, so a scripted game runs at the engine's speed instead of the terminal's.
+ */
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class ScriptIO extends GameIO
+{
+    public static final char SEPARATOR = ';';
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String[] NO_COMMANDS = new String[0];
+
+    //instance variables
+    private String[] commands = NO_COMMANDS;
+    private int next;
+
+    //Constructor
+    /**
+     * @param in Where the script comes from.
+     * @param out Where the game's output goes.
+     */
+    public ScriptIO(InputStream in, OutputStream out)
+    {
+        super(in, out, StandardCharsets.UTF_8, BUFFER_SIZE);
+    }
+
+    /**
+     * @return The script's next command, or "" once the script has run out.
+     */
+    public String readLine()
+    {
+        while (next == commands.length)
+        {
+            String line = nextInputLine();
+            if (isAtEnd())
+            {
+                return "";
+            }
+            commands = split(line);
+            next = 0;
+        }
+        return commands[next++];
+    }
+
+    // splits a line into its commands; an empty line is one empty command, just as the player pressing enter
+    private static String[] split(String line)
+    {
+        if (line.indexOf(SEPARATOR) < 0)
+        {
+            return new String[] {line.trim()};
+        }
+        String[] commands = line.split(String.valueOf(SEPARATOR), -1);
+        for (int i = 0; i < commands.length; i++)
+        {
+            commands[i] = commands[i].trim();
+        }
+        return commands;
+    }
+}
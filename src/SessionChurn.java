@@ -0,0 +1,235 @@
+/**
+ * The SessionChurn class checks that a SessionStore can evict games to disk and load them back without
+ * changing them.<p>
+ * Thousands of players, each on their own session thread, start seeded games in a store whose memory
+ * budget holds only a fraction of them. They play random commands through the store, and most of them
+ * wander off part way through, the way real players abandon games. Each player plays the same commands on
+ * a copy of their game kept outside the store, and after every command the two games' checksums must be
+ * the same, however many times the game has been to disk and back. Every other player's shop has only a
+ * couple of each item, so what is left on its shelves has to survive the trip too. At the end the games in memory must fit
+ * the budget. The store is then closed and opened again on the same directory, and every game must still be
+ * there as it was left. That is done again until the JIT has warmed up, and the last time, with no players
+ * competing for the CPU, loading the games back one after another must take well under a millisecond each.<p>
+ * Any failure exits with status 1.<p>
+ * Run it with: java SessionChurn [players] [commands] [budget in KB]
+ */
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+public class SessionChurn
+{
+    private static final long MAX_RESTORE_NANOS = 1_000_000;
+    // enough loads for the JIT to have compiled the store before the last reopening is timed
+    private static final int WARMUP_LOADS = 20_000;
+    private static final GameMode[] MODES = {GameMode.EASY, GameMode.NORMAL, GameMode.HARD};
+    // small enough that players empty shelves, and not registered with the Restocker, so the copy keeps up
+    private static final int STOCK = 2;
+
+    /**
+     * One player's game, and the copy it is checked against.
+     */
+    static class Player
+    {
+        final GameSession copy;
+        long id;
+        String problem;
+
+        Player(GameSession copy)
+        {
+            this.copy = copy;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int players = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 40;
+        long budget = (args.length > 2 ? Long.parseLong(args[2]) : 256) * 1024;
+
+        Path directory = Files.createTempDirectory("session-churn");
+        boolean passed;
+        try
+        {
+            SessionStore store = new SessionStore(directory, budget);
+            List<Player> crowd = play(store, players, commands);
+            System.out.println(store);
+            passed = check(store, crowd, budget);
+            store.close();
+
+            // the rounds before the last warm up the JIT, which would otherwise take whole time slices from the loads
+            int rounds = 1 + (WARMUP_LOADS + players - 1) / players;
+            for (int round = 0; round < rounds; round++)
+            {
+                SessionStore reopened = new SessionStore(directory, budget);
+                passed &= checkReopened(reopened, crowd, round == rounds - 1);
+                if (round == rounds - 1)
+                {
+                    System.out.println("Reopened: " + reopened);
+                }
+                reopened.close();
+            }
+        }
+        finally
+        {
+            try (Stream<Path> files = Files.list(directory))
+            {
+                for (Path file : (Iterable<Path>) files::iterator)
+                {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        System.out.println(passed ? "Every game came back as it was" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // every player starts a game and plays some of it, checking it against the copy after every command
+    private static List<Player> play(SessionStore store, int players, int commands) throws InterruptedException
+    {
+        ExecutorService executor = SessionThreads.newPerSessionExecutor("player");
+        List<Future<Player>> futures = new ArrayList<>();
+        for (int i = 0; i < players; i++)
+        {
+            long seed = i;
+            futures.add(executor.submit(() -> {
+                GameMode mode = MODES[(int) (seed % MODES.length)];
+                Player player = new Player(newGame(seed, mode));
+                player.id = store.add(newGame(seed, mode));
+                GameRandom random = new GameRandom(~seed);
+                // most players give up part way through
+                int played = random.nextInt(4) == 0 ? commands : random.nextInt(commands);
+                for (int turn = 0; turn < played && player.problem == null; turn++)
+                {
+                    int action = random.nextInt(6);
+                    int itemId = random.nextInt(Items.SHOP_ITEM_COUNT);
+                    Integer checksum = store.use(player.id, session -> {
+                        // a command that takes a while, so other players' evictions run while this game is in use
+                        Thread.yield();
+                        command(session, action, itemId);
+                        return session.checksum();
+                    });
+                    command(player.copy, action, itemId);
+                    if (checksum == null || checksum != player.copy.checksum())
+                    {
+                        player.problem = "Player-" + seed + "'s game changed on turn " + turn;
+                    }
+                    // give the other players a chance to push this game out of memory
+                    Thread.yield();
+                }
+                return player;
+            }));
+        }
+        List<Player> crowd = new ArrayList<>();
+        try
+        {
+            for (Future<Player> future : futures)
+            {
+                crowd.add(future.get());
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("A player failed", e.getCause());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+        return crowd;
+    }
+
+    private static GameSession newGame(long seed, GameMode mode)
+    {
+        GameSession session = new GameSession("Player-" + seed, mode, new GameRandom(seed));
+        if (seed % 2 == 1)
+        {
+            session.getCurrentTown().getShop().setStock(new ShopStock(STOCK));
+        }
+        return session;
+    }
+
+    private static void command(GameSession session, int action, int itemId)
+    {
+        if (session.isFinished())
+        {
+            return;
+        }
+        switch (action)
+        {
+            case 0:
+                session.buy(itemId);
+                break;
+            case 1:
+                session.sell(itemId);
+                break;
+            case 2:
+                session.move();
+                break;
+            case 3:
+                session.moveBack();
+                break;
+            case 4:
+                session.lookForTrouble();
+                break;
+            default:
+                session.huntForTreasure();
+                break;
+        }
+    }
+
+    private static boolean check(SessionStore store, List<Player> crowd, long budget)
+    {
+        boolean passed = true;
+        for (Player player : crowd)
+        {
+            if (player.problem != null)
+            {
+                System.out.println(player.problem);
+                passed = false;
+            }
+        }
+        if (store.getResidentBytes() > budget)
+        {
+            System.out.println("The games in memory take " + store.getResidentBytes() + " bytes, over the budget of " + budget);
+            passed = false;
+        }
+        if (store.getEvictions() == 0 || store.getMisses() == 0)
+        {
+            System.out.println("The budget is big enough for every game, so nothing was checked");
+            passed = false;
+        }
+        return passed;
+    }
+
+    private static boolean checkReopened(SessionStore store, List<Player> crowd, boolean timed)
+    {
+        if (store.getOnDiskCount() != crowd.size())
+        {
+            System.out.println(store.getOnDiskCount() + " games on disk after reopening, not " + crowd.size());
+            return false;
+        }
+        for (Player player : crowd)
+        {
+            Integer checksum = store.use(player.id, GameSession::checksum);
+            if (checksum == null || checksum != player.copy.checksum())
+            {
+                System.out.println("Game " + player.id + " didn't come back as it was left");
+                return false;
+            }
+        }
+        if (timed && store.getRestores().getP99Nanos() > MAX_RESTORE_NANOS)
+        {
+            System.out.println("Loading a game back took " + store.getRestores().getP99Nanos() + " ns at p99");
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * The SessionRecorder class is a GameIO that writes down everything needed to play a game again exactly.<p>
+ * A game's random events all come from its GameRandom, so the generator's starting state and the lines
+ * the player typed are enough to replay it (see SessionReplayer). Each line is stored with a checksum of
+ * the game as it was when the line was asked for, so a replay can tell exactly where it went a
+ * different way.<p>
+ * File layout (DataOutputStream):
+ * <pre>
+ * "THRC" magic, version byte, long seed, long gamma
+ * per line read:   byte 'L', int checksum of the game before the line, UTF line
+ * at the end:      byte 'E', int checksum of the finished game
+ * </pre>
+ */
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Supplier;
+
+public class SessionRecorder extends GameIO implements AutoCloseable
+{
+    static final byte[] MAGIC = {'T', 'H', 'R', 'C'};
+    static final byte VERSION = 1;
+    static final byte LINE = 'L';
+    static final byte END = 'E';
+
+    //instance variables
+    private final DataOutputStream recording;
+    private Supplier<GameSession> game = () -> null;
+
+    //Constructor
+    /**
+     * @param in Where the player's input comes from.
+     * @param out Where the game's output goes.
+     * @param random The game's generator, before anything has been drawn from it.
+     * @param recording Where the recording is written; closed by close().
+     */
+    public SessionRecorder(InputStream in, OutputStream out, GameRandom random, OutputStream recording)
+    {
+        super(in, out);
+        this.recording = new DataOutputStream(new BufferedOutputStream(recording));
+        try
+        {
+            this.recording.write(MAGIC);
+            this.recording.writeByte(VERSION);
+            this.recording.writeLong(random.getSeed());
+            this.recording.writeLong(random.getGamma());
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Tells the recorder which game to take checksums of.
+     *
+     * @param game Gives the game being recorded; it may give null before the game has started.
+     */
+    public void watch(Supplier<GameSession> game)
+    {
+        this.game = game;
+    }
+
+    /**
+     * Reads a line and adds it to the recording. The end of the input isn't recorded: a replay runs
+     * out of lines at the same point and ends the same way.
+     */
+    public String readLine()
+    {
+        int checksum = checksum(game.get());
+        String line = super.readLine();
+        if (!isAtEnd())
+        {
+            try
+            {
+                recording.writeByte(LINE);
+                recording.writeInt(checksum);
+                recording.writeUTF(line);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return line;
+    }
+
+    /**
+     * Writes the finished game's checksum and closes the recording.
+     */
+    public void close() throws IOException
+    {
+        flush();
+        recording.writeByte(END);
+        recording.writeInt(checksum(game.get()));
+        recording.close();
+    }
+
+    static int checksum(GameSession session)
+    {
+        return session == null ? 0 : session.checksum();
+    }
+}
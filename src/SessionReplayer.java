@@ -0,0 +1,216 @@
+/**
+ * The SessionReplayer class plays recorded games again, to reproduce what a player saw and to check that
+ * the game still behaves the same way.<p>
+ * A replayer is a GameIO that answers every prompt from the recording and throws all output away, so a
+ * replayed game runs as fast as the engine can go. Before each line is handed over, the game's checksum
+ * is compared with the one recorded at that point; the first difference stops the replay and reports
+ * the line where the two games parted.<p>
+ * Run it with: java SessionReplayer file-or-directory..., to replay every recording (*.rec) as a
+ * regression suite. It exits with a non-zero status if any replay differs.
+ */
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class SessionReplayer extends GameIO
+{
+    //instance variables
+    private final GameRandom random;
+    private final String[] lines;
+    private final int[] checksums;
+    private final int finalChecksum;
+    private final boolean hasEnd;
+    private TreasureHunter game;
+    private int next;
+    private boolean atEnd;
+
+    //Constructor
+    /**
+     * Reads a recording.
+     *
+     * @param recording A recording written by SessionRecorder.
+     * @throws IllegalArgumentException if it isn't a recording.
+     */
+    public SessionReplayer(InputStream recording) throws IOException
+    {
+        super(InputStream.nullInputStream(), OutputStream.nullOutputStream());
+        DataInputStream in = new DataInputStream(new BufferedInputStream(recording));
+        byte[] magic = new byte[SessionRecorder.MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, SessionRecorder.MAGIC))
+        {
+            throw new IllegalArgumentException("Not a session recording");
+        }
+        int version = in.readByte();
+        if (version != SessionRecorder.VERSION)
+        {
+            throw new IllegalArgumentException("Unsupported recording version " + version);
+        }
+        random = new GameRandom(in.readLong(), in.readLong());
+
+        List<String> lineList = new ArrayList<>();
+        int[] checksumList = new int[16];
+        int end = 0;
+        boolean ended = false;
+        while (!ended)
+        {
+            int tag;
+            try
+            {
+                tag = in.readByte();
+            }
+            catch (EOFException e)
+            {
+                // the recording was cut short, for example by a crash; replay what there is
+                break;
+            }
+            if (tag == SessionRecorder.LINE)
+            {
+                if (lineList.size() == checksumList.length)
+                {
+                    checksumList = Arrays.copyOf(checksumList, checksumList.length * 2);
+                }
+                checksumList[lineList.size()] = in.readInt();
+                lineList.add(in.readUTF());
+            }
+            else if (tag == SessionRecorder.END)
+            {
+                end = in.readInt();
+                ended = true;
+            }
+            else
+            {
+                throw new IllegalArgumentException("Corrupt recording: unknown entry " + tag);
+            }
+        }
+        lines = lineList.toArray(new String[0]);
+        checksums = Arrays.copyOf(checksumList, lines.length);
+        finalChecksum = ended ? end : 0;
+        hasEnd = ended;
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length == 0)
+        {
+            System.out.println("Usage: java SessionReplayer file-or-directory...");
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        for (String arg : args)
+        {
+            Path path = Path.of(arg);
+            if (Files.isDirectory(path))
+            {
+                try (Stream<Path> list = Files.walk(path))
+                {
+                    list.filter(file -> file.toString().endsWith(".rec")).sorted().forEach(files::add);
+                }
+            }
+            else
+            {
+                files.add(path);
+            }
+        }
+
+        long start = System.nanoTime();
+        long totalLines = 0;
+        int failures = 0;
+        for (Path file : files)
+        {
+            try (InputStream in = Files.newInputStream(file))
+            {
+                SessionReplayer replayer = new SessionReplayer(in);
+                totalLines += replayer.getLineCount();
+                replayer.replay();
+            }
+            catch (IllegalStateException | IllegalArgumentException e)
+            {
+                failures++;
+                System.out.println(file + ": " + e.getMessage());
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d sessions, %,d lines replayed in %.2f s (%,.0f lines/s), %d differed%n",
+                files.size(), totalLines, seconds, totalLines / seconds, failures);
+        if (failures > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Plays the recorded game again from the start.
+     *
+     * @return The replayed game, or null if the recording ends before a mode was chosen.
+     * @throws IllegalStateException if the game goes a different way from the recording.
+     */
+    public GameSession replay()
+    {
+        next = 0;
+        atEnd = false;
+        game = new TreasureHunter(new GameRandom(random.getSeed(), random.getGamma()), this);
+        game.play();
+        GameSession session = game.getSession();
+        if (hasEnd && SessionRecorder.checksum(session) != finalChecksum)
+        {
+            throw new IllegalStateException("The finished game differs from the recording");
+        }
+        return session;
+    }
+
+    public int getLineCount()
+    {
+        return lines.length;
+    }
+
+    public String readLine()
+    {
+        if (next == lines.length)
+        {
+            atEnd = true;
+            return "";
+        }
+        int checksum = SessionRecorder.checksum(game.getSession());
+        if (checksum != checksums[next])
+        {
+            throw new IllegalStateException("The game differs from the recording before line " + (next + 1)
+                    + " (\"" + lines[next] + "\")");
+        }
+        return lines[next++];
+    }
+
+    public boolean isAtEnd()
+    {
+        return atEnd;
+    }
+
+    public void print(String str)
+    {
+    }
+
+    public void println(String str)
+    {
+    }
+
+    public void println(Object obj)
+    {
+    }
+
+    public void println()
+    {
+    }
+
+    public void flush()
+    {
+    }
+}
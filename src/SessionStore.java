@@ -0,0 +1,620 @@
+/**
+ * The SessionStore class keeps games in memory up to a budget, and the rest on disk.<p>
+ * Games in memory are kept in a ConcurrentHashMap, so a command for one of them finds it without taking a
+ * lock. Which game goes first is decided by the clock algorithm: games wait in a queue in the order they
+ * came into memory, and each one used since it last reached the front gets a second chance at the back,
+ * which comes close to evicting the least recently used one without any bookkeeping on a hit. Each game's
+ * size on the heap is estimated from what it holds: the session, hunter and world, plus each town its
+ * world keeps and that town's shop stock, if it has one, as measured over 20,000 games. When the games in
+ * memory add up to more than the budget, games are saved with GameSnapshot, a couple of hundred bytes
+ * each, to one file per game, and dropped from memory. A game that is in use is never evicted.<p>
+ * The next command for an evicted game loads it back in, transparently, and deletes its file; that reads
+ * a couple of hundred bytes and, once the JIT has warmed up, takes about 40 microseconds. A game that is
+ * loaded while its file is still being written comes straight from the bytes being written. Loading,
+ * evicting or removing a game holds that game alone, with a future that anyone else after the same game
+ * waits for, so two commands can't load the same game twice, and no file is read or written while the
+ * rest of the store is held up.<p>
+ * Hits, misses and evictions are counted, and every load is timed, so the budget can be sized from them.
+ * close() writes every game still in memory to disk, and a store opened on the same directory carries on
+ * where it left off.
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+public class SessionStore implements AutoCloseable
+{
+    /**
+     * The memory budget, from -Dtreasurehunter.sessionMemory in megabytes; 64 MB by default.
+     */
+    public static final long DEFAULT_BUDGET = Long.getLong("treasurehunter.sessionMemory", 64) * 1024 * 1024;
+
+    // a game on the heap, without its towns, each town its world keeps, and each of those towns' shop stock
+    static final int SESSION_BYTES = 512;
+    static final int TOWN_BYTES = 128;
+    static final int STOCK_BYTES = 608;
+
+    private static final String SUFFIX = ".game";
+    // stands in for a game's bytes while its file is being written, when the game has been deleted meanwhile
+    private static final byte[] DELETED = new byte[0];
+    // what an entry's users are set to once it is being evicted, so no command can start on it
+    private static final int EVICTED = -1;
+
+    //instance variables
+    private final Path directory;
+    private final long budget;
+    private final boolean temporary;
+    private final ConcurrentHashMap<Long, Entry> resident = new ConcurrentHashMap<>();
+    // the games in memory, in the order the clock hand comes to them
+    private final ConcurrentLinkedQueue<Entry> clock = new ConcurrentLinkedQueue<>();
+    // games being loaded, evicted or removed, each with a future that completes when that is done
+    private final ConcurrentHashMap<Long, CompletableFuture<Void>> busy = new ConcurrentHashMap<>();
+    // games that have been evicted and whose files are still being written
+    private final ConcurrentHashMap<Long, byte[]> writing = new ConcurrentHashMap<>();
+    private final ActionMetrics restores = new ActionMetrics("session restore");
+    private final AtomicLong lastId = new AtomicLong();
+    private final AtomicLong residentBytes = new AtomicLong();
+    private final AtomicLong onDisk = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * A game in memory.
+     */
+    private static class Entry
+    {
+        final long id;
+        final GameSession session;
+        // changed only with the session locked
+        int bytes;
+        // the number of commands running on the game, or EVICTED
+        final AtomicInteger users = new AtomicInteger();
+        // used since the clock hand last passed it
+        volatile boolean referenced;
+        volatile boolean removed;
+
+        Entry(long id, GameSession session)
+        {
+            this.id = id;
+            this.session = session;
+            bytes = sizeOf(session);
+        }
+
+        // marks the game in use, unless it is being evicted
+        boolean checkOut()
+        {
+            while (true)
+            {
+                int count = users.get();
+                if (count == EVICTED)
+                {
+                    return false;
+                }
+                if (users.compareAndSet(count, count + 1))
+                {
+                    referenced = true;
+                    return true;
+                }
+            }
+        }
+    }
+
+    //Constructor
+    /**
+     * Opens a store, picking up any games left on disk by the last one opened on the directory.
+     *
+     * @param directory Where evicted games go; created if it doesn't exist.
+     * @param budget How many bytes of heap the games in memory may take.
+     */
+    public SessionStore(Path directory, long budget) throws IOException
+    {
+        this(directory, budget, false);
+    }
+
+    private SessionStore(Path directory, long budget, boolean temporary) throws IOException
+    {
+        this.directory = directory;
+        this.budget = budget;
+        this.temporary = temporary;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory))
+        {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .forEach(name -> {
+                        lastId.accumulateAndGet(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())), Math::max);
+                        onDisk.incrementAndGet();
+                    });
+        }
+    }
+
+    /**
+     * @param budget How many bytes of heap the games in memory may take.
+     * @return A store in a new temporary directory, which close() deletes along with every game in it.
+     */
+    public static SessionStore temporary(long budget) throws IOException
+    {
+        return new SessionStore(Files.createTempDirectory("treasurehunter-sessions"), budget, true);
+    }
+
+    //Accessors
+    public Path getDirectory()
+    {
+        return directory;
+    }
+
+    public long getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * @return The number of commands whose game was in memory.
+     */
+    public long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return The number of commands whose game had to be loaded back in.
+     */
+    public long getMisses()
+    {
+        return misses.sum();
+    }
+
+    public long getEvictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * @return The number of games in memory.
+     */
+    public int getResidentCount()
+    {
+        return resident.size();
+    }
+
+    /**
+     * @return The estimated heap taken by the games in memory.
+     */
+    public long getResidentBytes()
+    {
+        return residentBytes.get();
+    }
+
+    /**
+     * @return The number of games only on disk.
+     */
+    public long getOnDiskCount()
+    {
+        long count = onDisk.get();
+        for (byte[] bytes : writing.values())
+        {
+            count += bytes == DELETED ? 0 : 1;
+        }
+        return count;
+    }
+
+    /**
+     * @return How long each game took to load back in.
+     */
+    public ActionMetrics getRestores()
+    {
+        return restores;
+    }
+
+    /**
+     * Adds a new game, which counts as just used.
+     *
+     * @param session The game.
+     * @return The game's id.
+     */
+    public long add(GameSession session)
+    {
+        long id = lastId.incrementAndGet();
+        Entry entry = new Entry(id, session);
+        entry.referenced = true;
+        resident.put(id, entry);
+        residentBytes.addAndGet(entry.bytes);
+        clock.add(entry);
+        evict(budget);
+        return id;
+    }
+
+    /**
+     * Runs a command on a game, loading it back in first if it was evicted. The game is locked while the
+     * command runs, and can't be evicted until it is done.
+     *
+     * @param id The game's id.
+     * @param command What to do with the game.
+     * @return What the command returned, or null if there is no such game.
+     */
+    public <T> T use(long id, Function<GameSession, T> command)
+    {
+        Entry entry = checkOut(id);
+        if (entry == null)
+        {
+            return null;
+        }
+        try
+        {
+            synchronized (entry.session)
+            {
+                try
+                {
+                    return command.apply(entry.session);
+                }
+                finally
+                {
+                    resize(entry);
+                }
+            }
+        }
+        finally
+        {
+            entry.users.decrementAndGet();
+            evict(budget);
+        }
+    }
+
+    /**
+     * Forgets a game, wherever it is.
+     *
+     * @param id The game's id.
+     * @return The game as it was, or null if there is no such game.
+     */
+    public GameSession remove(long id)
+    {
+        CompletableFuture<Void> hold = hold(id);
+        try
+        {
+            Entry entry = resident.remove(id);
+            if (entry != null)
+            {
+                synchronized (entry.session)
+                {
+                    entry.removed = true;
+                    residentBytes.addAndGet(-entry.bytes);
+                }
+                return entry.session;
+            }
+            byte[] bytes = takeWriting(id);
+            if (bytes != null)
+            {
+                return bytes == DELETED ? null : GameSnapshot.load(bytes);
+            }
+            bytes = readFile(id);
+            if (bytes == null)
+            {
+                return null;
+            }
+            deleteFile(id);
+            return GameSnapshot.load(bytes);
+        }
+        finally
+        {
+            release(id, hold);
+        }
+    }
+
+    /**
+     * Writes every game that isn't in use to disk, or, for a temporary store, deletes the store.
+     */
+    public void close() throws IOException
+    {
+        if (!temporary)
+        {
+            evict(-1);
+            return;
+        }
+        resident.clear();
+        clock.clear();
+        residentBytes.set(0);
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for (Path file : (Iterable<Path>) files::iterator)
+            {
+                Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    public String toString()
+    {
+        return String.format("%,d games in memory (%,d KB of %,d KB), %,d on disk; %,d hits, %,d misses, %,d evictions; "
+                + "restore p50 %,d ns, p99 %,d ns, max %,d ns", resident.size(), residentBytes.get() / 1024, budget / 1024,
+                getOnDiskCount(), hits.sum(), misses.sum(), evictions.sum(), restores.getP50Nanos(), restores.getP99Nanos(),
+                restores.getMaxNanos());
+    }
+
+    // finds a game, loading it back in if need be, and marks it in use
+    private Entry checkOut(long id)
+    {
+        while (true)
+        {
+            Entry entry = resident.get(id);
+            if (entry != null && entry.checkOut())
+            {
+                hits.increment();
+                return entry;
+            }
+            if (entry == null)
+            {
+                CompletableFuture<Void> hold = tryHold(id);
+                if (hold != null)
+                {
+                    try
+                    {
+                        // loaded by someone else between looking and holding it
+                        if (!resident.containsKey(id))
+                        {
+                            return load(id);
+                        }
+                    }
+                    finally
+                    {
+                        release(id, hold);
+                    }
+                    continue;
+                }
+            }
+            // being loaded or evicted; the future is gone once it is in memory or out of it
+            CompletableFuture<Void> pending = busy.get(id);
+            if (pending != null)
+            {
+                pending.join();
+            }
+        }
+    }
+
+    // loads an evicted game back in, in use, with the game held; null if there is no such game
+    private Entry load(long id)
+    {
+        long start = System.nanoTime();
+        byte[] bytes = takeWriting(id);
+        if (bytes == null)
+        {
+            bytes = readFile(id);
+            if (bytes != null)
+            {
+                deleteFile(id);
+            }
+        }
+        if (bytes == null || bytes == DELETED)
+        {
+            return null;
+        }
+        Entry entry = new Entry(id, GameSnapshot.load(bytes));
+        entry.users.set(1);
+        entry.referenced = true;
+        resident.put(id, entry);
+        residentBytes.addAndGet(entry.bytes);
+        clock.add(entry);
+        misses.increment();
+        restores.recordNanos(System.nanoTime() - start);
+        return entry;
+    }
+
+    // the bytes of a game whose file is still being written, which is deleted once it has been, since it is
+    // out of date as soon as the game changes; DELETED if the game is gone, null if no file is being written
+    private byte[] takeWriting(long id)
+    {
+        while (true)
+        {
+            byte[] bytes = writing.get(id);
+            if (bytes == null || bytes == DELETED || writing.replace(id, bytes, DELETED))
+            {
+                return bytes;
+            }
+        }
+    }
+
+    // updates a game's size now that a command has run on it; called with the session locked
+    private void resize(Entry entry)
+    {
+        if (!entry.removed)
+        {
+            int bytes = sizeOf(entry.session);
+            residentBytes.addAndGet(bytes - entry.bytes);
+            entry.bytes = bytes;
+        }
+    }
+
+    // evicts games that aren't in use, going round the clock, until the rest fit in the target
+    private void evict(long target)
+    {
+        // twice round: once to take away second chances, once to use them up
+        long passes = 2L * resident.size() + 1;
+        for (long i = 0; i < passes && residentBytes.get() > target; i++)
+        {
+            Entry entry = clock.poll();
+            if (entry == null)
+            {
+                return;
+            }
+            if (entry.removed || resident.get(entry.id) != entry)
+            {
+                // removed, or evicted and loaded back in as another entry
+                continue;
+            }
+            // a game whose last file is still being written waits, so two writes never race
+            if (entry.referenced || entry.users.get() != 0 || writing.containsKey(entry.id))
+            {
+                entry.referenced = false;
+                clock.add(entry);
+                continue;
+            }
+            CompletableFuture<Void> hold = tryHold(entry.id);
+            if (hold == null)
+            {
+                clock.add(entry);
+                continue;
+            }
+            byte[] bytes;
+            try
+            {
+                // once no command is using it, none can start: they have to check it out of the store first
+                if (!entry.users.compareAndSet(0, EVICTED))
+                {
+                    clock.add(entry);
+                    continue;
+                }
+                bytes = GameSnapshot.save(entry.session);
+                entry.removed = true;
+                residentBytes.addAndGet(-entry.bytes);
+                evictions.increment();
+                writing.put(entry.id, bytes);
+                resident.remove(entry.id, entry);
+            }
+            finally
+            {
+                release(entry.id, hold);
+            }
+            write(entry.id, bytes);
+        }
+    }
+
+    private void write(long id, byte[] bytes)
+    {
+        IOException failure = null;
+        try
+        {
+            Files.write(file(id), bytes);
+            onDisk.incrementAndGet();
+        }
+        catch (IOException e)
+        {
+            failure = e;
+        }
+        // held, so the game can't be evicted again, and its new file deleted, before this one is dealt with
+        CompletableFuture<Void> hold = hold(id);
+        try
+        {
+            if (writing.remove(id) == DELETED)
+            {
+                // deleted or loaded back in while it was being written
+                if (failure == null)
+                {
+                    deleteFile(id);
+                }
+            }
+            else if (failure != null)
+            {
+                // kept in memory rather than lost
+                Entry entry = new Entry(id, GameSnapshot.load(bytes));
+                resident.put(id, entry);
+                residentBytes.addAndGet(entry.bytes);
+                clock.add(entry);
+            }
+        }
+        finally
+        {
+            release(id, hold);
+        }
+        if (failure != null)
+        {
+            throw new UncheckedIOException("Couldn't evict game " + id, failure);
+        }
+    }
+
+    // waits until nobody else is loading, evicting or removing the game, then holds it
+    private CompletableFuture<Void> hold(long id)
+    {
+        while (true)
+        {
+            CompletableFuture<Void> hold = tryHold(id);
+            if (hold != null)
+            {
+                return hold;
+            }
+            CompletableFuture<Void> pending = busy.get(id);
+            if (pending != null)
+            {
+                pending.join();
+            }
+        }
+    }
+
+    // holds the game, or returns null if someone else is loading, evicting or removing it
+    private CompletableFuture<Void> tryHold(long id)
+    {
+        CompletableFuture<Void> hold = new CompletableFuture<>();
+        return busy.putIfAbsent(id, hold) == null ? hold : null;
+    }
+
+    private void release(long id, CompletableFuture<Void> hold)
+    {
+        busy.remove(id, hold);
+        hold.complete(null);
+    }
+
+    private byte[] readFile(long id)
+    {
+        try
+        {
+            return Files.readAllBytes(file(id));
+        }
+        catch (NoSuchFileException e)
+        {
+            return null;
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Couldn't load game " + id, e);
+        }
+    }
+
+    private void deleteFile(long id)
+    {
+        try
+        {
+            if (Files.deleteIfExists(file(id)))
+            {
+                onDisk.decrementAndGet();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException("Couldn't delete game " + id, e);
+        }
+    }
+
+    private Path file(long id)
+    {
+        return directory.resolve(id + SUFFIX);
+    }
+
+    private static int sizeOf(GameSession session)
+    {
+        World world = session.getWorld();
+        int bytes = SESSION_BYTES;
+        for (int slot = 0; slot < world.getWindow(); slot++)
+        {
+            int number = world.getTownNumber(slot);
+            if (number >= 0)
+            {
+                bytes += TOWN_BYTES;
+                if (world.getTown(number).getShop().getStock() != null)
+                {
+                    bytes += STOCK_BYTES;
+                }
+            }
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * The SessionThreads class makes the executors that game sessions run on.<p>
+ * A session spends nearly all of its time waiting for the player, so on a JVM with virtual threads
+ * (Java 21 and later) each session gets one. The project is still built for Java 17, so the virtual
+ * thread executor is looked up at runtime; on older JVMs sessions fall back to platform threads with
+ * a small stack, which keeps the per-session footprint low.
+ */
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SessionThreads
+{
+    // a game session never recurses deeply, so it doesn't need the default 1 MB stack
+    private static final long PLATFORM_STACK_SIZE = 256 * 1024;
+
+    private SessionThreads()
+    {
+    }
+
+    /**
+     * @param name The prefix of the threads' names.
+     * @return An executor that starts a new thread for every task.
+     */
+    public static ExecutorService newPerSessionExecutor(String name)
+    {
+        try
+        {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (ReflectiveOperationException e)
+        {
+            return Executors.newCachedThreadPool(platformThreads(name));
+        }
+    }
+
+    /**
+     * @return true if sessions will run on virtual threads.
+     */
+    public static boolean hasVirtualThreads()
+    {
+        try
+        {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return true;
+        }
+        catch (NoSuchMethodException e)
+        {
+            return false;
+        }
+    }
+
+    private static ThreadFactory platformThreads(String name)
+    {
+        AtomicLong count = new AtomicLong();
+        return task -> {
+            Thread thread = new Thread(null, task, name + "-" + count.incrementAndGet(), PLATFORM_STACK_SIZE);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,10 +1,16 @@
 /**
  * The Shop class controls the cost of the items in the Treasure Hunt game.<p>
  * The Shop class also acts as a go between for the Hunter's buyItem() method.<p>
+ * A shop keeps nothing about its customers, so any number of hunters can trade in it at once. Each
+ * purchase or sale locks only the hunter making it, so that a hunter's gold and kit change together
+ * even if they trade from more than one thread, and hunters never wait on each other.<p>
+ * A shop sells as many of each item as it is asked for, unless it is given a ShopStock; then buyers
+ * compete for what is left, and an item sold back goes back on the shelf. Its prices are fixed too,
+ * unless it is joined to a Market, which makes an item dearer each time it is bought in that town and
+ * cheaper each time it is sold. Prices on a market can move while a player makes up their mind, so a
+ * player is only ever charged or paid the price they agreed to, and asked again if it has changed.<p>
  * This code has been adapted from Ivan Turner's original program -- thank you Mr. Turner!
  */
-import java.util.Scanner;
-
 public class Shop
 {
     // constants
@@ -14,26 +20,86 @@ public class Shop
     private static final int HORSE_COST = 12;
     private static final int BOAT_COST = 20;
     private static final int BRAVERY_COST = 50;
-    private int waterEasy = WATER_COST - 1;
-    private int ropeEasy = ROPE_COST - 1;
-    private int macheteEasy = MACHETE_COST - 2;
-    private int horseEasy = HORSE_COST - 3;
-    private int boatEasy = BOAT_COST - 4;
-    private int braveryEasy = BRAVERY_COST - 10;
+
+    // stands in for a quoted price when a purchase or sale is made at whatever the price is
+    private static final int ANY_PRICE = -1;
+
+    // prices indexed by item id; anything the shop doesn't sell costs 0
+    private static final int[] COSTS = new int[Items.COUNT];
+    private static final int[] EASY_COSTS = new int[Items.COUNT];
+
+    static
+    {
+        COSTS[Items.WATER] = WATER_COST;
+        COSTS[Items.ROPE] = ROPE_COST;
+        COSTS[Items.MACHETE] = MACHETE_COST;
+        COSTS[Items.HORSE] = HORSE_COST;
+        COSTS[Items.BOAT] = BOAT_COST;
+        COSTS[Items.BRAVERY] = BRAVERY_COST;
+        EASY_COSTS[Items.WATER] = WATER_COST - 1;
+        EASY_COSTS[Items.ROPE] = ROPE_COST - 1;
+        EASY_COSTS[Items.MACHETE] = MACHETE_COST - 2;
+        EASY_COSTS[Items.HORSE] = HORSE_COST - 3;
+        EASY_COSTS[Items.BOAT] = BOAT_COST - 4;
+        EASY_COSTS[Items.BRAVERY] = BRAVERY_COST - 10;
+    }
 
     // instance variables
-    private double markdown;
-    private Hunter customer;
     private boolean cheatMode;
-    private boolean easyMode;
+    private PriceTable prices;
+    private ShopStock stock;
+    private Market market;
+    private int marketTown;
 
     //Constructor
     public Shop(double markdown, boolean cheatMode, boolean easyMode)
     {
-        this.markdown = markdown;
-        customer = null;
+        this(markdown, cheatMode, easyMode, EASY_COSTS);
+    }
+
+    /**
+     * Builds a shop with its own easy mode prices, for example ones found by DifficultyTuner.
+     * @param easyCosts The easy mode price of each item, indexed by item id.
+     */
+    public Shop(double markdown, boolean cheatMode, boolean easyMode, int[] easyCosts)
+    {
+        this(cheatMode, createPriceTable(markdown, cheatMode, easyMode, easyCosts));
+    }
+
+    /**
+     * Builds a shop that shares a price table with other shops, as every town of a GameMode does.
+     * @param prices A table from createPriceTable() with the same cheatMode.
+     */
+    public Shop(boolean cheatMode, PriceTable prices)
+    {
         this.cheatMode = cheatMode;
-        this.easyMode = easyMode;
+        this.prices = prices;
+    }
+
+    /**
+     * @param easyCosts The easy mode price of each item, indexed by item id.
+     * @return A price table for shops with these settings.
+     */
+    public static PriceTable createPriceTable(double markdown, boolean cheatMode, boolean easyMode, int[] easyCosts)
+    {
+        return new PriceTable(COSTS, easyCosts, markdown, cheatMode, easyMode);
+    }
+
+    /**
+     * @param itemId An item id from the Items registry.
+     * @return The item's normal price, or 0 if the shop doesn't sell it.
+     */
+    public static int getStandardCost(int itemId)
+    {
+        return COSTS[itemId];
+    }
+
+    /**
+     * @return The standard easy mode price of each item, indexed by item id.
+     */
+    public static int[] getStandardEasyCosts()
+    {
+        return EASY_COSTS.clone();
     }
 
     /** method for entering the shop
@@ -42,55 +108,85 @@ public class Shop
      */
     public void enter(Hunter hunter, String buyOrSell)
     {
-        customer = hunter;
+        enter(hunter, buyOrSell, GameIO.console());
+    }
+
+    /** method for entering the shop
+     * @param hunter  the Hunter entering the shop
+     * @param buyOrSell  String that determines if hunter is "B"uying or "S"elling
+     * @param io  where the shopkeeper talks to the player
+     */
+    public void enter(Hunter hunter, String buyOrSell, GameIO io)
+    {
+        long start = GameMetrics.start();
+        long waited = io.getWaitNanos();
+        serve(hunter, buyOrSell, io);
+        // the time spent waiting for the player to answer isn't the shop's
+        GameMetrics.SHOP_ENTER.record(GameMetrics.skip(start, io.getWaitNanos() - waited));
+    }
 
-        Scanner scanner = new Scanner(System.in);
+    private void serve(Hunter hunter, String buyOrSell, GameIO io)
+    {
         if (buyOrSell.equals("B") || buyOrSell.equals("b"))
         {
-            System.out.println("Welcome to the shop! We have the finest wares in town.");
-            System.out.println("Currently we have the following items:");
-            System.out.println(inventory());
-            System.out.print("What're you lookin' to buy? ");
-            String item = scanner.nextLine();
-            int cost = checkMarketPrice(item, true);
+            io.println("Welcome to the shop! We have the finest wares in town.");
+            io.println("Currently we have the following items:");
+            io.println(inventory());
+            io.print("What're you lookin' to buy? ");
+            String item = io.readLine();
+            int itemId = Items.idOf(item);
+            int cost = getPrice(itemId, true);
             if (cost == 0)
             {
-                System.out.println("We ain't got none of those.");
+                io.println("We ain't got none of those.");
             }
-            else
+            while (cost != 0)
             {
-                if (cheatMode) {
-                    System.out.print("It'll cost you " + 1 + " gold. Buy it (y/n)? ");
-                } else {
-                    System.out.print("It'll cost you " + cost + " gold. Buy it (y/n)? ");
+                io.print("It'll cost you " + cost + " gold. Buy it (y/n)? ");
+                String option = io.readLine();
+                if (!option.equals("y") && !option.equals("Y"))
+                {
+                    break;
                 }
-                String option = scanner.nextLine();
-
-                if (option.equals("y") || option.equals("Y"))
+                boolean bought = buy(hunter, itemId, cost);
+                int now = getPrice(itemId, true);
+                if (bought || now == cost)
                 {
-                    buyItem(item);
+                    reportPurchase(bought, item, io);
+                    break;
                 }
+                io.println("Prices have moved since I quoted ye.");
+                cost = now;
             }
         }
         else
         {
-            System.out.println("What're you lookin' to sell? ");
-            System.out.print("You currently have the following items: " + customer.getInventory());
-            String item = scanner.nextLine();
-            int cost = checkMarketPrice(item, false);
+            io.println("What're you lookin' to sell? ");
+            io.print("You currently have the following items: " + hunter.getInventory());
+            String item = io.readLine();
+            int itemId = Items.idOf(item);
+            int cost = getPrice(itemId, false);
             if (cost == 0)
             {
-                System.out.println("We don't want none of those.");
+                io.println("We don't want none of those.");
             }
-            else
+            while (cost != 0)
             {
-                System.out.print("It'll get you " + cost + " gold. Sell it (y/n)? ");
-                String option = scanner.nextLine();
-
-                if (option.equals("y") || option.equals("Y"))
+                io.print("It'll get you " + cost + " gold. Sell it (y/n)? ");
+                String option = io.readLine();
+                if (!option.equals("y") && !option.equals("Y"))
                 {
-                    sellItem(item);
+                    break;
                 }
+                boolean sold = sell(hunter, itemId, cost);
+                int now = getPrice(itemId, false);
+                if (sold || now == cost)
+                {
+                    reportSale(sold, io);
+                    break;
+                }
+                io.println("Prices have moved since I made ye that offer.");
+                cost = now;
             }
         }
     }
@@ -101,76 +197,260 @@ public class Shop
      */
     public String inventory()
     {
-        String str;
-        if (cheatMode) {
-            str = "Water: " + 1 + " gold\n";
-            str += "Rope: " + 1 + " gold\n";
-            str += "Machete: " + 1 + " gold\n";
-            str += "Horse: " + 1 + " gold\n";
-            str += "Boat: " + 1 + " gold\n";
-            str += "Bravery: " + 1 + " gold\n";
-        } else if (easyMode) {
-            str = "Water: " + waterEasy + " gold\n";
-            str += "Rope: " + ropeEasy + " gold\n";
-            str += "Machete: " + macheteEasy + " gold\n";
-            str += "Horse: " + horseEasy + " gold\n";
-            str += "Boat: " + boatEasy + " gold\n";
-            str += "Bravery: " + braveryEasy + " gold\n";
-        } else {
-            str = "Water: " + WATER_COST + " gold\n";
-            str += "Rope: " + ROPE_COST + " gold\n";
-            str += "Machete: " + MACHETE_COST + " gold\n";
-            str += "Horse: " + HORSE_COST + " gold\n";
-            str += "Boat: " + BOAT_COST + " gold\n";
-            str += "Bravery: " + BRAVERY_COST + " gold\n";
-        }
-        return str;
+        return prices.getInventory(stock, market, marketTown);
+    }
+
+    /**
+     * @return What the shop has left to sell, or null if it never runs out.
+     */
+    public ShopStock getStock()
+    {
+        return stock;
+    }
+
+    /**
+     * Gives the shop a limited stock. This must be done before the shop is shared between threads.
+     *
+     * @param stock What the shop has to sell, or null to never run out.
+     */
+    public void setStock(ShopStock stock)
+    {
+        this.stock = stock;
+    }
+
+    /**
+     * @return The market that sets this shop's prices, or null if they are fixed.
+     */
+    public Market getMarket()
+    {
+        return market;
+    }
+
+    /**
+     * Lets a market set the shop's prices. This must be done before the shop is shared between threads.
+     *
+     * @param market The market, or null for fixed prices.
+     * @param town The number of the shop's town, which picks its trading post.
+     */
+    public void setMarket(Market market, int town)
+    {
+        this.market = market;
+        this.marketTown = town;
+    }
+
+    /**
+     * @param itemId An item id from the Items registry.
+     * @return true if the shop sells the item but has none left.
+     */
+    public boolean isSoldOut(int itemId)
+    {
+        return stock != null && Items.isShopItem(itemId) && stock.getCount(itemId) == 0;
+    }
+
+    /**
+     * @return The table of this shop's prices.
+     */
+    public PriceTable getPriceTable()
+    {
+        return prices;
     }
 
     /**
      * A method that lets the customer (a Hunter) buy an item.
+     * @param hunter The Hunter buying the item.
      * @param item The item being bought.
      */
-    public void buyItem(String item)
+    public void buyItem(Hunter hunter, String item)
     {
-        int costOfItem = checkMarketPrice(item, true);
-        if (cheatMode) {
-            if (customer.buyItem(item, 1))
-            {
-                System.out.println("Ye' got yerself a " + item + ". Come again soon.");
-            }
-            else
-            {
-                System.out.println("Hmm, either you don't have enough gold or you've already got one of those!");
-            }
-        } else {
-            if (customer.buyItem(item, costOfItem))
-            {
-                System.out.println("Ye' got yerself a " + item + ". Come again soon.");
-            }
-            else
-            {
-                System.out.println("Hmm, either you don't have enough gold or you've already got one of those!");
-            }
-        }
+        buyItem(hunter, item, GameIO.console());
+        GameIO.console().flush();
+    }
 
+    private void buyItem(Hunter hunter, String item, GameIO io)
+    {
+        reportPurchase(buy(hunter, item), item, io);
+    }
+
+    private void reportPurchase(boolean bought, String item, GameIO io)
+    {
+        if (bought)
+        {
+            io.println("Ye' got yerself a " + item + ". Come again soon.");
+        }
+        else if (isSoldOut(Items.idOf(item)))
+        {
+            io.println("Sorry, we're all out of those. Check back after the next delivery.");
+        }
+        else
+        {
+            io.println("Hmm, either you don't have enough gold or you've already got one of those!");
+        }
     }
 
     /**
      * A pathway method that lets the Hunter sell an item.
+     * @param hunter The Hunter selling the item.
      * @param item The item being sold.
      */
-    public void sellItem(String item)
+    public void sellItem(Hunter hunter, String item)
+    {
+        sellItem(hunter, item, GameIO.console());
+        GameIO.console().flush();
+    }
+
+    private void sellItem(Hunter hunter, String item, GameIO io)
+    {
+        reportSale(sell(hunter, item), io);
+    }
+
+    private void reportSale(boolean sold, GameIO io)
     {
-        int buyBackPrice = checkMarketPrice(item, false);
-        if (customer.sellItem(item, buyBackPrice))
+        if (sold)
         {
-            System.out.println("Pleasure doin' business with you.");
+            io.println("Pleasure doin' business with you.");
         }
         else
         {
-            System.out.println("Stop stringin' me along!");
+            io.println("Stop stringin' me along!");
+        }
+    }
+
+    /**
+     * Sells an item to a hunter without printing anything, so that games can be played without a console.
+     *
+     * @param hunter The Hunter buying the item.
+     * @param item The item being bought.
+     * @return true if the hunter bought the item.
+     */
+    public boolean buy(Hunter hunter, String item)
+    {
+        return buy(hunter, Items.idOf(item));
+    }
+
+    /**
+     * Sells an item to a hunter without printing anything or looking up its name.
+     * If the shop has a limited stock, the hunter is locked and checked first, and only a hunter who can
+     * afford the item and hasn't got one takes it off the shelf, so the shop never sells more than it has
+     * and a hunter who can't have the item never holds up the last one.
+     *
+     * @param hunter The Hunter buying the item.
+     * @param itemId The id of the item being bought, from the Items registry.
+     * @return true if the hunter bought the item; false if they couldn't, or it was sold out.
+     */
+    public boolean buy(Hunter hunter, int itemId)
+    {
+        return buy(hunter, itemId, ANY_PRICE);
+    }
+
+    /**
+     * Sells an item to a hunter at the price they were quoted, without printing anything. If the price
+     * has moved since, nothing is sold, and the hunter can be asked again at getPrice(itemId, true).
+     *
+     * @param hunter The Hunter buying the item.
+     * @param itemId The id of the item being bought, from the Items registry.
+     * @param quotedPrice The price the hunter agreed to pay, from getPrice(itemId, true).
+     * @return true if the hunter bought the item; false if they couldn't, it was sold out, or its price changed.
+     */
+    public boolean buy(Hunter hunter, int itemId, int quotedPrice)
+    {
+        long start = GameMetrics.start();
+        ShopStock stock = this.stock;
+        int costOfItem = getPrice(itemId, true);
+        boolean bought = false;
+        if (quotedPrice != ANY_PRICE && costOfItem != quotedPrice)
+        {
+            GameMetrics.SHOP_BUY.record(start);
+            return false;
+        }
+        synchronized (hunter)
+        {
+            // the hunter can't change while locked, so once they can have the item only the shelf can say no
+            if (hunter.canBuy(itemId, costOfItem) && (stock == null || stock.take(itemId)))
+            {
+                bought = hunter.buyItem(itemId, costOfItem);
+                hunter.recordEvent(GameEvent.PURCHASE, itemId, costOfItem);
+            }
+        }
+        if (bought && market != null)
+        {
+            market.recordPurchase(marketTown, itemId);
         }
+        GameMetrics.SHOP_BUY.record(start);
+        return bought;
+    }
+
+    /**
+     * Buys an item back from a hunter without printing anything.
+     *
+     * @param hunter The Hunter selling the item.
+     * @param item The item being sold.
+     * @return true if the hunter sold the item.
+     */
+    public boolean sell(Hunter hunter, String item)
+    {
+        return sell(hunter, Items.idOf(item));
+    }
+
+    /**
+     * Buys an item back from a hunter without printing anything or looking up its name.
+     *
+     * @param hunter The Hunter selling the item.
+     * @param itemId The id of the item being sold, from the Items registry.
+     * @return true if the hunter sold the item.
+     */
+    public boolean sell(Hunter hunter, int itemId)
+    {
+        return sell(hunter, itemId, ANY_PRICE);
+    }
+
+    /**
+     * Buys an item back from a hunter at the price they were offered, without printing anything. If the
+     * price has moved since, nothing is bought, and the hunter can be asked again at getPrice(itemId, false).
+     *
+     * @param hunter The Hunter selling the item.
+     * @param itemId The id of the item being sold, from the Items registry.
+     * @param quotedPrice The price the hunter agreed to take, from getPrice(itemId, false).
+     * @return true if the hunter sold the item; false if they couldn't, or its price changed.
+     */
+    public boolean sell(Hunter hunter, int itemId, int quotedPrice)
+    {
+        long start = GameMetrics.start();
+        int buyBackPrice = getPrice(itemId, false);
+        if (quotedPrice != ANY_PRICE && buyBackPrice != quotedPrice)
+        {
+            GameMetrics.SHOP_SELL.record(start);
+            return false;
+        }
+        boolean sold;
+        synchronized (hunter)
+        {
+            sold = hunter.sellItem(itemId, buyBackPrice);
+            if (sold)
+            {
+                hunter.recordEvent(GameEvent.SALE, itemId, buyBackPrice);
+            }
+        }
+        if (sold && stock != null)
+        {
+            stock.giveBack(itemId);
+        }
+        if (sold && market != null)
+        {
+            market.recordSale(marketTown, itemId);
+        }
+        GameMetrics.SHOP_SELL.record(start);
+        return sold;
+    }
+
+    /**
+     * @param itemId The id of the item in question.
+     * @param isBuying Whether the item is being bought or sold.
+     * @return What a hunter pays for the item, or is paid for it, right now: the market price, or in cheat
+     * mode the cheat price when buying; 0 if the shop doesn't deal in it.
+     */
+    public int getPrice(int itemId, boolean isBuying)
+    {
+        return isBuying && cheatMode ? prices.getCheatPrice(itemId) : checkMarketPrice(itemId, isBuying);
     }
 
     /**
@@ -181,82 +461,34 @@ public class Shop
      */
     public int checkMarketPrice(String item, boolean isBuying)
     {
-        if (isBuying)
-        {
-            return getCostOfItem(item, easyMode);
-        }
-        else
+        return checkMarketPrice(Items.idOf(item), isBuying);
+    }
+
+    /**
+     * Determines and returns the cost of buying or selling an item.
+     * @param itemId The id of the item in question.
+     * @param isBuying Whether the item is being bought or sold.
+     * @return The cost of buying or selling the item based on the isBuying parameter.
+     */
+    public int checkMarketPrice(int itemId, boolean isBuying)
+    {
+        int price = isBuying ? prices.getBuyPrice(itemId) : prices.getBuyBackPrice(itemId);
+        if (market == null || price == 0)
         {
-            return getBuyBackCost(item);
+            return price;
         }
+        return market.getPrice(marketTown, itemId, price);
     }
 
     /**
-     * Checks the item entered against the costs listed in the static variables.
+     * Looks the item up in the price table.
      *
      * @param item The item being checked for cost.
      * @return The cost of the item or 0 if the item is not found.
      */
     public int getCostOfItem(String item, boolean easyMode)
     {
-        if (easyMode) {
-            if (item.toLowerCase().equals("water"))
-            {
-                return waterEasy;
-            }
-            else if (item.toLowerCase().equals("rope"))
-            {
-                return ropeEasy;
-            }
-            else if (item.toLowerCase().equals("machete"))
-            {
-                return macheteEasy;
-            }
-            else if (item.toLowerCase().equals("horse"))
-            {
-                return horseEasy;
-            }
-            else if (item.toLowerCase().equals("boat"))
-            {
-                return boatEasy;
-            }
-            else if (item.toLowerCase().equals("bravery")) {
-                return braveryEasy;
-            }
-            else
-            {
-                return 0;
-            }
-        } else {
-            if (item.toLowerCase().equals("water"))
-            {
-                return WATER_COST;
-            }
-            else if (item.toLowerCase().equals("rope"))
-            {
-                return ROPE_COST;
-            }
-            else if (item.toLowerCase().equals("machete"))
-            {
-                return MACHETE_COST;
-            }
-            else if (item.toLowerCase().equals("horse"))
-            {
-                return HORSE_COST;
-            }
-            else if (item.toLowerCase().equals("boat"))
-            {
-                return BOAT_COST;
-            }
-            else if (item.toLowerCase().equals("bravery")) {
-                return BRAVERY_COST;
-            }
-            else
-            {
-                return 0;
-            }
-        }
-
+        return prices.getBuyPrice(Items.idOf(item), easyMode);
     }
 
     /**
@@ -267,7 +499,6 @@ public class Shop
      */
     public int getBuyBackCost(String item)
     {
-        int cost = (int)(getCostOfItem(item, easyMode) * markdown);
-        return cost;
+        return prices.getBuyBackPrice(Items.idOf(item));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,196 @@
+/**
+ * The ShopStock class is how many of each item a shop has left to sell.<p>
+ * Each item has its own atomic counter. Buying takes one off with a compare-and-set that never goes below
+ * zero, so two buyers can never both get the last one; selling an item back, and restocking, add to it,
+ * but never past the shop's capacity.
+ * The counters sit 64 bytes apart, so buyers of different items don't slow each other down by sharing a
+ * cache line; only the items a shop sells get one. The restock and overflow totals are only statistics,
+ * written far less often, so they are packed together. Nothing here locks, and nothing allocates after
+ * the stock is built. An item the shop doesn't sell is never in stock.<p>
+ * Shops have unlimited stock unless one is given to them; start the JVM with -Dtreasurehunter.stock=n
+ * to give every new shop n of each item, refilled by Restocker.shared().
+ */
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public class ShopStock
+{
+    /**
+     * The stock of each item every new shop starts with, from -Dtreasurehunter.stock; 0 means unlimited.
+     */
+    public static final int DEFAULT_STOCK = Integer.getInteger("treasurehunter.stock", 0);
+
+    // ints per cache line, so that each item's counter has a line to itself
+    private static final int PADDING = 16;
+
+    //instance variables
+    private final int perItem;
+    private final AtomicIntegerArray counts;
+    private final AtomicLongArray restocked;
+    private final AtomicLongArray overflowed;
+
+    //Constructor
+    /**
+     * Builds a full stock with the same number of each item the shop sells.
+     *
+     * @param perItem The most of each item the shop holds.
+     */
+    public ShopStock(int perItem)
+    {
+        this.perItem = perItem;
+        counts = new AtomicIntegerArray(Items.SHOP_ITEM_COUNT * PADDING);
+        restocked = new AtomicLongArray(Items.SHOP_ITEM_COUNT);
+        overflowed = new AtomicLongArray(Items.SHOP_ITEM_COUNT);
+        fill();
+    }
+
+    //Accessors
+    /**
+     * @return The number of an item left.
+     */
+    public int getCount(int itemId)
+    {
+        return Items.isShopItem(itemId) ? counts.get(itemId * PADDING) : 0;
+    }
+
+    /**
+     * @return The most of an item the shop holds after a restock.
+     */
+    public int getCapacity(int itemId)
+    {
+        return Items.isShopItem(itemId) ? perItem : 0;
+    }
+
+    /**
+     * @return The number of an item added by restock() since the stock was built.
+     */
+    public long getRestocked(int itemId)
+    {
+        return Items.isShopItem(itemId) ? restocked.get(itemId) : 0;
+    }
+
+    /**
+     * @return The number of an item sold back to the shop when its shelf was already full.
+     */
+    public long getOverflowed(int itemId)
+    {
+        return Items.isShopItem(itemId) ? overflowed.get(itemId) : 0;
+    }
+
+    /**
+     * Takes one of an item for a buyer.
+     *
+     * @return true if there was one to take; false if the item is sold out.
+     */
+    public boolean take(int itemId)
+    {
+        if (!Items.isShopItem(itemId))
+        {
+            return false;
+        }
+        int index = itemId * PADDING;
+        int count = counts.get(index);
+        while (count > 0)
+        {
+            int seen = counts.compareAndExchange(index, count, count - 1);
+            if (seen == count)
+            {
+                return true;
+            }
+            count = seen;
+        }
+        return false;
+    }
+
+    /**
+     * Puts one of an item back, when a hunter sells it to the shop. A full shelf stays full: the shop
+     * still buys the item, but doesn't put it up for sale again.
+     *
+     * @return true if the item went back on the shelf; false if it was full, or the shop doesn't sell it.
+     */
+    public boolean giveBack(int itemId)
+    {
+        if (!Items.isShopItem(itemId))
+        {
+            return false;
+        }
+        int index = itemId * PADDING;
+        int count = counts.get(index);
+        while (count < perItem)
+        {
+            int seen = counts.compareAndExchange(index, count, count + 1);
+            if (seen == count)
+            {
+                return true;
+            }
+            count = seen;
+        }
+        overflowed.incrementAndGet(itemId);
+        return false;
+    }
+
+    /**
+     * Delivers up to a number of each item, without going over the shop's capacity.
+     *
+     * @param delivery The most of each item to add.
+     * @return The number of items added altogether.
+     */
+    public int restock(int delivery)
+    {
+        int added = 0;
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            added += restock(itemId, delivery);
+        }
+        return added;
+    }
+
+    /**
+     * Delivers up to a number of one item, without going over the shop's capacity.
+     *
+     * @return The number added.
+     */
+    public int restock(int itemId, int delivery)
+    {
+        if (!Items.isShopItem(itemId))
+        {
+            return 0;
+        }
+        int index = itemId * PADDING;
+        int count = counts.get(index);
+        while (count < perItem)
+        {
+            int target = Math.min(perItem, count + delivery);
+            int seen = counts.compareAndExchange(index, count, target);
+            if (seen == count)
+            {
+                restocked.addAndGet(itemId, target - count);
+                return target - count;
+            }
+            count = seen;
+        }
+        return 0;
+    }
+
+    /**
+     * Sets the number of an item left, for a shop in a game loaded back in; kept within capacity.
+     */
+    public void setCount(int itemId, int count)
+    {
+        if (Items.isShopItem(itemId))
+        {
+            counts.set(itemId * PADDING, Math.max(0, Math.min(perItem, count)));
+        }
+    }
+
+    /**
+     * Fills every item up to capacity, for a shop in a newly built town.
+     */
+    public void fill()
+    {
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            counts.set(itemId * PADDING, perItem);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/**
+ * The Simulation class plays large numbers of Treasure Hunter games without a console,
+ * spread across all of the machine's cores, so that the difficulty modes can be compared.<p>
+ * Run it with: java Simulation [--seed n] [--journal directory] [--leaderboard directory] [games] [maxTurns] [mode...]<p>
+ * Game number i of a run always uses the generator GameRandom.forGame(seed, i), so a run with a fixed seed
+ * gives the same results whatever the number of threads.
+ */
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class Simulation
+{
+    // each thread gets several batches so that a slow batch doesn't leave the other cores idle
+    private static final int BATCHES_PER_THREAD = 8;
+
+    public static void main(String[] args) throws InterruptedException, IOException
+    {
+        long seed = System.nanoTime();
+        String journalDirectory = null;
+        String leaderboardDirectory = null;
+        while (args.length >= 2 && args[0].startsWith("--"))
+        {
+            if (args[0].equals("--seed"))
+            {
+                seed = Long.parseLong(args[1]);
+            }
+            else if (args[0].equals("--journal"))
+            {
+                journalDirectory = args[1];
+            }
+            else if (args[0].equals("--leaderboard"))
+            {
+                leaderboardDirectory = args[1];
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        long games = args.length > 0 ? Long.parseLong(args[0]) : 1_000_000;
+        int maxTurns = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        List<GameMode> modes = new ArrayList<>();
+        for (int i = 2; i < args.length; i++)
+        {
+            GameMode mode = GameMode.fromName(args[i]);
+            if (mode == null)
+            {
+                System.out.println("Unknown mode: " + args[i]);
+                return;
+            }
+            modes.add(mode);
+        }
+        if (modes.isEmpty())
+        {
+            modes.add(GameMode.EASY);
+            modes.add(GameMode.NORMAL);
+            modes.add(GameMode.HARD);
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        System.out.println("Simulating " + games + " games per mode on " + threads + " threads with seed " + seed);
+        EventJournal journal = journalDirectory == null ? null : new EventJournal(Path.of(journalDirectory));
+        Leaderboard leaderboard = leaderboardDirectory == null ? null : new Leaderboard(Path.of(leaderboardDirectory));
+        for (GameMode mode : modes)
+        {
+            System.out.println(run(mode, new CautiousStrategy(), seed, games, maxTurns, threads, journal, leaderboard));
+        }
+        if (journal != null)
+        {
+            journal.close();
+            System.out.println(journal.size() + " events in the journal");
+        }
+        if (leaderboard != null)
+        {
+            leaderboard.close();
+            System.out.println(leaderboard.size() + " games on the leaderboard");
+        }
+    }
+
+    /**
+     * Plays many games of one mode in parallel.
+     *
+     * @param mode The difficulty mode.
+     * @param strategy The strategy every hunter plays with.
+     * @param seed The seed the games' generators are derived from.
+     * @param games The number of games to play.
+     * @param maxTurns The number of turns after which a game is abandoned.
+     * @param threads The number of threads to play on.
+     * @return The combined results of all the games.
+     */
+    public static SimulationResult run(GameMode mode, PlayerStrategy strategy, long seed, long games, int maxTurns, int threads)
+            throws InterruptedException
+    {
+        return run(mode, strategy, seed, games, maxTurns, threads, null, null);
+    }
+
+    /**
+     * Plays many games of one mode in parallel, writing every game's events to a journal.
+     *
+     * @param journal The journal to write to, or null to not record events; game number n is written as session n.
+     */
+    public static SimulationResult run(GameMode mode, PlayerStrategy strategy, long seed, long games, int maxTurns, int threads,
+                                       EventJournal journal)
+            throws InterruptedException
+    {
+        return run(mode, strategy, seed, games, maxTurns, threads, journal, null);
+    }
+
+    /**
+     * Plays many games of one mode in parallel, writing every game's events to a journal and every
+     * finished game to a leaderboard.
+     *
+     * @param journal The journal to write to, or null to not record events; game number n is written as session n.
+     * @param leaderboard The leaderboard to add games to, or null; game number n is played by "Sim-n".
+     */
+    public static SimulationResult run(GameMode mode, PlayerStrategy strategy, long seed, long games, int maxTurns, int threads,
+                                       EventJournal journal, Leaderboard leaderboard)
+            throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            long start = System.nanoTime();
+            long batches = Math.min(games, (long) threads * BATCHES_PER_THREAD);
+            List<Future<SimulationResult>> futures = new ArrayList<>();
+            for (long batch = 0; batch < batches; batch++)
+            {
+                long first = games * batch / batches;
+                long last = games * (batch + 1) / batches;
+                futures.add(executor.submit(() -> playBatch(mode, strategy, seed, first, last, maxTurns, journal, leaderboard)));
+            }
+
+            SimulationResult result = new SimulationResult(mode, maxTurns);
+            for (Future<SimulationResult> future : futures)
+            {
+                result.merge(future.get());
+            }
+            result.setElapsedNanos(System.nanoTime() - start);
+            return result;
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("A simulated game failed", e.getCause());
+        }
+        finally
+        {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Plays games number first (inclusive) to last (exclusive) one after another on the current thread.
+     */
+    private static SimulationResult playBatch(GameMode mode, PlayerStrategy strategy, long seed, long first, long last, int maxTurns,
+                                              EventJournal journal, Leaderboard leaderboard)
+    {
+        SimulationResult result = new SimulationResult(mode, maxTurns);
+        for (long game = first; game < last; game++)
+        {
+            String name = leaderboard == null ? "Sim" : "Sim-" + game;
+            GameSession session = new GameSession(name, mode, GameRandom.forGame(seed, game));
+            Hunter hunter = session.getHunter();
+            if (journal != null)
+            {
+                hunter.setEventSink(journal.sinkFor(game));
+            }
+            result.recordGold(0, hunter.getGold());
+
+            int turn = 0;
+            while (!session.isFinished() && turn < maxTurns)
+            {
+                strategy.playTurn(session);
+                turn++;
+                result.recordGold(turn, hunter.getGold());
+            }
+            result.recordGame(session, turn);
+            if (leaderboard != null && session.isFinished())
+            {
+                leaderboard.add(session);
+            }
+        }
+        return result;
+    }
+}
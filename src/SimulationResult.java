@@ -0,0 +1,199 @@
+/**
+ * The SimulationResult class adds up the outcomes of many simulated games.<p>
+ * Each worker thread fills in its own result and the results are merged at the end,
+ * so nothing here needs to be thread-safe.
+ */
+public class SimulationResult
+{
+    //instance variables
+    private final GameMode mode;
+    private final int maxTurns;
+    private long games;
+    private long wins;
+    private long losses;
+    private long unfinished;
+    private long turnsToWinTotal;
+    private final long[] turnsToWin;
+    private final long[] goldTotalByTurn;
+    private final long[] gamesByTurn;
+    private long elapsedNanos;
+
+    //Constructor
+    /**
+     * @param mode The mode the games were played in.
+     * @param maxTurns The number of turns after which an unfinished game is abandoned.
+     */
+    public SimulationResult(GameMode mode, int maxTurns)
+    {
+        this.mode = mode;
+        this.maxTurns = maxTurns;
+        turnsToWin = new long[maxTurns + 1];
+        goldTotalByTurn = new long[maxTurns + 1];
+        gamesByTurn = new long[maxTurns + 1];
+    }
+
+    /**
+     * Records the hunter's gold after a turn, for the gold curve.
+     *
+     * @param turn The turn that was just played (0 for the start of the game).
+     * @param gold The hunter's gold after that turn.
+     */
+    public void recordGold(int turn, int gold)
+    {
+        goldTotalByTurn[turn] += gold;
+        gamesByTurn[turn]++;
+    }
+
+    /**
+     * Records how a game ended.
+     *
+     * @param session The finished (or abandoned) game.
+     * @param turns The number of turns that were played.
+     */
+    public void recordGame(GameSession session, int turns)
+    {
+        games++;
+        Hunter hunter = session.getHunter();
+        if (hunter.hasWonGame())
+        {
+            wins++;
+            turnsToWinTotal += turns;
+            turnsToWin[turns]++;
+        }
+        else if (hunter.hasLostGame())
+        {
+            losses++;
+        }
+        else
+        {
+            unfinished++;
+        }
+    }
+
+    /**
+     * Adds another result for the same mode into this one.
+     *
+     * @param other The result to add.
+     */
+    public void merge(SimulationResult other)
+    {
+        games += other.games;
+        wins += other.wins;
+        losses += other.losses;
+        unfinished += other.unfinished;
+        turnsToWinTotal += other.turnsToWinTotal;
+        for (int i = 0; i <= maxTurns; i++)
+        {
+            turnsToWin[i] += other.turnsToWin[i];
+            goldTotalByTurn[i] += other.goldTotalByTurn[i];
+            gamesByTurn[i] += other.gamesByTurn[i];
+        }
+    }
+
+    //Accessors
+    public GameMode getMode()
+    {
+        return mode;
+    }
+
+    public long getGames()
+    {
+        return games;
+    }
+
+    public long getWins()
+    {
+        return wins;
+    }
+
+    public long getLosses()
+    {
+        return losses;
+    }
+
+    public long getUnfinished()
+    {
+        return unfinished;
+    }
+
+    public double getWinRate()
+    {
+        return games == 0 ? 0 : (double) wins / games;
+    }
+
+    public double getGameOverRate()
+    {
+        return games == 0 ? 0 : (double) losses / games;
+    }
+
+    public double getAverageTurnsToWin()
+    {
+        return wins == 0 ? 0 : (double) turnsToWinTotal / wins;
+    }
+
+    /**
+     * @return The median number of turns taken by the games that were won, or 0 if none were.
+     */
+    public int getMedianTurnsToWin()
+    {
+        long seen = 0;
+        for (int turn = 0; turn <= maxTurns; turn++)
+        {
+            seen += turnsToWin[turn];
+            if (seen * 2 >= wins && wins > 0)
+            {
+                return turn;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param turn A turn number.
+     * @return The average gold of the hunters still playing at that turn.
+     */
+    public double getAverageGold(int turn)
+    {
+        return gamesByTurn[turn] == 0 ? 0 : (double) goldTotalByTurn[turn] / gamesByTurn[turn];
+    }
+
+    public int getMaxTurns()
+    {
+        return maxTurns;
+    }
+
+    public long getElapsedNanos()
+    {
+        return elapsedNanos;
+    }
+
+    public void setElapsedNanos(long elapsedNanos)
+    {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public double getGamesPerSecond()
+    {
+        return elapsedNanos == 0 ? 0 : games * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * @return A printable report of the results, including a gold curve sampled at ten points.
+     */
+    public String toString()
+    {
+        StringBuilder str = new StringBuilder();
+        str.append(String.format("%-7s %,d games in %.2f s (%,.0f games/sec)%n",
+                mode.getName(), games, elapsedNanos / 1e9, getGamesPerSecond()));
+        str.append(String.format("  win rate %.2f%%, game over rate %.2f%%, unfinished %.2f%%%n",
+                100.0 * getWinRate(), 100.0 * getGameOverRate(), games == 0 ? 0 : 100.0 * unfinished / games));
+        str.append(String.format("  turns to win: average %.1f, median %d%n", getAverageTurnsToWin(), getMedianTurnsToWin()));
+        str.append("  gold curve:");
+        int step = Math.max(1, maxTurns / 10);
+        for (int turn = 0; turn <= maxTurns; turn += step)
+        {
+            str.append(String.format(" t%d=%.1f", turn, getAverageGold(turn)));
+        }
+        return str.toString();
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * The StockStress class checks that a shop with a limited stock never sells more than it has.<p>
+ * Thousands of buyers, each a hunter on their own thread, crowd into one shop that holds only a couple
+ * of each item, while a Restocker refills it every millisecond. Buyers buy items at random and sell about
+ * half of them straight back, so the same few items change hands over and over. Each buyer counts what
+ * they bought and sold. At the end every item must add up exactly:
+ * <pre>
+ * left on the shelf = starting stock + restocked + sold back - sold back to a full shelf - bought
+ * </pre>
+ * and the hunters must be holding exactly what was bought and not sold back. Selling an item twice, or
+ * losing one, breaks the sum, and the run exits with status 1. So does a run in which no buyer ever
+ * found an item sold out, as then the buyers never competed for the last one.<p>
+ * Run it with: java StockStress [buyers] [millis] [stock]
+ */
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+public class StockStress
+{
+    // enough gold that no buyer runs out during a run
+    private static final int STARTING_GOLD = 1_000_000_000;
+
+    /**
+     * What one buyer did.
+     */
+    static class Tally
+    {
+        final long[] bought = new long[Items.SHOP_ITEM_COUNT];
+        final long[] soldBack = new long[Items.SHOP_ITEM_COUNT];
+        long soldOut;
+    }
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        int buyers = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        int perItem = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        Shop shop = GameMode.NORMAL.createShop();
+        ShopStock stock = new ShopStock(perItem);
+        shop.setStock(stock);
+        Restocker restocker = new Restocker(1, 1, 1);
+        restocker.register(stock);
+
+        Hunter[] crowd = new Hunter[buyers];
+        for (int i = 0; i < buyers; i++)
+        {
+            crowd[i] = new Hunter("Buyer-" + i, STARTING_GOLD);
+        }
+
+        System.out.println(buyers + " buyers, " + perItem + " of each item, "
+                + (SessionThreads.hasVirtualThreads() ? "virtual" : "platform") + " threads");
+        List<Tally> tallies;
+        ExecutorService executor = SessionThreads.newPerSessionExecutor("buyer");
+        try
+        {
+            tallies = shop(executor, shop, crowd, millis);
+        }
+        finally
+        {
+            executor.shutdown();
+            restocker.close();
+        }
+
+        long trades = 0;
+        long soldOut = 0;
+        for (Tally tally : tallies)
+        {
+            soldOut += tally.soldOut;
+            for (int item = 0; item < Items.SHOP_ITEM_COUNT; item++)
+            {
+                trades += tally.bought[item] + tally.soldBack[item];
+            }
+        }
+        System.out.printf("%,d trades (%,.0f/s), %,d refused as sold out, %,d items restocked%n", trades,
+                trades * 1000.0 / millis, soldOut, restocker.getDelivered());
+        boolean passed = check(stock, crowd, tallies);
+        if (soldOut == 0)
+        {
+            System.out.println("No buyer found an item sold out, so the stock was never fought over");
+            passed = false;
+        }
+        System.out.println(passed ? "No item was oversold" : "FAILED");
+        System.exit(passed ? 0 : 1);
+    }
+
+    // every buyer waits for the others to start, then trades until the time is up
+    private static List<Tally> shop(ExecutorService executor, Shop shop, Hunter[] crowd, long millis)
+            throws InterruptedException
+    {
+        CountDownLatch ready = new CountDownLatch(crowd.length);
+        CountDownLatch start = new CountDownLatch(1);
+        // set before the start signal, so every buyer stops at the same moment however late it starts
+        long[] deadline = new long[1];
+        List<Future<Tally>> futures = new ArrayList<>();
+        for (int i = 0; i < crowd.length; i++)
+        {
+            Hunter hunter = crowd[i];
+            long seed = i;
+            futures.add(executor.submit(() -> {
+                Tally tally = new Tally();
+                GameRandom random = new GameRandom(seed);
+                ready.countDown();
+                start.await();
+                while (System.nanoTime() < deadline[0])
+                {
+                    int item = random.nextInt(Items.SHOP_ITEM_COUNT);
+                    if (hunter.hasItem(item))
+                    {
+                        if (random.nextInt(2) == 0 && shop.sell(hunter, item))
+                        {
+                            tally.soldBack[item]++;
+                        }
+                    }
+                    else if (shop.buy(hunter, item))
+                    {
+                        tally.bought[item]++;
+                    }
+                    else if (shop.isSoldOut(item))
+                    {
+                        tally.soldOut++;
+                    }
+                }
+                return tally;
+            }));
+        }
+        ready.await();
+        deadline[0] = System.nanoTime() + millis * 1_000_000;
+        start.countDown();
+
+        List<Tally> tallies = new ArrayList<>();
+        try
+        {
+            for (Future<Tally> future : futures)
+            {
+                tallies.add(future.get());
+            }
+        }
+        catch (ExecutionException e)
+        {
+            throw new IllegalStateException("A buyer failed", e.getCause());
+        }
+        return tallies;
+    }
+
+    // every item on the shelf and in the hunters' kits must be accounted for
+    private static boolean check(ShopStock stock, Hunter[] crowd, List<Tally> tallies)
+    {
+        boolean passed = true;
+        for (int item = 0; item < Items.SHOP_ITEM_COUNT; item++)
+        {
+            long bought = 0;
+            long soldBack = 0;
+            for (Tally tally : tallies)
+            {
+                bought += tally.bought[item];
+                soldBack += tally.soldBack[item];
+            }
+            long held = 0;
+            for (Hunter hunter : crowd)
+            {
+                held += hunter.hasItem(item) ? 1 : 0;
+            }
+            long expected = stock.getCapacity(item) + stock.getRestocked(item) + soldBack
+                    - stock.getOverflowed(item) - bought;
+            int left = stock.getCount(item);
+            System.out.printf("%-8s bought %,9d  sold back %,9d  to a full shelf %,9d  restocked %,7d  held %,5d  left %,3d%n",
+                    Items.nameOf(item), bought, soldBack, stock.getOverflowed(item), stock.getRestocked(item), held, left);
+            if (left != expected || left < 0 || left > stock.getCapacity(item))
+            {
+                System.out.println(Items.nameOf(item) + ": " + left + " left, expected " + expected);
+                passed = false;
+            }
+            if (held != bought - soldBack)
+            {
+                System.out.println(Items.nameOf(item) + ": hunters hold " + held + ", expected " + (bought - soldBack));
+                passed = false;
+            }
+        }
+        return passed;
+    }
+}
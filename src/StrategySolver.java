@@ -0,0 +1,552 @@
+/**
+ * The StrategySolver class works out the best possible way to play each difficulty mode, and the chance
+ * of winning when playing that way.<p>
+ * The game is treated as a Markov decision process. A state is the hunter's gold, the shop items and
+ * treasures in their kit, and the town they are in (its terrain, whether it is tough, its treasure and
+ * whether that has been searched for). The actions are the ones on the menu: hunt, look for trouble,
+ * move on, buy or sell an item, or give up. Their outcomes use the same numbers as the game itself:
+ * the mode's BrawlRules, the shop's PriceTable, Town.ITEM_BREAK_CHANCE, and the chances of
+ * each kind of new town. The value of a state is the best chance of eventually winning from it, shaved
+ * by a tiny discount on every action so that the policy never settles on moves that get nowhere.<p>
+ * Values are found by value iteration. The states are split into slices that differ only in gold, and
+ * each pass updates the slices in parallel on a fork-join pool, until no value changes by more than
+ * the tolerance. Within a slice, prefix sums over gold make each brawl a constant-time update.
+ * Updates are made in place, so a pass can use values already improved by the same pass; every value
+ * stays a lower bound on the true one and the iteration still converges to it.<p>
+ * Two simplifications keep the state space small: gold above the cap counts as the cap (so the values
+ * are slightly pessimistic for very rich hunters), and hunters only move on to new towns, never back.<p>
+ * A solve is not quick. With the default cap of 100 there are about 5 million states, and the tolerance of
+ * 1e-6 takes about 1,000 passes, each costing some 45 ns per state on one core: close to four minutes per
+ * mode on a single core, and that divided by roughly the number of cores on a bigger machine. Lowering the
+ * cap doesn't help, because with less than about 100 gold the good items can't be afforded and the answer
+ * is wrong. --tolerance 1e-3 stops after about a quarter of the passes; its policy plays as well as the full
+ * one (43% of simulated normal games won either way), but the win chance it prints is low by a few points.<p>
+ * Run it with: java StrategySolver [--cap gold] [--tolerance change] [--out directory] [--check games] [mode...]
+ */
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+public class StrategySolver
+{
+    // actions, as stored in the policy table
+    public static final byte QUIT = 0;
+    public static final byte HUNT = 1;
+    public static final byte LOOK_FOR_TROUBLE = 2;
+    public static final byte MOVE = 3;
+    public static final byte BUY = 4;
+    public static final byte SELL = BUY + Items.SHOP_ITEM_COUNT;
+
+    public static final int DEFAULT_GOLD_CAP = 100;
+    public static final double DEFAULT_TOLERANCE = 1e-6;
+    // every action costs this small fraction of the chance of winning, so that moves which get nowhere
+    // (brawling when already rich, buying and selling back at the same price) never tie with real progress
+    private static final double DISCOUNT = 1 - 1e-5;
+    private static final int MAX_ITERATIONS = 100_000;
+
+    // sizes of the state dimensions other than gold
+    private static final int SHOP_KITS = 1 << Items.SHOP_ITEM_COUNT;
+    private static final int TREASURE_KITS = 8;
+    private static final int ALL_TREASURE = TREASURE_KITS - 1;
+    private static final int TERRAINS = Terrain.count();
+    private static final int TREASURES = 4;
+    private static final int NOTHING = 3;
+    private static final int SLICES = SHOP_KITS * TREASURE_KITS * TERRAINS * 2 * TREASURES * 2;
+
+    // slices per fork-join task
+    private static final int SLICES_PER_TASK = 256;
+
+    private static final byte[] POLICY_MAGIC = {'T', 'H', 'P', 'L'};
+    private static final byte POLICY_VERSION = 1;
+
+    //instance variables
+    private final GameMode mode;
+    private final int goldCap;
+    private final int golds;
+    private final double tolerance;
+    private final int[] buyPrices = new int[Items.SHOP_ITEM_COUNT];
+    private final int[] sellPrices = new int[Items.SHOP_ITEM_COUNT];
+    private final double[] terrainChances = new double[TERRAINS];
+    private final float[] values;
+    private final byte[] policy;
+    // the chance of winning on arriving in a new town, by gold, shop kit and treasure kit
+    private final float[] arrivals;
+    private int iterations;
+
+    //Constructor
+    /**
+     * @param mode The difficulty mode to solve.
+     * @param goldCap The most gold tracked; more than this counts as this much.
+     * @param tolerance The largest change in a value that still counts as converged.
+     */
+    public StrategySolver(GameMode mode, int goldCap, double tolerance)
+    {
+        this.mode = mode;
+        this.goldCap = goldCap;
+        this.tolerance = tolerance;
+        golds = goldCap + 1;
+        values = new float[SLICES * golds];
+        policy = new byte[SLICES * golds];
+        arrivals = new float[SHOP_KITS * TREASURE_KITS * golds];
+
+        PriceTable prices = mode.createShop().getPriceTable();
+        for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+        {
+            buyPrices[itemId] = mode.isCheatMode() ? prices.getCheatPrice(itemId) : prices.getBuyPrice(itemId);
+            sellPrices[itemId] = prices.getBuyBackPrice(itemId);
+        }
+
+        // Town.getNewTerrain picks terrain k when a roll of (0..1) * 6.5 + 1 lands in (k, k + 1], with the last one taking the rest
+        for (int terrain = 0; terrain < TERRAINS; terrain++)
+        {
+            double low = Math.max(terrain, 1);
+            double high = terrain == TERRAINS - 1 ? 7.5 : Math.min(terrain + 1, 7.5);
+            terrainChances[terrain] = Math.max(0, high - low) / 6.5;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        int goldCap = DEFAULT_GOLD_CAP;
+        double tolerance = DEFAULT_TOLERANCE;
+        Path out = null;
+        long checkGames = 0;
+        List<GameMode> modes = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("--cap"))
+            {
+                goldCap = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("--tolerance"))
+            {
+                tolerance = Double.parseDouble(args[++i]);
+            }
+            else if (args[i].equals("--out"))
+            {
+                out = Path.of(args[++i]);
+            }
+            else if (args[i].equals("--check"))
+            {
+                checkGames = Long.parseLong(args[++i]);
+            }
+            else if (GameMode.fromName(args[i]) != null)
+            {
+                modes.add(GameMode.fromName(args[i]));
+            }
+            else
+            {
+                System.out.println("Unknown mode: " + args[i]);
+                return;
+            }
+        }
+        if (modes.isEmpty())
+        {
+            modes.addAll(Arrays.asList(GameMode.EASY, GameMode.NORMAL, GameMode.HARD));
+        }
+
+        for (GameMode mode : modes)
+        {
+            StrategySolver solver = new StrategySolver(mode, goldCap, tolerance);
+            long start = System.nanoTime();
+            solver.solve();
+            System.out.printf("%-7s best win chance %.4f (%,d states, %d passes, %.2f s)%n", mode.getName(),
+                    solver.getStartingWinChance(), solver.values.length, solver.iterations, (System.nanoTime() - start) / 1e9);
+
+            if (out != null)
+            {
+                Files.createDirectories(out);
+                Path file = out.resolve("policy-" + mode.getName() + ".bin");
+                try (OutputStream stream = Files.newOutputStream(file))
+                {
+                    solver.writePolicy(stream);
+                }
+                System.out.println("  policy written to " + file);
+            }
+            if (checkGames > 0)
+            {
+                int threads = Runtime.getRuntime().availableProcessors();
+                SimulationResult result = Simulation.run(mode, solver.getStrategy(), 1, checkGames, 2000, threads);
+                System.out.printf("  simulated with the policy: win rate %.4f over %,d games%n", result.getWinRate(), result.getGames());
+            }
+        }
+    }
+
+    /**
+     * Runs value iteration until the values converge.
+     */
+    public void solve()
+    {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        for (int slice = 0; slice < SLICES; slice++)
+        {
+            if (treasureKit(slice) == ALL_TREASURE)
+            {
+                Arrays.fill(values, slice * golds, (slice + 1) * golds, 1f);
+            }
+        }
+
+        double change = Double.MAX_VALUE;
+        iterations = 0;
+        while (change > tolerance && iterations < MAX_ITERATIONS)
+        {
+            updateArrivals();
+            change = pool.invoke(new Pass(0, SLICES));
+            iterations++;
+        }
+    }
+
+    //Accessors
+    public GameMode getMode()
+    {
+        return mode;
+    }
+
+    public int getGoldCap()
+    {
+        return goldCap;
+    }
+
+    public int getIterations()
+    {
+        return iterations;
+    }
+
+    /**
+     * @return The best chance of winning a new game of this mode.
+     */
+    public double getStartingWinChance()
+    {
+        return arrivals[arrivalIndex(Math.min(mode.getStartingGold(), goldCap), 0, 0)];
+    }
+
+    /**
+     * @param session A game of this solver's mode.
+     * @return The best chance of winning from where the game is now.
+     */
+    public double getWinChance(GameSession session)
+    {
+        return values[stateIndex(session)];
+    }
+
+    /**
+     * @param session A game of this solver's mode.
+     * @return The best action to take now, one of the action constants.
+     */
+    public byte getBestAction(GameSession session)
+    {
+        return policy[stateIndex(session)];
+    }
+
+    /**
+     * @return A strategy that plays by the solved policy.
+     */
+    public PlayerStrategy getStrategy()
+    {
+        return session -> {
+            byte action = getBestAction(session);
+            if (action == HUNT)
+            {
+                session.huntForTreasure();
+            }
+            else if (action == LOOK_FOR_TROUBLE)
+            {
+                session.lookForTrouble();
+            }
+            else if (action == MOVE)
+            {
+                session.move();
+            }
+            else if (action >= BUY && action < SELL)
+            {
+                session.buy(Items.nameOf(action - BUY));
+            }
+            else if (action >= SELL)
+            {
+                session.sell(Items.nameOf(action - SELL));
+            }
+            else
+            {
+                session.quit();
+            }
+        };
+    }
+
+    /**
+     * Writes the policy as a lookup table: the magic "THPL", a version byte, the mode's name, the gold cap,
+     * then one action byte per state in state-index order (gold varies fastest, then whether the treasure
+     * was searched, the town's treasure, toughness, terrain, treasure kit and shop kit).
+     *
+     * @param stream Where to write the policy.
+     */
+    public void writePolicy(OutputStream stream) throws IOException
+    {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.write(POLICY_MAGIC);
+        out.writeByte(POLICY_VERSION);
+        out.writeUTF(mode.getName());
+        out.writeInt(goldCap);
+        out.writeInt(policy.length);
+        out.write(policy);
+        out.flush();
+    }
+
+    private int stateIndex(GameSession session)
+    {
+        Hunter hunter = session.getHunter();
+        Town town = session.getCurrentTown();
+        long kit = hunter.getKitMask();
+        int slice = slice((int) (kit & (SHOP_KITS - 1)), (int) (kit >>> Items.BANANA) & ALL_TREASURE,
+                town.getTerrain().getId(), town.isToughTown() ? 1 : 0, town.getGeneratedTreasure() - 1,
+                town.hasSearchedForTreasure() ? 1 : 0);
+        return slice * golds + Math.min(hunter.getGold(), goldCap);
+    }
+
+    private static int slice(int shopKit, int treasureKit, int terrain, int tough, int treasure, int searched)
+    {
+        return ((((shopKit * TREASURE_KITS + treasureKit) * TERRAINS + terrain) * 2 + tough) * TREASURES + treasure) * 2 + searched;
+    }
+
+    private static int searched(int slice)
+    {
+        return slice % 2;
+    }
+
+    private static int treasure(int slice)
+    {
+        return slice / 2 % TREASURES;
+    }
+
+    private static int tough(int slice)
+    {
+        return slice / (2 * TREASURES) % 2;
+    }
+
+    private static int terrain(int slice)
+    {
+        return slice / (4 * TREASURES) % TERRAINS;
+    }
+
+    private static int treasureKit(int slice)
+    {
+        return slice / (4 * TREASURES * TERRAINS) % TREASURE_KITS;
+    }
+
+    private static int shopKit(int slice)
+    {
+        return slice / (4 * TREASURES * TERRAINS * TREASURE_KITS);
+    }
+
+    private int arrivalIndex(int gold, int shopKit, int treasureKit)
+    {
+        return (shopKit * TREASURE_KITS + treasureKit) * golds + gold;
+    }
+
+    // works out the chance of winning on arriving in a new, unsearched town, averaged over every kind of town
+    private void updateArrivals()
+    {
+        double toughness = mode.getToughness();
+        IntStream.range(0, SHOP_KITS * TREASURE_KITS).parallel().forEach(kits -> {
+            int shopKit = kits / TREASURE_KITS;
+            int treasureKit = kits % TREASURE_KITS;
+            for (int gold = 0; gold < golds; gold++)
+            {
+                double value = 0;
+                for (int terrain = 0; terrain < TERRAINS; terrain++)
+                {
+                    if (terrainChances[terrain] == 0)
+                    {
+                        continue;
+                    }
+                    for (int tough = 0; tough < 2; tough++)
+                    {
+                        double chance = terrainChances[terrain] * (tough == 1 ? toughness : 1 - toughness) / TREASURES;
+                        for (int treasure = 0; treasure < TREASURES; treasure++)
+                        {
+                            value += chance * values[slice(shopKit, treasureKit, terrain, tough, treasure, 0) * golds + gold];
+                        }
+                    }
+                }
+                arrivals[arrivalIndex(gold, shopKit, treasureKit)] = (float) value;
+            }
+        });
+    }
+
+    /**
+     * One pass of value iteration over a range of slices; returns the largest change it made.
+     */
+    private class Pass extends RecursiveTask<Double>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int first;
+        private final int last;
+
+        Pass(int first, int last)
+        {
+            this.first = first;
+            this.last = last;
+        }
+
+        protected Double compute()
+        {
+            if (last - first > SLICES_PER_TASK)
+            {
+                int middle = (first + last) >>> 1;
+                Pass left = new Pass(first, middle);
+                left.fork();
+                double right = new Pass(middle, last).compute();
+                return Math.max(left.join(), right);
+            }
+
+            double change = 0;
+            double[] prefix = new double[golds + 1];
+            for (int slice = first; slice < last; slice++)
+            {
+                if (treasureKit(slice) != ALL_TREASURE)
+                {
+                    change = Math.max(change, updateSlice(slice, prefix));
+                }
+            }
+            return change;
+        }
+    }
+
+    private double updateSlice(int slice, double[] prefix)
+    {
+        int base = slice * golds;
+        int shopKit = shopKit(slice);
+        int treasureKit = treasureKit(slice);
+        int terrain = terrain(slice);
+        int tough = tough(slice);
+        int treasure = treasure(slice);
+        boolean searched = searched(slice) == 1;
+
+        for (int gold = 0; gold < golds; gold++)
+        {
+            prefix[gold + 1] = prefix[gold] + values[base + gold];
+        }
+
+        BrawlRules rules = mode.getBrawlRules();
+        double brawlChance = rules.getNoTroubleChance(tough == 1);
+        double winChance = rules.isAlwaysWin() ? 1 : 1 - brawlChance;
+        int winMin = rules.getWinGoldMin();
+        int winMax = rules.getWinGoldMax();
+        int lossMin = rules.getLossGoldMin();
+        int lossMax = rules.getLossGoldMax();
+        int neededItem = Terrain.byId(terrain).getNeededItemId();
+        boolean canMove = (shopKit & (1 << neededItem)) != 0;
+
+        double change = 0;
+        for (int gold = 0; gold < golds; gold++)
+        {
+            double best = 0;
+            byte bestAction = QUIT;
+
+            if (!searched)
+            {
+                double value;
+                int bit = treasure == NOTHING ? 0 : 1 << treasure;
+                if (bit != 0 && gold >= 1 && (treasureKit & bit) == 0)
+                {
+                    int newKit = treasureKit | bit;
+                    value = newKit == ALL_TREASURE ? 1 : values[slice(shopKit, newKit, terrain, tough, treasure, 1) * golds + gold];
+                }
+                else
+                {
+                    value = values[(slice + 1) * golds + gold];
+                }
+                value *= DISCOUNT;
+                if (value > best)
+                {
+                    best = value;
+                    bestAction = HUNT;
+                }
+            }
+
+            if (canMove)
+            {
+                double value = (1 - Town.ITEM_BREAK_CHANCE) * arrivals[arrivalIndex(gold, shopKit, treasureKit)]
+                        + Town.ITEM_BREAK_CHANCE * arrivals[arrivalIndex(gold, shopKit & ~(1 << neededItem), treasureKit)];
+                value *= DISCOUNT;
+                if (value > best)
+                {
+                    best = value;
+                    bestAction = MOVE;
+                }
+            }
+
+            for (int itemId = 0; itemId < Items.SHOP_ITEM_COUNT; itemId++)
+            {
+                int bit = 1 << itemId;
+                double value = -1;
+                byte action = QUIT;
+                if ((shopKit & bit) == 0 && buyPrices[itemId] > 0 && gold >= buyPrices[itemId])
+                {
+                    value = values[slice(shopKit | bit, treasureKit, terrain, tough, treasure, searched ? 1 : 0) * golds
+                            + gold - buyPrices[itemId]];
+                    action = (byte) (BUY + itemId);
+                }
+                else if ((shopKit & bit) != 0 && sellPrices[itemId] > 0)
+                {
+                    value = values[slice(shopKit & ~bit, treasureKit, terrain, tough, treasure, searched ? 1 : 0) * golds
+                            + Math.min(gold + sellPrices[itemId], goldCap)];
+                    action = (byte) (SELL + itemId);
+                }
+                value *= DISCOUNT;
+                if (value > best)
+                {
+                    best = value;
+                    bestAction = action;
+                }
+            }
+
+            // a brawl: gold won past the cap counts as the cap, and losing everything ends the game
+            double won;
+            int low = gold + winMin;
+            int high = gold + winMax;
+            if (low > goldCap)
+            {
+                won = (high - low + 1) * prefix(prefix, goldCap, goldCap);
+            }
+            else
+            {
+                int top = Math.min(high, goldCap);
+                won = prefix(prefix, low, top) + (high - top) * values[base + goldCap];
+            }
+            won /= (winMax - winMin + 1);
+            double lost = prefix(prefix, Math.max(gold - lossMax, 1), gold - lossMin) / (lossMax - lossMin + 1);
+            double trouble = (1 - brawlChance) * values[base + gold]
+                    + brawlChance * (winChance * won + (1 - winChance) * lost);
+            trouble *= DISCOUNT;
+            if (trouble > best)
+            {
+                best = trouble;
+                bestAction = LOOK_FOR_TROUBLE;
+            }
+
+            change = Math.max(change, best - values[base + gold]);
+            values[base + gold] = (float) best;
+            policy[base + gold] = bestAction;
+        }
+        return change;
+    }
+
+    // the sum of the slice's values from gold low to gold high, both included
+    private static double prefix(double[] prefix, int low, int high)
+    {
+        if (high < low)
+        {
+            return 0;
+        }
+        return prefix[high + 1] - prefix[low];
+    }
+}
@@ -1,25 +1,64 @@
 /**
- * The Terrain class is designed to represent the zones between the towns in the Treasure Hunter game.
+ * The Terrain class is designed to represent the zones between the towns in the Treasure Hunter game.<p>
+ * There are only six kinds of terrain, so each one is a single shared, unchanging object; towns refer to
+ * these instead of making their own.
  * This code has been adapted from Ivan Turner's original program -- thank you Mr. Turner!
  */
 public class Terrain
 {
+    public static final Terrain MOUNTAINS = new Terrain(0, "Mountains", "Rope");
+    public static final Terrain OCEAN = new Terrain(1, "Ocean", "Boat");
+    public static final Terrain PLAINS = new Terrain(2, "Plains", "Horse");
+    public static final Terrain DESERT = new Terrain(3, "Desert", "Water");
+    public static final Terrain JUNGLE = new Terrain(4, "Jungle", "Machete");
+    public static final Terrain HIGHWAY = new Terrain(5, "I-95", "Bravery");
+
+    // every terrain, indexed by id
+    private static final Terrain[] ALL = {MOUNTAINS, OCEAN, PLAINS, DESERT, JUNGLE, HIGHWAY};
+
     //instance variables
-    private String terrainName;
-    private String neededItem;
+    private final int id;
+    private final String terrainName;
+    private final String neededItem;
+    private final int neededItemId;
 
     /**
      * Sets the class member variables
+     * @param id The terrain's position in the list of terrains.
      * @param name The name of the zone.
      * @param item The item needed in order to cross the zone.
      */
-    public Terrain(String name, String item)
+    private Terrain(int id, String name, String item)
     {
+        this.id = id;
         terrainName = name;
         neededItem = item.toLowerCase();
+        neededItemId = Items.idOf(item);
+    }
+
+    /**
+     * @param id A terrain id, from 0 to count() - 1.
+     * @return The terrain with that id.
+     */
+    public static Terrain byId(int id)
+    {
+        return ALL[id];
+    }
+
+    /**
+     * @return The number of kinds of terrain.
+     */
+    public static int count()
+    {
+        return ALL.length;
     }
 
     //Accessors
+    public int getId()
+    {
+        return id;
+    }
+
     public String getTerrainName()
     {
         return terrainName;
@@ -30,6 +69,11 @@ public class Terrain
         return neededItem;
     }
 
+    public int getNeededItemId()
+    {
+        return neededItemId;
+    }
+
     /**
      * Guards against a hunter crossing the zone without the proper item.
      * Searches the hunter's inventory for the proper item and determines whether or not the hunter can cross.
@@ -39,7 +83,7 @@ public class Terrain
      */
     public boolean canCrossTerrain(Hunter hunter)
     {
-        if(hunter.hasItemInKit(neededItem))
+        if(hunter.hasItem(neededItemId))
         {
             return true;
         }
@@ -51,4 +95,4 @@ public class Terrain
     {
         return terrainName + " needs a(n) " + neededItem + " to cross.";
     }
-}
\ No newline at end of file
+}
@@ -1,20 +1,351 @@
 /**
  * The Town Class is where it all happens.
  * The Town is designed to manage all of the things a Hunter can do in town.
- * This code has been adapted from Ivan Turner's original program -- thank you Mr. Turner!
+ * This code has been adapted from Ivan Turner's original program -- thank you Mr. Turner!<p>
+ * What a hunter does in town is kept in a Visit: their latest news, whether they have searched for the
+ * treasure, and the generator their brawls and broken items are drawn from. A town played by one hunter
+ * (the way GameSession plays it) uses the town's own visit through hunterArrives() and the action methods
+ * here. A town can also be shared: any number of hunters can be in it at once through visit(), each with
+ * their own Visit, while the town itself (its terrain, toughness, treasure and shop) is only read. A shared
+ * town must not be rebuilt, and each Visit is played by one thread at a time. Everything that changes a
+ * hunter's gold or kit, here or in the shop, locks the hunter, so a hunter can brawl on one thread while
+ * trading on another, and no lock is shared between hunters.<p>
+ * A hunter who leaves a shared town without having searched it is forgotten, as coming back would give them
+ * the same visit anyway; the visits of those who searched are kept until the town is rebuilt.
  */
+import java.util.concurrent.ConcurrentHashMap;
+
 public class Town
 {
+    // the chance that the item used to cross the terrain breaks
+    public static final double ITEM_BREAK_CHANCE = 0.5;
+
+    // what the latest news is about; its text is only built when someone asks for it
+    private static final int NO_NEWS = 0;
+    private static final int CUSTOM_NEWS = 1;
+    private static final int WELCOME = 2;
+    private static final int CROSSED = 3;
+    private static final int CROSSED_AND_BROKE = 4;
+    private static final int CANT_LEAVE = 5;
+    private static final int NO_TROUBLE = 6;
+    private static final int BRAWL_WON = 7;
+    private static final int BRAWL_LOST = 8;
+    private static final int TREASURE_FOUND = 9;
+    private static final int TREASURE_DISCARDED = 10;
+    private static final int NOTHING_FOUND = 11;
+    private static final int ALREADY_SEARCHED = 12;
+
+    // indexed by generatedTreasure
+    private static final String[] TREASURES = {"", "Banana", "Twig", "Spoon"};
+    private static final String[] TREASURE_USES = {"", "eat", "beat", "dig"};
+
+    /**
+     * One hunter's time in a town.
+     */
+    public class Visit
+    {
+        //instance variables
+        private Hunter hunter;
+        private final GameRandom random;
+        private boolean foundTreasure;
+        private int news;
+        // the gold won or lost, or the treasure found, that the news is about
+        private int newsAmount;
+        // the news as text; null until getLatestNews() builds it
+        private String printMessage;
+        private volatile boolean present;
+
+        //Constructor
+        /**
+         * @param hunter The visiting Hunter, or null until one arrives.
+         * @param random The source of random numbers for what happens to this hunter.
+         */
+        private Visit(Hunter hunter, GameRandom random)
+        {
+            this.hunter = hunter;
+            this.random = random;
+            setNews(NO_NEWS, 0);
+        }
+
+        //Accessors
+        public Hunter getHunter()
+        {
+            return hunter;
+        }
+
+        public Town getTown()
+        {
+            return Town.this;
+        }
+
+        /**
+         * @return true until the hunter leaves.
+         */
+        public boolean isPresent()
+        {
+            return present;
+        }
+
+        public boolean hasSearchedForTreasure()
+        {
+            return foundTreasure;
+        }
+
+        /**
+         * @return What just happened to the hunter in town, as text. The text is built the first time it's asked for.
+         */
+        public String getLatestNews()
+        {
+            if (printMessage == null)
+            {
+                printMessage = renderNews();
+            }
+            return printMessage;
+        }
+
+        public void setLatestNews(String news)
+        {
+            this.news = CUSTOM_NEWS;
+            printMessage = news;
+        }
+
+        /**
+         * Marks the town's treasure as already searched for by this hunter.
+         */
+        public void markTreasureSearched()
+        {
+            foundTreasure = true;
+        }
+
+        /**
+         * Takes the hunter out of town. If they have searched for the treasure, their visit is kept, so if they
+         * come back they can't search again.
+         */
+        public void leave()
+        {
+            present = false;
+            ConcurrentHashMap<Hunter, Visit> visits = Town.this.visits;
+            if (visits != null && !foundTreasure)
+            {
+                // nothing to remember: coming back would start a visit just like this one
+                visits.remove(hunter, this);
+            }
+        }
+
+        public void enterShop(String choice, GameIO io)
+        {
+            shop.enter(hunter, choice, io);
+        }
+
+        /**
+         * Handles the action of the Hunter leaving the town.
+         * @return true if the Hunter was able to leave town.
+         */
+        public boolean leaveTown()
+        {
+            long start = GameMetrics.start();
+            boolean canLeaveTown;
+            synchronized (hunter)
+            {
+                canLeaveTown = terrain.canCrossTerrain(hunter);
+                if (canLeaveTown)
+                {
+                    setNews(CROSSED, 0);
+                    hunter.recordEvent(GameEvent.CROSSING, terrain.getNeededItemId(), 0);
+                    if (checkItemBreak())
+                    {
+                        hunter.removeItem(terrain.getNeededItemId());
+                        setNews(CROSSED_AND_BROKE, 0);
+                        hunter.recordEvent(GameEvent.ITEM_BROKEN, terrain.getNeededItemId(), 0);
+                    }
+                }
+                else
+                {
+                    setNews(CANT_LEAVE, 0);
+                }
+            }
+
+            GameMetrics.LEAVE_TOWN.record(start);
+            return canLeaveTown;
+        }
+
+        /**
+         * Gives the hunter a chance to fight for some gold; see Town.lookForTrouble().
+         */
+        public void lookForTrouble()
+        {
+            long start = GameMetrics.start();
+            BrawlRules rules = mode.getBrawlRules();
+            double noTroubleChance = rules.getNoTroubleChance(toughTown);
+
+            if (random.nextDouble() > noTroubleChance)
+            {
+                setNews(NO_TROUBLE, 0);
+            }
+            else
+            {
+                synchronized (hunter)
+                {
+                    int goldDiff = rules.rollWinGold(random);
+
+                    if (random.nextDouble() > noTroubleChance || rules.isAlwaysWin())
+                    {
+                        setNews(BRAWL_WON, goldDiff);
+                        hunter.changeGold(goldDiff);
+                        hunter.recordEvent(GameEvent.BRAWL_WON, Items.NONE, goldDiff);
+                    }
+                    else
+                    {
+                        if (rules.hasSeparateLossRoll()) {
+                            goldDiff = rules.rollLossGold(random);
+                        }
+                        setNews(BRAWL_LOST, goldDiff);
+                        int goldBefore = hunter.getGold();
+                        hunter.changeGold(-1 * goldDiff);
+                        // gold never goes below 0, so the hunter may have lost less than the brawl was worth
+                        hunter.recordEvent(GameEvent.BRAWL_LOST, Items.NONE, hunter.getGold() - goldBefore);
+                        if (hunter.getGold() == 0) {
+                            hunter.loseGame();
+                        }
+                    }
+                }
+            }
+            GameMetrics.LOOK_FOR_TROUBLE.record(start);
+        }
+
+        /**
+         * Lets the hunter search for the town's treasure; see Town.huntForTreasure().
+         */
+        public void huntForTreasure() {
+            long start = GameMetrics.start();
+            synchronized (hunter) {
+                if (!foundTreasure) {
+                    boolean found = false;
+                    if (generatedTreasure == 1) {
+                        if (hunter.buyItem(Items.BANANA, 1)) {
+                            found = true;
+                            hunter.changeGold(1);
+                            hunter.recordEvent(GameEvent.TREASURE_FOUND, Items.BANANA, 0);
+                            hunter.addToHuntedItemTotal(1);
+                        }
+                    } else if (generatedTreasure == 2) {
+                        if (hunter.buyItem(Items.TWIG, 1)) {
+                            found = true;
+                            hunter.changeGold(1);
+                            hunter.recordEvent(GameEvent.TREASURE_FOUND, Items.TWIG, 0);
+                            hunter.addToHuntedItemTotal(2);
+                        }
+                    } else if (generatedTreasure == 3) {
+                        if (hunter.buyItem(Items.SPOON, 1)) {
+                            found = true;
+                            hunter.changeGold(1);
+                            hunter.recordEvent(GameEvent.TREASURE_FOUND, Items.SPOON, 0);
+                            hunter.addToHuntedItemTotal(3);
+                        }
+                    }
+
+                    if (generatedTreasure == 4) {
+                        setNews(NOTHING_FOUND, 0);
+                    } else if (found) {
+                        setNews(TREASURE_FOUND, generatedTreasure);
+                    } else {
+                        setNews(TREASURE_DISCARDED, generatedTreasure);
+                    }
+
+                    if (hunter.getHuntedItemTotal() == 6) {
+                        hunter.winGame();
+                    }
+
+                    foundTreasure = true;
+                } else {
+                    setNews(ALREADY_SEARCHED, 0);
+                }
+            }
+            GameMetrics.HUNT_FOR_TREASURE.record(start);
+        }
+
+        // a hunter arriving, or a town being rebuilt around its own visit
+        private void reset(Hunter hunter)
+        {
+            this.hunter = hunter;
+            foundTreasure = false;
+            setNews(NO_NEWS, 0);
+        }
+
+        private void welcome()
+        {
+            present = true;
+            setNews(WELCOME, 0);
+        }
+
+        // records what happened without building any text, so a simulated turn doesn't allocate
+        private void setNews(int news, int amount)
+        {
+            this.news = news;
+            newsAmount = amount;
+            printMessage = null;
+        }
+
+        private String renderNews()
+        {
+            switch (news)
+            {
+                case WELCOME:
+                    return "Welcome to town, " + hunter.getHunterName() + "."
+                            + (toughTown ? "\nIt's pretty rough around here, so watch yourself."
+                                         : "\nWe're just a sleepy little town with mild mannered folk.");
+                case CROSSED:
+                    return "You used your " + terrain.getNeededItem() + " to cross the " + terrain.getTerrainName() + ".";
+                case CROSSED_AND_BROKE:
+                    return "You used your " + terrain.getNeededItem() + " to cross the " + terrain.getTerrainName() + "."
+                            + "\nUnfortunately, your " + terrain.getNeededItem() + " broke.";
+                case CANT_LEAVE:
+                    return "You can't leave town, " + hunter.getHunterName() + ". You don't have a " + terrain.getNeededItem() + ".";
+                case NO_TROUBLE:
+                    return "You couldn't find any trouble";
+                case BRAWL_WON:
+                    return brawlMessage() + "Okay, stranger! You proved yer mettle. Here, take my gold."
+                            + "\nYou won the brawl and receive " + newsAmount + " gold.";
+                case BRAWL_LOST:
+                    return brawlMessage() + "That'll teach you to go lookin' fer trouble in MY town! Now pay up!"
+                            + "\nYou lost the brawl and pay " + newsAmount + " gold.";
+                case TREASURE_FOUND:
+                    return "You found a " + TREASURES[newsAmount] + "! This will be a good tool to "
+                            + TREASURE_USES[newsAmount] + " with.";
+                case TREASURE_DISCARDED:
+                    return "You already have a " + TREASURES[newsAmount] + " so you discard it.";
+                case NOTHING_FOUND:
+                    return "You found nothing! Congrats!";
+                case ALREADY_SEARCHED:
+                    return "You already searched for treasure in this town!";
+                default:
+                    return "";
+            }
+        }
+
+        /**
+         * Determines whether or not a used item has broken.
+         * @return true if the item broke.
+         */
+        private boolean checkItemBreak()
+        {
+            double rand = random.nextDouble();
+            return (rand < ITEM_BREAK_CHANCE);
+        }
+    }
+
     //instance variables
-    private Hunter hunter;
     private Shop shop;
     private Terrain terrain;
-    private String printMessage;
     private boolean toughTown;
     private int generatedTreasure;
-    private boolean foundTreasure;
-    private String mode;
+    private GameMode mode;
     private int brawlAnimation;
+    private GameRandom random;
+    // the visit of the hunter who arrived through hunterArrives()
+    private final Visit visit;
+    // the hunters who have come through visit(); made when the first one arrives
+    private volatile ConcurrentHashMap<Hunter, Visit> visits;
 
     //Constructor
     /**
@@ -23,32 +354,106 @@ public class Town
      * @param t The surrounding terrain.
      */
     public Town(Shop shop, double toughness, String mode)
+    {
+        this(shop, toughness, mode, new GameRandom());
+    }
+
+    /**
+     * Builds a town whose layout and events are drawn from the given generator.
+     * @param shop The town's shoppe.
+     * @param toughness The chance of this being a tough town.
+     * @param mode The game mode.
+     * @param random The game's source of random numbers.
+     */
+    public Town(Shop shop, double toughness, String mode, GameRandom random)
+    {
+        this(shop, toughness, GameMode.forTown(mode), random, random);
+    }
+
+    /**
+     * Builds a town whose layout (terrain, toughness, treasure) comes from one generator and whose
+     * events (brawls, broken items) come from another, so the same town can be rebuilt from its seed.
+     * @param shop The town's shoppe.
+     * @param toughness The chance of this being a tough town.
+     * @param mode The game mode, whose brawl rules the town plays by.
+     * @param layout The generator the town's layout is drawn from.
+     * @param events The game's source of random numbers for what happens in town.
+     */
+    public Town(Shop shop, double toughness, GameMode mode, GameRandom layout, GameRandom events)
     {
         this.shop = shop;
-        this.terrain = getNewTerrain();
+        this.random = events;
         this.mode = mode;
+        visit = new Visit(null, events);
+        build(toughness, layout);
+    }
+
+    /**
+     * Turns this town into a different one, keeping its shop, mode and source of events, so that a world
+     * can reuse its towns instead of creating new ones. The town ends up just as the constructor would build it.
+     * @param toughness The chance of this being a tough town.
+     * @param layout The generator the town's layout is drawn from.
+     */
+    public void rebuild(double toughness, GameRandom layout)
+    {
+        build(toughness, layout);
+        // a different town hasn't been visited by anyone
+        visits = null;
+        // a different town's shop starts with full shelves
+        ShopStock stock = shop.getStock();
+        if (stock != null)
+        {
+            stock.fill();
+        }
+    }
+
+    private void build(double toughness, GameRandom layout)
+    {
+        terrain = getNewTerrain(layout);
 
         // the hunter gets set using the hunterArrives method, which
         // gets called from a client class
-        hunter = null;
-
-        printMessage = "";
+        visit.reset(null);
 
-        generateTreasure();
-        foundTreasure = false;
+        generateTreasure(layout);
 
         // higher toughness = more likely to be a tough town
-        toughTown = (Math.random() < toughness);
+        toughTown = (layout.nextDouble() < toughness);
+
+        brawlAnimation = (int) (layout.nextDouble() * 5) + 1;
+    }
 
-        brawlAnimation = (int) (Math.random() * 5) + 1;
+    /**
+     * Rebuilds a town exactly as it was, for example from a saved snapshot. The hunter still has to arrive.
+     * @param shop The town's shoppe.
+     * @param terrain The surrounding terrain.
+     * @param toughTown true if this is a tough town.
+     * @param generatedTreasure The treasure hidden in town, from 1 to 4.
+     * @param foundTreasure true if the treasure has been searched for.
+     * @param mode The game mode.
+     * @param brawlAnimation Which brawl message the town uses, from 1 to 5.
+     * @param events The game's source of random numbers for what happens in town.
+     */
+    public Town(Shop shop, Terrain terrain, boolean toughTown, int generatedTreasure, boolean foundTreasure,
+                GameMode mode, int brawlAnimation, GameRandom events)
+    {
+        this.shop = shop;
+        this.terrain = terrain;
+        this.toughTown = toughTown;
+        this.generatedTreasure = generatedTreasure;
+        this.mode = mode;
+        this.brawlAnimation = brawlAnimation;
+        this.random = events;
+        visit = new Visit(null, events);
+        visit.foundTreasure = foundTreasure;
     }
 
     public String getLatestNews()
     {
-        return printMessage;
+        return visit.getLatestNews();
     }
     public void setLatestNews(String news) {
-        printMessage = news;
+        visit.setLatestNews(news);
     }
 
     /**
@@ -57,17 +462,70 @@ public class Town
      */
     public void hunterArrives(Hunter hunter)
     {
-        this.hunter = hunter;
-        printMessage = "Welcome to town, " + hunter.getHunterName() + ".";
+        visit.hunter = hunter;
+        visit.welcome();
+    }
+
+    /**
+     * Puts a hunter back in town without the welcome message, for example when a saved game is resumed.
+     * @param hunter The returning Hunter.
+     */
+    public void hunterReturns(Hunter hunter)
+    {
+        visit.hunter = hunter;
+        visit.present = true;
+    }
 
-        if (toughTown)
+    /**
+     * Takes the town's own hunter out of town when they move on; they stay assigned so the news can still be read.
+     */
+    public void hunterLeaves()
+    {
+        visit.leave();
+    }
+
+    /**
+     * Lets a hunter into a shared town alongside everyone else there. A hunter who comes back gets their
+     * old visit back, so the treasure can still only be searched for once.
+     * @param hunter The arriving Hunter.
+     * @param events The hunter's own source of random numbers for what happens in town.
+     * @return The hunter's visit, welcomed to town.
+     */
+    public Visit visit(Hunter hunter, GameRandom events)
+    {
+        ConcurrentHashMap<Hunter, Visit> visits = this.visits;
+        if (visits == null)
         {
-            printMessage += "\nIt's pretty rough around here, so watch yourself.";
+            synchronized (this)
+            {
+                visits = this.visits;
+                if (visits == null)
+                {
+                    visits = new ConcurrentHashMap<>();
+                    this.visits = visits;
+                }
+            }
         }
-        else
+        Visit arrival = visits.computeIfAbsent(hunter, h -> new Visit(h, events));
+        arrival.welcome();
+        return arrival;
+    }
+
+    /**
+     * @return The number of hunters in town right now, counting the town's own hunter.
+     */
+    public int getHunterCount()
+    {
+        int count = visit.hunter != null && visit.present ? 1 : 0;
+        ConcurrentHashMap<Hunter, Visit> visits = this.visits;
+        if (visits != null)
         {
-            printMessage += "\nWe're just a sleepy little town with mild mannered folk.";
+            for (Visit other : visits.values())
+            {
+                count += other.present ? 1 : 0;
+            }
         }
+        return count;
     }
 
     /**
@@ -76,27 +534,69 @@ public class Town
      */
     public boolean leaveTown()
     {
-        boolean canLeaveTown = terrain.canCrossTerrain(hunter);
-        if (canLeaveTown)
-        {
-            String item = terrain.getNeededItem();
-            printMessage = "You used your " + item + " to cross the " + terrain.getTerrainName() + ".";
-            if (checkItemBreak())
-            {
-                hunter.removeItemFromKit(item);
-                printMessage += "\nUnfortunately, your " + item + " broke.";
-            }
+        return visit.leaveTown();
+    }
 
-            return true;
-        }
+    public void enterShop(String choice)
+    {
+        shop.enter(visit.hunter, choice);
+    }
+
+    public void enterShop(String choice, GameIO io)
+    {
+        visit.enterShop(choice, io);
+    }
 
-        printMessage = "You can't leave town, " + hunter.getHunterName() + ". You don't have a " + terrain.getNeededItem() + ".";
-        return false;
+    //Accessors
+    public Hunter getHunter()
+    {
+        return visit.hunter;
     }
 
-    public void enterShop(String choice)
+    public Shop getShop()
+    {
+        return shop;
+    }
+
+    public Terrain getTerrain()
     {
-        shop.enter(hunter, choice);
+        return terrain;
+    }
+
+    public boolean isToughTown()
+    {
+        return toughTown;
+    }
+
+    public boolean hasSearchedForTreasure()
+    {
+        return visit.foundTreasure;
+    }
+
+    /**
+     * @return The treasure hidden in town: 1 = Banana, 2 = Twig, 3 = Spoon, 4 = Nothing.
+     */
+    public int getGeneratedTreasure()
+    {
+        return generatedTreasure;
+    }
+
+    public GameMode getMode()
+    {
+        return mode;
+    }
+
+    public int getBrawlAnimation()
+    {
+        return brawlAnimation;
+    }
+
+    /**
+     * Marks the town's treasure as already searched for, when a town is rebuilt after the hunter searched it.
+     */
+    public void markTreasureSearched()
+    {
+        visit.markTreasureSearched();
     }
 
     /**
@@ -107,82 +607,18 @@ public class Town
      */
     public void lookForTrouble()
     {
-        double noTroubleChance;
-        if (toughTown)
-        {
-            if (mode.equals("easy")) {
-                noTroubleChance = 0.50;
-            } else {
-                noTroubleChance = 0.66;
-            }
-        }
-        else
-        {
-            if (mode.equals("easy")) {
-                noTroubleChance = 0.25;
-            } else {
-                noTroubleChance = 0.33;
-            }
-        }
-
-        if (Math.random() > noTroubleChance)
-        {
-            printMessage = "You couldn't find any trouble";
-        }
-        else
-        {
-            if (brawlAnimation == 1) {
-                printMessage = "You want trouble, stranger!  You got it!\nOof! Umph! Ow!\n";
-            } else if (brawlAnimation == 2) {
-                printMessage = "Welcome to my lair. You're not allowed in here.\naAAAAAAaAAaAAaaAaAAAaAa\n";
-            } else if (brawlAnimation == 3) {
-                printMessage = "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\n";
-            } else if (brawlAnimation == 4) {
-                printMessage = "Humpty dumpty fell on a wall and so did you.\n*Throws grenade*\n";
-            } else if (brawlAnimation == 5) {
-                printMessage = "YOU DON'T PUT HOT SAUCE IN YOUR BURGER??? YOU MENACE TO SOCIETY.\n";
-            }
-
-            int goldDiff;
-            if (mode.equals("easy")) {
-                goldDiff = (int)(Math.random() * 20) + 5;
-            } else if (mode.equals("normal")) {
-                goldDiff = (int)(Math.random() * 15) + 1;
-            } else {
-                goldDiff = (int)(Math.random() * 10) + 1;
-            }
-
-            if (mode.equals("ch34t")) {
-                goldDiff = 100;
-            }
-
-            if (Math.random() > noTroubleChance || mode.equals("ch34t"))
-            {
-                printMessage += "Okay, stranger! You proved yer mettle. Here, take my gold.";
-                printMessage += "\nYou won the brawl and receive " +  goldDiff + " gold.";
-                hunter.changeGold(goldDiff);
-            }
-            else
-            {
-                printMessage += "That'll teach you to go lookin' fer trouble in MY town! Now pay up!";
-                if (mode.equals("easy")) {
-                    goldDiff = (int)(Math.random() * 10) + 1;
-                }
-                printMessage += "\nYou lost the brawl and pay " +  goldDiff + " gold.";
-                hunter.changeGold(-1 * goldDiff);
-                if (hunter.getGold() == 0) {
-                    System.out.println("You lost all your gold in the brawl!\nGame Over");
-                    System.exit(0);
-                }
-            }
-        }
+        visit.lookForTrouble();
     }
 
     /**
      * Generates a random number from 1-4.
      */
     public void generateTreasure() {
-        generatedTreasure = (int) ((Math.random() * 4) + 1);
+        generateTreasure(random);
+    }
+
+    private void generateTreasure(GameRandom random) {
+        generatedTreasure = (int) ((random.nextDouble() * 4) + 1);
     }
 
     /**
@@ -195,49 +631,7 @@ public class Town
      * buyItem() is used to access addItem() without making addItem() public.
      */
     public void huntForTreasure() {
-        if (!foundTreasure) {
-            String treasure = "";
-            String action = "";
-            if (generatedTreasure == 1) {
-                treasure = "Banana";
-                if (hunter.buyItem("Banana", 1)) {
-                    action = "eat";
-                    hunter.changeGold(1);
-                    hunter.addToHuntedItemTotal(1);
-                }
-            } else if (generatedTreasure == 2) {
-                treasure = "Twig";
-                if (hunter.buyItem("Twig", 1)) {
-                    action = "beat";
-                    hunter.changeGold(1);
-                    hunter.addToHuntedItemTotal(2);
-                }
-            } else if (generatedTreasure == 3) {
-                treasure = "Spoon";
-                if (hunter.buyItem("Spoon", 1)) {
-                    action = "dig";
-                    hunter.changeGold(1);
-                    hunter.addToHuntedItemTotal(3);
-                }
-            } else if (generatedTreasure == 4) {
-                printMessage = "You found nothing! Congrats!";
-            }
-
-            if (!action.equals("")) {
-                printMessage = "You found a " + treasure + "! This will be a good tool to " + action + " with.";
-            } else if (generatedTreasure != 4) {
-                printMessage = "You already have a " + treasure + " so you discard it.";
-            }
-
-            if (hunter.getHuntedItemTotal() == 6) {
-                System.out.println(printMessage + "\nYou beat the game! Congrats!");
-                System.exit(0);
-            }
-
-            foundTreasure = true;
-        } else {
-            printMessage = ("You already searched for treasure in this town!");
-        }
+        visit.huntForTreasure();
     }
 
 
@@ -249,43 +643,61 @@ public class Town
     /**
      * Determines the surrounding terrain for a town, and the item needed in order to cross that terrain.
      *
+     * @param random The generator the town's layout is drawn from.
      * @return A Terrain object.
      */
-    private Terrain getNewTerrain()
+    private Terrain getNewTerrain(GameRandom random)
+    {
+        return terrainFor(random.nextDouble());
+    }
+
+    /**
+     * Picks the terrain for a new town.
+     *
+     * @param roll A random number from 0 (inclusive) to 1 (exclusive).
+     * @return The Terrain that roll gives.
+     */
+    public static Terrain terrainFor(double roll)
     {
-        double rnd = (Math.random() * 6.5 + 1);
+        double rnd = (roll * 6.5 + 1);
         if (rnd <= 1)
         {
-            return new Terrain("Mountains", "Rope");
+            return Terrain.MOUNTAINS;
         }
         else if (rnd <= 2)
         {
-            return new Terrain("Ocean", "Boat");
+            return Terrain.OCEAN;
         }
         else if (rnd <= 3)
         {
-            return new Terrain("Plains", "Horse");
+            return Terrain.PLAINS;
         }
         else if (rnd <= 4)
         {
-            return new Terrain("Desert", "Water");
+            return Terrain.DESERT;
         }
         else if (rnd <= 5) {
-            return new Terrain("Jungle", "Machete");
+            return Terrain.JUNGLE;
         }
         else
         {
-            return new Terrain("I-95", "Bravery");
+            return Terrain.HIGHWAY;
         }
     }
 
-    /**
-     * Determines whether or not a used item has broken.
-     * @return true if the item broke.
-     */
-    private boolean checkItemBreak()
+    private String brawlMessage()
     {
-        double rand = Math.random();
-        return (rand < 0.5);
+        if (brawlAnimation == 1) {
+            return "You want trouble, stranger!  You got it!\nOof! Umph! Ow!\n";
+        } else if (brawlAnimation == 2) {
+            return "Welcome to my lair. You're not allowed in here.\naAAAAAAaAAaAAaaAaAAAaAa\n";
+        } else if (brawlAnimation == 3) {
+            return "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA\n";
+        } else if (brawlAnimation == 4) {
+            return "Humpty dumpty fell on a wall and so did you.\n*Throws grenade*\n";
+        } else if (brawlAnimation == 5) {
+            return "YOU DON'T PUT HOT SAUCE IN YOUR BURGER??? YOU MENACE TO SOCIETY.\n";
+        }
+        return "";
     }
-}
\ No newline at end of file
+}
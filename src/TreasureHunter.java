@@ -5,18 +5,15 @@
  *
  * This code has been adapted from Ivan Turner's original program -- thank you Mr. Turner!
  */
-import java.util.Locale;
-import java.util.Scanner;
-
 public class TreasureHunter
 {
     //Instance variables
+    private GameSession session;
     private Town currentTown;
     private Hunter hunter;
-    private boolean hardMode;
-    private boolean easyMode;
-    private boolean normalMode;
-    private boolean cheatMode;
+    private GameRandom random;
+    private GameIO io;
+    private Leaderboard leaderboard;
 
     //Constructor
     /**
@@ -24,198 +21,251 @@ public class TreasureHunter
      */
     public TreasureHunter()
     {
+        this(new GameRandom());
+    }
+
+    /**
+     * Constructs a Treasure Hunter game on the console whose random events come from the given generator.
+     * @param random The game's source of random numbers.
+     */
+    public TreasureHunter(GameRandom random)
+    {
+        this(random, GameIO.console());
+    }
+
+    /**
+     * Constructs a Treasure Hunter game that talks to the player through the given GameIO.
+     * @param random The game's source of random numbers.
+     * @param io Where the player's input comes from and the game's output goes.
+     */
+    public TreasureHunter(GameRandom random, GameIO io)
+    {
+        this.random = random;
+        this.io = io;
+
         // these will be initialized in the play method
+        session = null;
         currentTown = null;
         hunter = null;
     }
 
-    // starts the game; this is the only public method
+    // starts the game and returns once it is over
     public void play()
     {
         welcomePlayer();
-        enterTown();
-        showMenu();
+        if (session != null)
+        {
+            showMenu();
+            if (leaderboard != null && session.isFinished())
+            {
+                LeaderboardEntry entry = leaderboard.add(session);
+                io.println("Your game is #" + leaderboard.getRank(entry) + " of " + leaderboard.size() + " on the leaderboard.");
+            }
+        }
+        io.flush();
     }
 
     /**
-     * Creates a hunter object at the beginning of the game and populates the class member variable with it.
+     * Adds the game to a leaderboard when it ends.
+     * @param leaderboard The leaderboard, or null for none.
      */
-    private void welcomePlayer()
+    public void setLeaderboard(Leaderboard leaderboard)
     {
-        Scanner scanner = new Scanner(System.in);
-
-        System.out.println("Welcome to TREASURE HUNTER!");
-        System.out.println("Going hunting for the big treasure, eh?");
-        System.out.print("What's your name, Hunter? ");
-        String name = scanner.nextLine();
-
-        boolean cont = false;
-        while (!cont) {
-            System.out.print("Hard, Easy, or Normal mode? (h/e/n): ");
-            String hard = scanner.nextLine();
-            if (hard.equals("H") || hard.equals("h")) {
-                hardMode = true;
-                cont = true;
-                System.out.println("Game set to hard mode.");
-            } else if ((hard.toLowerCase()).equals("e")) {
-                easyMode = true;
-                cont = true;
-                System.out.println("Game set to easy mode.");
-            } else if ((hard.toLowerCase()).equals("n")) {
-                normalMode = true;
-                cont = true;
-                System.out.println("Game set to normal mode.");
-            } else if (hard.equals("ch34t")) {
-                cheatMode = true;
-                cont = true;
-            } else {
-                System.out.println("Error: please enter h, e, or n.");
-            }
-        }
+        this.leaderboard = leaderboard;
+    }
 
-        // set hunter instance variable
-        if (easyMode) {
-            hunter = new Hunter(name, 20);
-        } else {
-            hunter = new Hunter(name, 10);
-        }
+    /**
+     * @return The game being played, or null until the player has chosen a mode.
+     */
+    public GameSession getSession()
+    {
+        return session;
     }
 
     /**
-     * Creates a new town and adds the Hunter to it.
+     * Creates a hunter object at the beginning of the game and populates the class member variable with it.
      */
-    private void enterTown()
+    private void welcomePlayer()
     {
-        double markdown = 0;
-        double toughness = 0;
-        String mode = "";
+        io.println("Welcome to TREASURE HUNTER!");
+        io.println("Going hunting for the big treasure, eh?");
+        io.print("What's your name, Hunter? ");
+        String name = io.readLine();
 
-        if (hardMode)
-        {
-            // in hard mode, you get less money back when you sell items
-            markdown = 0.17;
-
-            // and the town is "tougher"
-            toughness = 0.75;
-
-            // To determine store prices
-            mode = "hard";
-        } else if (easyMode) {
-            // More money back for reselling in easy mode
-            markdown = 0.5;
-            // easier town
-            toughness = 0.20;
-            mode = "easy";
-        } else if (normalMode) {
-            markdown = 0.27;
-            toughness = 0.4;
-            mode = "normal";
-        } else if (cheatMode) {
-            mode = "ch34t";
+        GameMode mode = null;
+        while (mode == null) {
+            if (io.isAtEnd()) {
+                return;
+            }
+            io.print("Hard, Easy, or Normal mode? (h/e/n): ");
+            mode = GameMode.fromChoice(io.readLine());
+            if (mode == GameMode.HARD) {
+                io.println("Game set to hard mode.");
+            } else if (mode == GameMode.EASY) {
+                io.println("Game set to easy mode.");
+            } else if (mode == GameMode.NORMAL) {
+                io.println("Game set to normal mode.");
+            } else if (mode == null) {
+                io.println("Error: please enter h, e, or n.");
+            }
         }
 
-        // note that we don't need to access the Shop object
-        // outside of this method, so it isn't necessary to store it as an instance
-        // variable; we can leave it as a local variable
-        Shop shop = new Shop(markdown, cheatMode, easyMode);
-
-        // creating the new Town -- which we need to store as an instance
-        // variable in this class, since we need to access the Town
-        // object in other methods of this class
-        currentTown = new Town(shop, toughness, mode);
-
-        // calling the hunterArrives method, which takes the Hunter
-        // as a parameter; note this also could have been done in the
-        // constructor for Town, but this illustrates another way to associate
-        // an object with an object of a different class
-        currentTown.hunterArrives(hunter);
+        // the session creates the hunter and the first town for the chosen mode
+        session = new GameSession(name, mode, random);
+        hunter = session.getHunter();
+        currentTown = session.getCurrentTown();
     }
 
     /**
-     * Displays the menu and receives the choice from the user.<p>
-     * The choice is sent to the processChoice() method for parsing.<p>
-     * This method will loop until the user chooses to exit.
+     * Displays the menus and receives the choices from the user, until the game ends.<p>
+     * The menus are the states of a loop: each answer is looked up in the Menu table and either moves to
+     * another menu or is sent to the processChoice() method. However many commands are played,
+     * the loop never calls back into itself, so a long game doesn't use up the stack.
      */
     private void showMenu()
     {
-        Scanner scanner = new Scanner(System.in);
-        String choice = "";
+        int menu = Menu.MAIN;
+        boolean showNews = true;
 
-        while (!(choice.equals("X") || choice.equals("x")))
+        while (!session.isFinished())
         {
-            System.out.println();
-            System.out.println(currentTown.getLatestNews());
-            currentTown.setLatestNews("No new news.");
-            System.out.println("***");
-            System.out.println(hunter);
-            System.out.println(currentTown);
-            boolean cont = false;
-            while (!cont) {
-                System.out.println("Would you like to visit the (S)hop, execute an (A)ction, or give up the hunt and (E)xit? (S/A/E):");
-                choice = scanner.nextLine();
-                if ((choice.toLowerCase()).equals("s")) {
-                    System.out.println("*** Shop ***");
-                    System.out.println("(B)uy something at the shop.");
-                    System.out.println("(S)ell something at the shop.");
-                    System.out.println("(R)eturn to main menu.");
-                    System.out.println("Give up the hunt and (e)xit.");
-                    System.out.print("What's your next move? ");
-                    choice = scanner.nextLine();
-                } else if ((choice.toLowerCase()).equals("a")) {
-                    System.out.println("*** Actions ***");
-                    System.out.println("(M)ove on to a different town.");
-                    System.out.println("(L)ook for trouble!");
-                    System.out.println("(H)unt for treasure!");
-                    System.out.println("(R)return to main menu.");
-                    System.out.println("Give up the hunt and (e)xit.");
-                    System.out.print("What's your next move? ");
-                    choice = scanner.nextLine();
-                }
-                if (!(choice.toLowerCase()).equals("r")) {
-                    System.out.println();
-                    cont = true;
+            if (menu == Menu.MAIN)
+            {
+                if (showNews)
+                {
+                    io.println();
+                    io.println(currentTown.getLatestNews());
+                    currentTown.setLatestNews("No new news.");
+                    io.println("***");
+                    io.println(hunter);
+                    io.println(currentTown);
+                    showNews = false;
                 }
+                io.println("Would you like to visit the (S)hop, execute an (A)ction, or give up the hunt and (E)xit? (S/A/E):");
+            }
+            else if (menu == Menu.SHOP)
+            {
+                io.println("*** Shop ***");
+                io.println("(B)uy something at the shop.");
+                io.println("(S)ell something at the shop.");
+                io.println("(R)eturn to main menu.");
+                io.println("Give up the hunt and (e)xit.");
+                io.print("What's your next move? ");
+            }
+            else
+            {
+                io.println("*** Actions ***");
+                io.println("(M)ove on to a different town.");
+                io.println("(G)o back to the previous town.");
+                io.println("(L)ook for trouble!");
+                io.println("(H)unt for treasure!");
+                io.println("(R)return to main menu.");
+                io.println("Give up the hunt and (e)xit.");
+                io.print("What's your next move? ");
+            }
+
+            String choice = io.readLine();
+            if (io.isAtEnd())
+            {
+                // the player has gone away, so there's nobody left to play for
+                session.quit();
+                return;
+            }
+
+            int command = Menu.lookup(menu, choice);
+            if (command == Menu.OPEN_SHOP)
+            {
+                menu = Menu.SHOP;
+            }
+            else if (command == Menu.OPEN_ACTIONS)
+            {
+                menu = Menu.ACTIONS;
+            }
+            else if (command == Menu.RETURN)
+            {
+                menu = Menu.MAIN;
+            }
+            else
+            {
+                io.println();
+                io.println();
+                processChoice(command);
+                menu = Menu.MAIN;
+                showNews = true;
             }
-            System.out.println();
-            processChoice(choice);
         }
     }
 
     /**
-     * Takes the choice received from the menu and calls the appropriate method to carry out the instructions.
-     * @param choice The action to process.
+     * Takes the command chosen from the menu and calls the appropriate method to carry out the instructions.
+     * @param command The Menu command to process.
      */
-    private void processChoice(String choice)
+    private void processChoice(int command)
     {
-        if (choice.equals("B") || choice.equals("b") || choice.equals("S") || choice.equals("s"))
+        long start = GameMetrics.start();
+        long waited = io.getWaitNanos();
+        runCommand(command);
+        // shop commands ask the player questions, and the time spent waiting for the answers isn't the game's
+        GameMetrics.COMMAND.record(GameMetrics.skip(start, io.getWaitNanos() - waited));
+    }
+
+    private void runCommand(int command)
+    {
+        if (command == Menu.BUY)
+        {
+            currentTown.enterShop("B", io);
+        }
+        else if (command == Menu.SELL)
         {
-            currentTown.enterShop(choice);
+            currentTown.enterShop("S", io);
         }
-        else if (choice.equals("M") || choice.equals("m"))
+        else if (command == Menu.MOVE)
         {
-            if (currentTown.leaveTown())
+            Town oldTown = currentTown;
+            if (session.move())
             {
                 //This town is going away so print its news ahead of time.
-                System.out.println(currentTown.getLatestNews());
-                enterTown();
+                io.println(oldTown.getLatestNews());
+                currentTown = session.getCurrentTown();
+            }
+        }
+        else if (command == Menu.GO_BACK)
+        {
+            Town oldTown = currentTown;
+            if (session.moveBack())
+            {
+                io.println(oldTown.getLatestNews());
+                currentTown = session.getCurrentTown();
+            }
+            else if (session.getWorld().getPosition() == 0)
+            {
+                currentTown.setLatestNews("This is the first town; there's nowhere to go back to.");
             }
         }
-        else if (choice.equals("L") || choice.equals("l"))
+        else if (command == Menu.LOOK_FOR_TROUBLE)
         {
-            currentTown.lookForTrouble();
+            session.lookForTrouble();
+            if (hunter.hasLostGame())
+            {
+                io.println("You lost all your gold in the brawl!\nGame Over");
+            }
         }
-        else if ((choice.toLowerCase()).equals("h")) {
-            currentTown.huntForTreasure();
+        else if (command == Menu.HUNT)
+        {
+            session.huntForTreasure();
+            if (hunter.hasWonGame())
+            {
+                io.println(currentTown.getLatestNews() + "\nYou beat the game! Congrats!");
+            }
         }
-        else if (choice.equals("E") || choice.equals("e"))
+        else if (command == Menu.EXIT)
         {
-            System.out.println("Fare thee well, " + hunter.getHunterName() + "!");
-            System.exit(0);
+            io.println("Fare thee well, " + hunter.getHunterName() + "!");
+            session.quit();
         }
         else
         {
-            System.out.println("Yikes! That's an invalid option! Try again.");
-            showMenu();
+            io.println("Yikes! That's an invalid option! Try again.");
         }
     }
-}
\ No newline at end of file
+}
@@ -1,8 +1,73 @@
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
 public class TreasureHunterRunner
 {
-    public static void main(String args[])
+    public static void main(String args[]) throws IOException
     {
-        TreasureHunter game = new TreasureHunter();
-        game.play();
+        GameRandom random = new GameRandom();
+        String recordFile = null;
+        String scriptFile = null;
+        Leaderboard leaderboard = null;
+        String screen = null;
+        for (int i = 0; i + 1 < args.length; i += 2)
+        {
+            if (args[i].equals("--seed"))
+            {
+                // a fixed seed replays the same towns, brawls and treasure
+                random = new GameRandom(Long.parseLong(args[i + 1]));
+            }
+            else if (args[i].equals("--record"))
+            {
+                // the recording can be played again with SessionReplayer
+                recordFile = args[i + 1];
+            }
+            else if (args[i].equals("--script"))
+            {
+                // commands come from a file ("-" for standard input), several to a line separated by ';'
+                scriptFile = args[i + 1];
+            }
+            else if (args[i].equals("--leaderboard"))
+            {
+                leaderboard = new Leaderboard(Path.of(args[i + 1]));
+            }
+            else if (args[i].equals("--screen"))
+            {
+                // draw the game as screens: "ansi" redraws only what changes, "plain" doesn't, "auto" asks the terminal
+                screen = args[i + 1];
+            }
+        }
+
+        if (scriptFile != null)
+        {
+            InputStream script = scriptFile.equals("-") ? System.in : new FileInputStream(scriptFile);
+            TreasureHunter game = new TreasureHunter(random, new ScriptIO(script, System.out));
+            game.setLeaderboard(leaderboard);
+            game.play();
+            script.close();
+        }
+        else if (recordFile == null)
+        {
+            TreasureHunter game = screen == null ? new TreasureHunter(random) : new TreasureHunter(random, ScreenIO.forConsole(screen));
+            game.setLeaderboard(leaderboard);
+            game.play();
+        }
+        else
+        {
+            try (SessionRecorder recorder = new SessionRecorder(System.in, System.out, random, new FileOutputStream(recordFile)))
+            {
+                TreasureHunter game = new TreasureHunter(random, recorder);
+                game.setLeaderboard(leaderboard);
+                recorder.watch(game::getSession);
+                game.play();
+            }
+        }
+        if (leaderboard != null)
+        {
+            leaderboard.close();
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,240 @@
+/**
+ * The World class is the road of towns a hunter travels along.<p>
+ * Towns are numbered from 0, and each town is joined to the one before and the one after it.
+ * A town is only built when the hunter first reaches it, and its layout comes from a generator seeded
+ * with the world's seed and the town's number, so a town that has been dropped from memory is rebuilt
+ * exactly as it was. Only a window of towns is kept, in a ring where town n goes in slot n % window, so the
+ * last few towns along the road stay in memory; the one thing remembered about every other town is whether
+ * its treasure has been searched for, at one bit per town.<p>
+ * A town that falls out of the window is rebuilt in place as the town that replaces it, so once the ring
+ * is full, moving along the road doesn't create any objects.<p>
+ * If the world is on a Market, each town's shop is joined to it as the town is built, so its prices
+ * follow the trading post for that town's number.
+ */
+import java.util.BitSet;
+
+public class World
+{
+    public static final int DEFAULT_WINDOW = 16;
+
+    //instance variables
+    private final GameMode mode;
+    private long seed;
+    private final GameRandom events;
+    private final int window;
+    private final Town[] towns;
+    // the number of the town in each slot of the ring
+    private final int[] townNumbers;
+    // reused to lay out each rebuilt town
+    private final GameRandom layout = new GameRandom(0);
+    private final BitSet searchedTowns = new BitSet();
+    private int position;
+    private Market market = Market.DEFAULT_POSTS > 0 ? Market.shared() : null;
+
+    //Constructor
+    /**
+     * @param mode The difficulty mode the towns are built for.
+     * @param seed The seed the towns' layouts are derived from.
+     * @param events The game's source of random numbers for what happens in town.
+     * @param window The number of towns kept in memory.
+     */
+    public World(GameMode mode, long seed, GameRandom events, int window)
+    {
+        this.mode = mode;
+        this.seed = seed;
+        this.events = events;
+        this.window = window;
+        towns = new Town[window];
+        townNumbers = new int[window];
+        position = 0;
+    }
+
+    /**
+     * Rebuilds a world part way through a journey, for example from a saved snapshot.
+     *
+     * @param mode The difficulty mode the towns are built for.
+     * @param seed The seed the towns' layouts are derived from.
+     * @param events The game's source of random numbers for what happens in town.
+     * @param window The number of towns kept in memory.
+     * @param position The number of the town the hunter is in.
+     * @param currentTown The town the hunter is in, as it was saved.
+     * @param searchedTowns The towns whose treasure has been searched for, as returned by getSearchedTowns().
+     */
+    public World(GameMode mode, long seed, GameRandom events, int window, int position, Town currentTown, BitSet searchedTowns)
+    {
+        this(mode, seed, events, window);
+        this.position = position;
+        this.searchedTowns.or(searchedTowns);
+        towns[position % window] = currentTown;
+        townNumbers[position % window] = position;
+        joinMarket(currentTown, position);
+    }
+
+    //Accessors
+    public GameMode getMode()
+    {
+        return mode;
+    }
+
+    public long getSeed()
+    {
+        return seed;
+    }
+
+    /**
+     * @return The most towns kept in memory at once.
+     */
+    public int getWindow()
+    {
+        return window;
+    }
+
+    /**
+     * @return The number of the town the hunter is in.
+     */
+    public int getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * @return The market the towns' shops trade on, or null if their prices are fixed.
+     */
+    public Market getMarket()
+    {
+        return market;
+    }
+
+    /**
+     * Puts the world's towns on a market, including the ones already built.
+     *
+     * @param market The market, or null for fixed prices.
+     */
+    public void setMarket(Market market)
+    {
+        this.market = market;
+        for (int slot = 0; slot < window; slot++)
+        {
+            if (towns[slot] != null && townNumbers[slot] >= 0)
+            {
+                towns[slot].getShop().setMarket(market, townNumbers[slot]);
+            }
+        }
+    }
+
+    public Town getCurrentTown()
+    {
+        return getTown(position);
+    }
+
+    /**
+     * @return The towns, other than the current one, whose treasure has been searched for.
+     */
+    public BitSet getSearchedTowns()
+    {
+        return searchedTowns;
+    }
+
+    /**
+     * @return The number of towns currently held in memory.
+     */
+    public int getTownsInMemory()
+    {
+        int count = 0;
+        for (int slot = 0; slot < window; slot++)
+        {
+            if (towns[slot] != null && townNumbers[slot] >= 0)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param slot A slot in the ring, from 0 to getWindow() - 1.
+     * @return The number of the town kept in the slot, or -1 if there is none.
+     */
+    public int getTownNumber(int slot)
+    {
+        return towns[slot] == null ? -1 : townNumbers[slot];
+    }
+
+    /**
+     * Finds a town, building it if it isn't in memory.
+     *
+     * @param number The town's number.
+     * @return The town.
+     */
+    public Town getTown(int number)
+    {
+        int slot = number % window;
+        Town town = towns[slot];
+        if (town != null && townNumbers[slot] == number)
+        {
+            return town;
+        }
+        layout.resetForGame(seed, number);
+        if (town == null)
+        {
+            town = mode.createTown(layout, events);
+            towns[slot] = town;
+        }
+        else
+        {
+            town.rebuild(mode.getToughness(), layout);
+        }
+        townNumbers[slot] = number;
+        joinMarket(town, number);
+        if (searchedTowns.get(number))
+        {
+            town.markTreasureSearched();
+        }
+        return town;
+    }
+
+    /**
+     * Starts the journey again on a new road, keeping the towns already built so they can be reused.
+     *
+     * @param seed The seed the new road's towns are derived from.
+     */
+    public void restart(long seed)
+    {
+        this.seed = seed;
+        searchedTowns.clear();
+        position = 0;
+        for (int slot = 0; slot < window; slot++)
+        {
+            // no town has a negative number, so every slot will be rebuilt
+            townNumbers[slot] = -1;
+        }
+    }
+
+    /**
+     * Moves the hunter along the road, remembering whether they searched the town they are leaving.
+     *
+     * @param number The number of the town to move to.
+     * @return The town moved to.
+     */
+    public Town moveTo(int number)
+    {
+        if (number < 0)
+        {
+            throw new IllegalArgumentException("There is no town before the first one");
+        }
+        if (getCurrentTown().hasSearchedForTreasure())
+        {
+            searchedTowns.set(position);
+        }
+        position = number;
+        return getCurrentTown();
+    }
+
+    private void joinMarket(Town town, int number)
+    {
+        if (market != null)
+        {
+            town.getShop().setMarket(market, number);
+        }
+    }
+}